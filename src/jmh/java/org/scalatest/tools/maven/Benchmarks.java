@@ -0,0 +1,21 @@
+package org.scalatest.tools.maven;
+
+/**
+ * Inputs shared by the benchmarks.
+ */
+final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    // "prefix0,prefix1,...", count values in all
+    static String commaSeparated(String prefix, int count) {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                values.append(',');
+            }
+            values.append(prefix).append(i);
+        }
+        return values.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package org.scalatest.tools.maven;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a test classpath of hundreds of jars into the <code>CLASSPATH</code> of a fork and
+ * into the class loader <code>forkMode</code> "never" runs in.  The jars are empty files;
+ * only their paths, sizes and times are read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClasspathBenchmark {
+    @Param({"500", "2000"})
+    int jars;
+
+    private File directory;
+    private List<String> classpath;
+    private TestMojo mojo;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("classpath-benchmark").toFile();
+        classpath = new ArrayList<String>();
+        Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+        for (int i = 0; i < jars; i++) {
+            File jar = new File(directory, "lib-" + i + ".jar");
+            jar.createNewFile();
+            classpath.add(jar.getPath());
+            Artifact artifact = new DefaultArtifact("org.example", "lib-" + i, "1.0", Artifact.SCOPE_TEST, "jar", null,
+                    new DefaultArtifactHandler("jar"));
+            artifact.setFile(jar);
+            artifacts.add(artifact);
+        }
+
+        MavenProject project = new MavenProject();
+        project.getBuild().setOutputDirectory(new File(directory, "classes").getPath());
+        project.getBuild().setTestOutputDirectory(new File(directory, "test-classes").getPath());
+        project.setArtifacts(artifacts);
+        mojo = new TestMojo();
+        mojo.project = project;
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public String buildClassPathEnvironment() {
+        return AbstractScalaTestMojo.buildClassPathEnvironment(classpath);
+    }
+
+    @Benchmark
+    public ClassLoader classLoader() {
+        ClassLoaderCache.Lease lease = mojo.classLoader();
+        try {
+            return lease.loader();
+        } finally {
+            lease.close();
+        }
+    }
+}
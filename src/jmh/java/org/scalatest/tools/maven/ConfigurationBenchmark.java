@@ -0,0 +1,58 @@
+package org.scalatest.tools.maven;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the Runner arguments of a <code>TestMojo</code> configured with many suites, tests
+ * and tags, as done once or more per module.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationBenchmark {
+    @Param({"100", "1000", "5000"})
+    int size;
+
+    private TestMojo mojo;
+
+    @Setup
+    public void setUp() {
+        mojo = new TestMojo();
+        mojo.reportsDirectory = new File("target/scalatest-reports");
+        mojo.testOutputDirectory = new File("target/test-classes");
+        mojo.outputDirectory = new File("target/classes");
+        mojo.suites = Benchmarks.commaSeparated("org.example.Suite", size);
+        mojo.tests = Benchmarks.commaSeparated("a test with\\, a comma ", size / 10);
+        mojo.tagsToInclude = Benchmarks.commaSeparated("org.example.tags.Include", size);
+        mojo.tagsToExclude = Benchmarks.commaSeparated("org.example.tags.Exclude", size);
+        mojo.filereports = "W all.txt, F failures.txt";
+        mojo.junitxml = ".";
+    }
+
+    @Benchmark
+    public List<String> sharedConfiguration() {
+        return mojo.sharedConfiguration();
+    }
+
+    @Benchmark
+    public String[] configuration() {
+        return mojo.configuration();
+    }
+}
@@ -0,0 +1,62 @@
+package org.scalatest.tools.maven;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The comma-separated parameter handling in {@link MojoUtils} that every configuration goes
+ * through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MojoUtilsBenchmark {
+    @Param({"10", "1000", "10000"})
+    int size;
+
+    private String values;
+    private String escapedValues;
+    private String reporters;
+
+    @Setup
+    public void setUp() {
+        values = Benchmarks.commaSeparated("org.example.tags.Tag", size);
+        escapedValues = Benchmarks.commaSeparated("a test with\\, a comma ", size);
+        reporters = Benchmarks.commaSeparated("W reports/report", size);
+    }
+
+    @Benchmark
+    public List<String> splitOnComma() {
+        return MojoUtils.splitOnComma(values);
+    }
+
+    @Benchmark
+    public List<String> splitOnCommaWithEscapes() {
+        return MojoUtils.splitOnComma(escapedValues);
+    }
+
+    @Benchmark
+    public List<String> compoundArg() {
+        return MojoUtils.compoundArg("-n", values);
+    }
+
+    @Benchmark
+    public List<String> reporterArg() {
+        return MojoUtils.reporterArg("-f", reporters, MojoUtils.passThrough);
+    }
+}
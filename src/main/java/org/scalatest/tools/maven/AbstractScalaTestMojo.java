@@ -1,6 +1,8 @@
 package org.scalatest.tools.maven;
 
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
@@ -13,9 +15,17 @@ import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 import static java.util.Collections.singletonList;
 import static java.util.Collections.unmodifiableList;
@@ -41,6 +51,13 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
      */
     MavenProject project;
 
+    /**
+     * Injected by Maven so that class loaders can be shared by the modules of a build.  Should not be user facing.
+     * @parameter default-value="${session}"
+     * @readonly
+     */
+    MavenSession session;
+
     /**
      * Injected by Maven so that it can be included in the run path.  Should not be user facing.
      * @parameter property="project.build.testOutputDirectory"
@@ -160,13 +177,240 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
     String jUnitClasses;
 
     /**
-     * Option to specify the forking mode. Can be "never" or "once". "always", which would
+     * Option to specify the forking mode. Can be "never", "once" or "daemon". "always", which would
      * fork for each test-class, may be supported later.
      *
+     * <p>With "daemon" the tests run in a long-lived JVM that is started on first use and kept
+     * running between builds, so that JVM startup and the loading and warm-up of the jars on the test
+     * classpath are only paid once. Each run loads the project's class directories in a fresh class
+     * loader. A daemon is reused only while its JVM options, environment, working directory and the jars
+     * on the test classpath are unchanged; otherwise a new one is started. Since the working directory
+     * is part of that, modules share a daemon only when configured with a common
+     * <code>workingDirectory</code>.</p>
+     *
      * @parameter property="forkMode" default-value="once"
      */
     String forkMode;
 
+    /**
+     * Seconds a daemon started for <code>forkMode</code> "daemon" waits for its next run before exiting.
+     *
+     * @parameter property="daemonIdleTimeoutInSeconds" default-value="3600"
+     */
+    int daemonIdleTimeoutInSeconds = 3600;
+
+    /**
+     * Directory where daemons started for <code>forkMode</code> "daemon" publish their ports and write
+     * their logs. Each daemon also writes a random secret here, readable by its owner only, which a
+     * run must present before the daemon serves it.
+     *
+     * @parameter property="daemonDirectory" default-value="${user.home}/.scalatest-maven-plugin/daemons"
+     */
+    File daemonDirectory;
+
+    /**
+     * Set to true to have the plugin find the suites to run and pass them to the Runner by name, instead
+     * of the Runner loading every class of the runpath to find them. The plugin reads the class files
+     * without loading them, following superclasses and interfaces to <code>org.scalatest.Suite</code>
+     * and honoring <code>@WrapWith</code>, <code>@DoNotDiscover</code> and <code>suffixes</code>. What it
+     * reads is kept in <code>${project.build.directory}/scalatest-discovery.index</code>, so later runs
+     * only read the class files that changed. <code>membersOnlySuites</code> and <code>wildcardSuites</code>
+     * are expanded to the suites they contain.
+     *
+     * <p>This has no effect together with <code>testNGXMLFiles</code>, <code>junitClasses</code> or
+     * <code>testsFiles</code>, which leave discovery to the Runner.</p>
+     *
+     * @parameter property="indexSuites" default-value="false"
+     */
+    boolean indexSuites;
+
+    /**
+     * Number of JVMs to fork at the same time when <code>forkMode</code> is "once". With more than one
+     * fork, the plugin holds the suites to run in a queue and each fork pulls its next batch of suites
+     * as soon as it is idle, so a slow suite in one fork does not leave the others waiting. A value
+     * ending in "C" is multiplied by the number of available processors, e.g. <code>1C</code>.
+     *
+     * <p>Unless <code>suites</code> names them, the suites are discovered by the plugin from the class
+     * files on the runpath, as described for <code>indexSuites</code>. The queue is not used together
+     * with <code>testNGXMLFiles</code>, <code>junitClasses</code> or <code>testsFiles</code>; a single
+     * fork is used instead. Nor is it used with <code>htmlreporters</code>, as an HTML report covers a
+     * single Runner invocation: a single fork then runs <code>forkCount</code> suites at a time, as
+     * <code>parallel</code> would, unless <code>parallel</code> is set itself.</p>
+     *
+     * @parameter property="forkCount" default-value="1"
+     */
+    String forkCount;
+
+    /**
+     * Most forked JVMs to run at once across all modules of the build, for builds run with <code>-T</code>
+     * in which several modules fork at the same time. Forks beyond the limits wait their turn, in the order
+     * they asked, and the time a module waited is logged. Like <code>forkCount</code>, a value ending in
+     * "C" is multiplied by the number of available processors. No limit by default.
+     *
+     * <p>The limits are kept for the whole build, and each execution waits until its forks fit within its
+     * own limits given what all modules are running, so modules should be configured alike.</p>
+     *
+     * @parameter property="maxConcurrentForks"
+     */
+    String maxConcurrentForks;
+
+    /**
+     * Most test threads to run at once in the forked JVMs of all modules of the build. A fork counts
+     * <code>threadCount</code> threads when <code>parallel</code> is true, twice the number of available
+     * processors if that is not set, and one thread otherwise. A value ending in "C" is multiplied by the
+     * number of available processors. No limit by default.
+     *
+     * @parameter property="maxConcurrentTestThreads"
+     */
+    String maxConcurrentTestThreads;
+
+    /**
+     * Most maximum heap, as in <code>-Xmx</code>, for the forked JVMs of all modules of the build to have
+     * at once, e.g. <code>24g</code>. A fork counts the <code>-Xmx</code> of its <code>argLine</code>, or
+     * the one chosen by <code>autoSizing</code>, and nothing when it has none. No limit by default.
+     *
+     * @parameter property="maxConcurrentForkHeap"
+     */
+    String maxConcurrentForkHeap;
+
+    /**
+     * Set this to "true" to find out what the forked JVMs use: the number, total and longest of their GC
+     * pauses and the most heap they kept after a collection, from a GC log they are started to write,
+     * and on Linux the peaks of their resident memory, threads and open files, sampled from
+     * <code>/proc</code> while they run. A line per fork is logged, and the test goal writes them to
+     * <code>scalatest-telemetry.json</code> in its <code>reportsDirectory</code>, which helps to size the
+     * heap in <code>argLine</code>. The GC logs are kept in
+     * <code>${project.build.directory}/scalatest-telemetry</code>.
+     *
+     * @parameter property="forkTelemetry" default-value="false"
+     */
+    boolean forkTelemetry;
+
+    /**
+     * Set this to "true" to profile the forked JVMs with Java Flight Recorder, using settings of the plugin
+     * that record CPU samples, allocations and lock contention with little overhead. Each fork writes a
+     * recording, <code>scalatest-fork.jfr</code> or one per fork, which can be opened in JDK Mission Control,
+     * to the <code>reportsDirectory</code> of the test goal. A summary of the methods most often on CPU,
+     * the sites allocating most, the locks waited on longest and the CPU and allocations of each suite is
+     * logged and written to <code>scalatest-profile.txt</code> next to the recordings.
+     *
+     * <p>The forks need Java 11 or later, or a Java 8 with Flight Recorder, as OpenJDK has from 8u262. The
+     * summary needs the same of the JVM running Maven; otherwise only the recordings are written.</p>
+     *
+     * @parameter property="profile" default-value="false"
+     */
+    boolean profile;
+
+    /**
+     * Set this to "true" to size the forks and test threads from the processors and memory the build
+     * may use, for builds in containers whose limits the defaults do not account for. On Linux these are
+     * the CPU quota and memory limit of the cgroup of the build, v1 or v2, and otherwise those of the
+     * machine.
+     *
+     * <p>The plugin then forks one JVM for every two CPUs, as long as each gets at least 512 MB, gives
+     * each fork an <code>-Xmx</code> of three quarters of its share of the memory left by the Maven JVM,
+     * and, when <code>parallel</code> is true, runs as many test threads in each as make one per CPU.
+     * A <code>forkCount</code> other than 1, a <code>threadCount</code>, or an <code>-Xmx</code> in
+     * <code>argLine</code> is kept as given. The values chosen are logged.</p>
+     *
+     * @parameter property="autoSizing" default-value="false"
+     */
+    boolean autoSizing;
+
+    /**
+     * Set this to "true" to stop a forked run once <code>failFastThreshold</code> tests have failed or
+     * suites aborted, for builds that only need to know whether anything fails.
+     *
+     * <p>The suites are served to the forks from the queue described for <code>forkCount</code>, one suite
+     * per Runner invocation, and once the threshold is reached no more suites are handed out. Suites that
+     * already started run to their end, so the reports of everything that ran are complete; the suites not
+     * started are left out of them. Not available together with <code>testNGXMLFiles</code>,
+     * <code>junitClasses</code> or <code>testsFiles</code>, or with a <code>forkMode</code> other than
+     * "once". As every suite is a Runner invocation of its own, the build fails when this is set
+     * together with <code>htmlreporters</code>, whose report would only show the last suite.</p>
+     *
+     * @parameter property="failFast" default-value="false"
+     */
+    boolean failFast;
+
+    /**
+     * Number of failed tests and aborted suites after which <code>failFast</code> stops the run.
+     *
+     * @parameter property="failFastThreshold" default-value="1"
+     */
+    int failFastThreshold = 1;
+
+    /**
+     * Number of shards to split the suites of this module into, for spreading a build over several
+     * machines. Each machine runs the same build with its own <code>shardIndex</code>. Suites are
+     * discovered by the plugin unless <code>suites</code> names them, and sharding is not available
+     * together with <code>testNGXMLFiles</code>, <code>junitClasses</code> or <code>testsFiles</code>.
+     *
+     * @parameter property="shardCount" default-value="1"
+     */
+    int shardCount = 1;
+
+    /**
+     * Zero-based index of the shard to run, from 0 to <code>shardCount</code> - 1.
+     *
+     * @parameter property="shardIndex" default-value="0"
+     */
+    int shardIndex;
+
+    /**
+     * Directory searched for JUnit XML reports of a previous run, such as those written by
+     * <code>junitxml</code>. The suite durations found there are used to give every shard about the
+     * same expected running time. Every shard must read the very same reports, or the shards compute
+     * different splits and some suites run twice while others do not run at all: on CI, restore the
+     * same snapshot of a previous build on every machine and point this at it, rather than at the
+     * reports directory each machine writes. Durations must use a period as the decimal separator;
+     * suites whose time is written otherwise count as unknown. When this is not set, or no reports
+     * are found, suites are assigned to shards by hashing their names.
+     *
+     * @parameter property="shardTimings"
+     */
+    File shardTimings;
+
+    /**
+     * Order to run the suites in: "default" leaves it to the Runner, or to the order suites are named and
+     * discovered in, and "history" runs the suites that failed in one of the last 5 recorded runs first,
+     * most recent first, and then the others from the longest to the shortest, as recorded in
+     * <code>suiteHistoryFile</code>. That gets the result of recent failures in seconds, and keeps a long
+     * suite from starting last and stretching the end of a run with <code>parallel</code> or more than
+     * one fork.
+     *
+     * <p>Runs in forked processes record the duration of every suite and whether it failed. Suites are
+     * discovered by the plugin unless <code>suites</code> names them, and the order is not available
+     * together with <code>testNGXMLFiles</code>, <code>junitClasses</code> or <code>testsFiles</code>.</p>
+     *
+     * @parameter property="suiteOrder" default-value="default"
+     */
+    String suiteOrder = "default";
+
+    /**
+     * File the history of the suites is kept in for <code>suiteOrder</code> "history". Point several
+     * modules or checkouts to the same file, on a shared path, to share their history.
+     *
+     * @parameter property="suiteHistoryFile" default-value="${project.build.directory}/scalatest-history.properties"
+     */
+    File suiteHistoryFile;
+
+    /**
+     * How the classpath is handed to forked processes: "environment" sets the <code>CLASSPATH</code>
+     * environment variable, "manifest" passes a jar whose manifest <code>Class-Path</code> lists the
+     * classpath, and "argfile" passes a <code>-classpath</code> option in an argument file, which needs
+     * Java 9 or later in the forked process.
+     *
+     * <p>Both files keep the command line and the environment short however many dependencies the tests
+     * have, which matters for large classpaths that run into the limits of the operating system. They are
+     * written to <code>${project.build.directory}/scalatest-classpath</code> and rewritten only when the
+     * classpath changes. With "manifest", the <code>java.class.path</code> system property of the forked
+     * process names only that jar.</p>
+     *
+     * @parameter property="forkClasspath" default-value="environment"
+     */
+    String forkClasspath = ForkClasspath.ENVIRONMENT;
+
     /**
      * Option to specify additional JVM options to pass to the forked process.
      *
@@ -225,6 +469,46 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
      */
     int forkedProcessTimeoutInSeconds = 0;
 
+    /**
+     * Seconds a suite may run in a forked JVM before the plugin takes it to be stuck. The plugin then
+     * takes <code>threadDumpCount</code> thread dumps of the fork, <code>threadDumpIntervalInSeconds</code>
+     * apart, names the suite in the build log and stops the fork, which fails the run. A suite that
+     * finishes while the dumps are taken is left alone.
+     *
+     * <p>The dumps are written with the <code>jcmd</code> of the JDK of the forks to
+     * <code>${project.build.directory}/scalatest-hangs</code>, one file per dump named after the suite.
+     * When there is no <code>jcmd</code>, as with a JRE, the fork is sent <code>SIGQUIT</code> and prints
+     * the dumps to its output instead. The suites and tests running are known from the events of the forks,
+     * so this has no effect with <code>forkMode</code> "never" or "daemon". If set to 0, suites never time
+     * out.</p>
+     *
+     * @parameter property="suiteTimeout" default-value="0"
+     */
+    int suiteTimeoutInSeconds = 0;
+
+    /**
+     * Seconds a single test may run in a forked JVM before the plugin takes it to be stuck, dumps the
+     * threads of the fork and stops it, as for <code>suiteTimeoutInSeconds</code>. If set to 0, tests
+     * never time out.
+     *
+     * @parameter property="testTimeout" default-value="0"
+     */
+    int testTimeoutInSeconds = 0;
+
+    /**
+     * Number of thread dumps taken of a fork running a suite or test past its timeout.
+     *
+     * @parameter property="threadDumpCount" default-value="3"
+     */
+    int threadDumpCount = 3;
+
+    /**
+     * Seconds between the thread dumps taken of a fork running a suite or test past its timeout.
+     *
+     * @parameter property="threadDumpInterval" default-value="5"
+     */
+    int threadDumpIntervalInSeconds = 5;
+
     /**
      * Whether or not to log the command used to launch the forked process.
      *
@@ -254,160 +538,1180 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
      */
     String jvm;
 
+    /**
+     * Whether forked processes start with a class data sharing archive of the classes they load from the
+     * test dependencies, which shortens the startup of each fork. Needs Java 10 or later in the forked
+     * process; with older ones, and with <code>forkClasspath</code> "manifest", it is ignored.
+     *
+     * <p>A run without an archive for its classpath records the classes its forks load, and builds the
+     * archive from them once the forks are done. Archives are named after the JVM and the dependency jars,
+     * so a changed dependency leads to a new archive on the next run, and ones unused for 30 days are
+     * removed. Since the JVM only archives classes from jars, the dependency jars come before the class
+     * directories of the project on the classpath of the forks. When a resource or class of the project is
+     * also in a dependency jar, such as an <code>application.conf</code> or <code>logback-test.xml</code>,
+     * the jar would hide it that way, so those forks keep the classpath in its order and go without class
+     * data sharing, with a warning. Building an archive is given up after a minute, and the forks of later runs
+     * go on without one until it is built.</p>
+     *
+     * @parameter property="classDataSharing" default-value="false"
+     */
+    boolean classDataSharing;
+
+    /**
+     * Directory the class data sharing archives are kept in, shared by the projects of the user.
+     *
+     * @parameter property="classDataSharingDirectory" default-value="${user.home}/.scalatest-maven-plugin/cds"
+     */
+    File classDataSharingDirectory;
+
+    /**
+     * Whether to record the ScalaTest events of runs in forked processes to <code>eventJournalDirectory</code>,
+     * so that their reports can be generated again with <code>replayEventJournal</code> without running the
+     * tests. Each run replaces the journal of the run before it.
+     *
+     * @parameter property="eventJournal" default-value="false"
+     */
+    boolean eventJournal;
+
+    /**
+     * Directory the event journal is recorded to and replayed from.
+     *
+     * @parameter property="eventJournalDirectory" default-value="${project.build.directory}/scalatest-journal"
+     */
+    File eventJournalDirectory;
+
+    /**
+     * Set this to "true" to generate the reports of this execution, such as <code>filereports</code>,
+     * <code>htmlreporters</code>, <code>junitxml</code> and the output of the <code>reporter</code> goal,
+     * from the events an earlier run recorded with <code>eventJournal</code> instead of running the tests.
+     *
+     * <p>The tests pass or fail as they did in the recorded run. The options that decide what runs, such as
+     * <code>suites</code> or <code>tagsToInclude</code>, have no effect, and the execution fails when there
+     * is no journal to replay.</p>
+     *
+     * @parameter property="replayEventJournal" default-value="false"
+     */
+    boolean replayEventJournal;
+
+    private static final int DAEMON_STARTUP_TIMEOUT_SECONDS = 60;
+
+    private List<List<String>> plannedSuites;
+    private boolean plannedSuitesResolved;
+
+    // The maximum heap of the forks chosen by autoSizing, or 0, once sized
+    private long autoForkHeap;
+    private boolean sized;
+
+    // Suite digests to record for incremental runs once this run passes
+    private Map<String, String> incrementalRecord;
+
+    // Events of the forks of the current run, and the channel they come in on
+    private RunEvents runEvents;
+    private EventChannel eventChannel;
+
+    // The archives the forks of the current run share classes with, or null
+    private ClassDataSharing classData;
+    private final Map<List<String>, Boolean> classDataClasspaths = new HashMap<List<String>, Boolean>();
+
+    // Where the forks of the current run record their events, or null
+    private File journalDirectory;
+
+    // What failed and then passed on a rerun in the last run
+    private List<String> flakyTests = Collections.emptyList();
+
+    // Stops the forks of the current run stuck in a suite or test, or null
+    private HangWatchdog watchdog;
+
+    // The Flight Recorder settings the forks of the current run record a profile with, or null
+    private File profileSettings;
+
+    // The merged JUnit XML report of the current run, or null
+    private MergedJUnitXml mergedJUnitXml;
+
+    // The telemetry of the forks of the last run, when forkTelemetry is set
+    private final List<ForkTelemetry> telemetry = Collections.synchronizedList(new ArrayList<ForkTelemetry>());
+
+    private static final Set<String> REPORTER_FLAGS_WITH_VALUE = new HashSet<String>(Arrays.asList("-f", "-h", "-u", "-C", "-Y"));
+
+    static final int MAX_FAILURES_LOGGED = 100;
+
+    // Entries of each part of the profile summary
+    private static final int PROFILE_TOP = 10;
+
     // runScalaTest is called by the concrete mojo subclasses  TODO: make it protected and others too
     // Returns true if all tests pass
     boolean runScalaTest(String[] args) throws MojoFailureException {
+        runEvents = null;
         getLog().debug(Arrays.toString(args));
+        if (replayEventJournal) {
+            return replayEventJournal(args);
+        }
+        if (!hasSuitesToRun()) {
+            recordIncrementalRun();
+            return true;
+        }
+        boolean passed = runInForkMode(args);
+        if (passed) {
+            recordIncrementalRun();
+        }
+        recordSuiteHistory();
+        return passed;
+    }
+
+    // Returns true if all tests pass
+    private boolean runInForkMode(String[] args) throws MojoFailureException {
+        if (eventJournal && (forkMode.equals("never") || forkMode.equals("daemon"))) {
+            getLog().warn("The event journal is only recorded by runs in forked processes, not with forkMode " + forkMode + ".");
+        }
+        if (failFast && (forkMode.equals("never") || forkMode.equals("daemon"))) {
+            getLog().warn("failFast only stops runs in forked processes, not with forkMode " + forkMode + "; running all suites.");
+        }
+        if ((suiteTimeoutInSeconds > 0 || testTimeoutInSeconds > 0) && (forkMode.equals("never") || forkMode.equals("daemon"))) {
+            getLog().warn("Suites and tests only time out in forked processes, not with forkMode " + forkMode + ".");
+        }
+        if ((forkMode.equals("never") || forkMode.equals("daemon")) && mergedJUnitXmlFile() != null) {
+            getLog().warn("The merged JUnit XML report is only written by runs in forked processes, not with forkMode " + forkMode + ".");
+        }
         if (forkMode.equals("never")) {
             return runWithoutForking(args);
         }
+        else if (forkMode.equals("daemon")) {
+            return runInDaemon(args);
+        }
         else {
             if (!forkMode.equals("once")) {
                 getLog().error("Invalid forkMode: \"" + forkMode + "\"; Using once instead.");
             }
-            return runForkingOnce(args);
+            // Emptied once, as the forks of the run and its reruns append to it
+            File outputFile = getOutputFile();
+            watchdog = hangWatchdog();
+            profileSettings = profileSettings();
+            mergedJUnitXml = openMergedJUnitXml();
+            try {
+                boolean passed = rerunFailures(args, runForking(args, outputFile), outputFile);
+                return logHangs() && passed;
+            }
+            finally {
+                closeMergedJUnitXml();
+                if (watchdog != null) {
+                    watchdog.close();
+                    watchdog = null;
+                }
+                if (profileSettings != null) {
+                    summarizeProfile();
+                    profileSettings = null;
+                }
+            }
         }
     }
 
-    // Returns true if all tests pass
-    private boolean runWithoutForking(String[] args) {
-        try {
-            return (Boolean) run().invoke(null, new Object[]{args});
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException(e);
-        } catch (InvocationTargetException e) {
-            Throwable target = e.getTargetException();
-            if(target instanceof RuntimeException){
-                throw (RuntimeException)target;
-            } else {
-                throw new IllegalArgumentException(target);
-            }
+    // A watchdog for suiteTimeoutInSeconds and testTimeoutInSeconds, or null when neither is set
+    private HangWatchdog hangWatchdog() {
+        if (suiteTimeoutInSeconds <= 0 && testTimeoutInSeconds <= 0) {
+            return null;
         }
+        return new HangWatchdog(suiteTimeoutInSeconds, testTimeoutInSeconds, threadDumpCount, threadDumpIntervalInSeconds,
+                HangWatchdog.jcmd(forkJvm()), new File(project.getBuild().getDirectory(), "scalatest-hangs"), getLog());
     }
 
-    // Returns true if all tests pass
-    private boolean runForkingOnce(String[] args) throws MojoFailureException {
-
-        final Commandline cli = new Commandline();
-        if ((this.workingDirectory == null || this.workingDirectory.isEmpty())) {
-            cli.setWorkingDirectory(project.getBasedir());
-        } else {
-            cli.setWorkingDirectory(workingDirectory);
+    //
+    // Writes the settings for the forks to record a profile with, when
+    // profile is set and the forks can, and removes the recordings of the
+    // last run.  Returns the settings, or null for no profile.
+    //
+    private File profileSettings() {
+        if (!profile) {
+            return null;
         }
-
-        if (this.jvm == null || this.jvm.isEmpty()) {
-            cli.setExecutable(getJvm());
-        } else {
-            cli.setExecutable(this.jvm);
+        if (!JfrProfile.canRecord(forkJvm(), ClassDataSharing.majorVersion(ClassDataSharing.javaVersion(forkJvm())))) {
+            getLog().warn("Not profiling the tests: the forked JVM " + forkJvm() + " has no Flight Recorder.");
+            return null;
         }
-
-        // Set up environment
-        if (environmentVariables != null) {
-            for (final Map.Entry<String, String> entry : environmentVariables.entrySet()) {
-                cli.addEnvironment(entry.getKey(), entry.getValue());
-            }
+        JfrProfile.clear(profileDirectory());
+        profileDirectory().mkdirs();
+        try {
+            return JfrProfile.writeSettings(new File(project.getBuild().getDirectory(), "scalatest-profile"));
         }
-        cli.addEnvironment("CLASSPATH", buildClassPathEnvironment());
-
-        // Set up system properties
-        if (systemProperties != null) {
-            for (final Map.Entry<String, String> entry : systemProperties.entrySet()) {
-                cli.createArg().setValue(String.format("-D%s=%s", entry.getKey(), entry.getValue()));
-            }
+        catch (IOException e) {
+            getLog().warn("Not profiling the tests: unable to write the Flight Recorder settings: " + e.getMessage());
+            return null;
         }
-        cli.createArg().setValue(String.format("-Dbasedir=%s", project.getBasedir().getAbsolutePath()));
+    }
 
-        // Set user specified JVM arguments
-        if (argLine != null) {
-            cli.createArg().setLine(stripNewLines(argLine));
+    // Logs and writes the summary of the recordings of the forks of the run
+    private void summarizeProfile() {
+        File directory = profileDirectory();
+        List<File> recordings = new ArrayList<File>();
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            if (file.getName().startsWith(JfrProfile.PREFIX) && file.getName().endsWith(JfrProfile.SUFFIX)) {
+                recordings.add(file);
+            }
         }
-
-        // Set debugging JVM arguments if debugging is enabled
-        if (debugForkedProcess) {
-            cli.createArg().setLine(stripNewLines(forkedProcessDebuggingArguments()));
+        if (recordings.isEmpty()) {
+            getLog().warn("The forked JVMs wrote no Flight Recorder recordings to " + directory + ".");
+            return;
         }
-
-        // Set ScalaTest arguments
-        cli.createArg().setValue("org.scalatest.tools.Runner");
-        for (final String arg : args) {
-            cli.createArg().setValue(arg);
+        getLog().info("Flight Recorder recordings of the forked JVMs are in " + directory + ".");
+        if (!JfrProfile.canRead()) {
+            getLog().info("This JVM cannot read them for a summary; open them in JDK Mission Control.");
+            return;
         }
-
-        // Log command string
-        final String commandLogStatement = "Forking ScalaTest via: " + cli;
-        if (logForkedProcessCommand) {
-            getLog().info(commandLogStatement);
-        } else {
-            getLog().debug(commandLogStatement);
+        Set<String> suites = new HashSet<String>();
+        for (EventChannel.Event suite : runEvents == null ? Collections.<EventChannel.Event>emptyList() : runEvents.suites()) {
+            suites.add(suite.suiteClassName);
         }
-
-        try (
-            final Writer outputWriter = getOutputWriter()
-        ) {
-            final StreamConsumer outputConsumer = new WriterStreamConsumer(outputWriter);
-
-            final int result = CommandLineUtils.executeCommandLine(cli, outputConsumer, outputConsumer,
-                    forkedProcessTimeoutInSeconds);
-
-            return result == 0;
+        JfrProfile jfrProfile = new JfrProfile(suites);
+        for (File recording : recordings) {
+            try {
+                jfrProfile.read(recording);
+            }
+            catch (IOException e) {
+                getLog().warn("Unable to read " + recording + ": " + e.getMessage());
+            }
         }
-        catch (final CommandLineTimeOutException e) {
-            throw new MojoFailureException(String.format("Timed out after %d seconds waiting for forked process to complete.", forkedProcessTimeoutInSeconds), e);
+        StringBuilder summary = new StringBuilder();
+        for (String line : jfrProfile.summary(PROFILE_TOP)) {
+            getLog().info(line);
+            summary.append(line).append('\n');
         }
-        catch (final CommandLineException e) {
-            throw new MojoFailureException("Exception while executing forked process.", e);
+        try {
+            writeFully(new File(directory, JfrProfile.SUMMARY_FILE), summary.toString());
         }
         catch (IOException e) {
-            throw new MojoFailureException("Unable to close the output writer ", e);
+            getLog().warn("Unable to write the profile summary: " + e.getMessage());
         }
     }
 
-    protected Writer getOutputWriter() throws MojoFailureException {
-        return new PrintWriter(System.out) {
-            @Override
-            public void close() {
-                out = null; // System.out should stay open
-            }
-        };
+    // Where the forks write their recordings when profile is set; TestMojo has them in reportsDirectory
+    File profileDirectory() {
+        return new File(project.getBuild().getDirectory(), "scalatest-profile");
     }
 
-    private String buildClassPathEnvironment() {
-        StringBuffer buf = new StringBuffer();
-        boolean first = true;
-        for (String e : testClasspathElements()) {
-            if (first) {
-                first = false;
-            }
-            else {
-                buf.append(File.pathSeparator);
-            }
-            buf.append(e);
-        }
-        return buf.toString();
+    // The file of the merged JUnit XML report of a run, or null for none; TestMojo has it when mergedJunitXml is set
+    File mergedJUnitXmlFile() {
+        return null;
     }
 
-    private String forkedProcessDebuggingArguments() {
-        if (debugArgLine == null) {
-            return String.format("-Xdebug -Xrunjdwp:transport=dt_socket,server=y,suspend=y,address=%s", debuggerPort);
-        } else {
-            return debugArgLine;
-        }
+    // The size past which the merged JUnit XML report goes on in a new file, or 0 for none
+    long mergedJUnitXmlMaxSize() {
+        return 0;
     }
 
-    protected boolean isScalaTestAvailable() {
+    // Starts the merged JUnit XML report of a run, or returns null when it has none
+    private MergedJUnitXml openMergedJUnitXml() {
+        File file = mergedJUnitXmlFile();
+        if (file == null) {
+            return null;
+        }
         try {
-            classLoader().loadClass("org.scalatest.tools.Runner");
-            return true;
+            return new MergedJUnitXml(file, mergedJUnitXmlMaxSize());
         }
-        catch (ClassNotFoundException e) {
-            return false;
+        catch (IOException e) {
+            getLog().warn("Unable to write the merged JUnit XML report: " + e.getMessage());
+            return null;
         }
     }
 
-    // This is just used by runScalaTest to get the method to invoke
-    private Method run() {
+    // Ends the merged JUnit XML report of the run, if it has one
+    private void closeMergedJUnitXml() {
+        if (mergedJUnitXml == null) {
+            return;
+        }
+        try {
+            mergedJUnitXml.close();
+            List<File> files = mergedJUnitXml.files();
+            getLog().info(files.size() == 1 ? "Merged JUnit XML report written to " + files.get(0)
+                    : String.format("Merged JUnit XML report written to %s and %d more files.", files.get(0), files.size() - 1));
+        }
+        catch (IOException e) {
+            getLog().warn("Unable to write the merged JUnit XML report: " + e.getMessage());
+        }
+        mergedJUnitXml = null;
+    }
+
+    // Logs the suites and tests whose forks were stopped; returns true if there were none
+    private boolean logHangs() {
+        List<String> hangs = watchdog == null ? Collections.<String>emptyList() : watchdog.hangs();
+        if (hangs.isEmpty()) {
+            return true;
+        }
+        getLog().error("Forks stopped as they were stuck in:");
+        for (String hang : hangs) {
+            getLog().error("  " + hang);
+        }
+        return false;
+    }
+
+    //
+    // Runs the forks, with a reporter sending their events back over an
+    // EventChannel when a feature needs them, then logs the failures those
+    // events reported.  Returns true if all tests pass.
+    //
+    private boolean runForking(String[] args, File outputFile) throws MojoFailureException {
+        runEvents = usesEvents() ? new RunEvents() : null;
+        if (watchdog != null) {
+            runEvents.addListener(watchdog);
+        }
+        if (mergedJUnitXml != null) {
+            runEvents.addListener(mergedJUnitXml);
+        }
+        telemetry.clear();
+        classData = classDataSharing();
+        try {
+            if (runEvents != null) {
+                eventChannel = new EventChannel(runEvents);
+            }
+        }
+        catch (IOException e) {
+            getLog().warn("Unable to open the event channel for the forked processes: " + e.getMessage());
+            if (watchdog != null) {
+                getLog().warn("Suites and tests cannot time out without the events of the forked processes.");
+            }
+            if (mergedJUnitXml != null) {
+                getLog().warn("The merged JUnit XML report is written from the events of the forked processes; it will be empty.");
+            }
+        }
+        if (eventJournal) {
+            try {
+                EventJournal.clear(eventJournalDirectory);
+                journalDirectory = eventJournalDirectory;
+            }
+            catch (IOException e) {
+                getLog().warn("Unable to record the event journal: " + e.getMessage());
+            }
+        }
+        try {
+            List<String> reporters = new ArrayList<String>();
+            if (eventChannel != null) {
+                reporters.addAll(Arrays.asList("-C", EventChannel.REPORTER));
+            }
+            if (journalDirectory != null) {
+                reporters.addAll(Arrays.asList("-C", EventJournal.REPORTER));
+            }
+            String[] forkArgs = concat(Arrays.asList(args), reporters);
+            if (usesSuiteQueue()) {
+                return runForkingInParallel(forkArgs, outputFile);
+            }
+            return runForkingOnce(forkArgs, outputFile, "fork");
+        }
+        finally {
+            if (eventChannel != null) {
+                try {
+                    eventChannel.close();
+                }
+                catch (IOException ignored) {}
+                eventChannel = null;
+                logFailures(runEvents.failures());
+            }
+            createClassDataArchives();
+            classData = null;
+            journalDirectory = null;
+        }
+    }
+
+    //
+    // Generates the reports args ask for from the events of the recorded
+    // run instead of running the tests.  Returns true if that run passed.
+    //
+    private boolean replayEventJournal(String[] args) throws MojoFailureException {
+        if (EventJournal.files(eventJournalDirectory).length == 0) {
+            throw new MojoFailureException("No event journal in " + eventJournalDirectory
+                    + "; record one by running the tests with eventJournal set to true.");
+        }
+        List<String> replayArgs = new ArrayList<String>();
+        replayArgs.add(eventJournalDirectory.getAbsolutePath());
+        replayArgs.addAll(reporterArguments(args));
+        List<String> classpath = new ArrayList<String>(testClasspathElements());
+        classpath.add(classpathElementOf(ForkMain.class));
+        Commandline cli = forkCommandline(EventJournal.REPLAY, replayArgs.toArray(new String[replayArgs.size()]), classpath);
+        logForkCommand(cli);
+        getLog().info("Replaying the event journal in " + eventJournalDirectory + " instead of running the tests.");
+
+        int result;
+        try {
+            result = ForkLauncher.execute(cli, getOutputFile(), System.out, forkedProcessTimeoutInSeconds);
+        }
+        catch (final CommandLineTimeOutException e) {
+            throw new MojoFailureException(String.format("Timed out after %d seconds waiting for forked process to complete.", forkedProcessTimeoutInSeconds), e);
+        }
+        catch (final CommandLineException e) {
+            throw new MojoFailureException("Exception while executing forked process.", e);
+        }
+        if (result == EventJournal.CANNOT_REPLAY) {
+            throw new MojoFailureException("Unable to replay the event journal in " + eventJournalDirectory + ".");
+        }
+        return result == 0;
+    }
+
+    // The arguments of args that configure the reporters of Runner
+    static List<String> reporterArguments(String[] args) {
+        List<String> reporterArgs = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            String flag = args[i].length() < 2 ? args[i] : args[i].substring(0, 2);
+            if (REPORTER_FLAGS_WITH_VALUE.contains(flag) && i + 1 < args.length) {
+                reporterArgs.add(args[i]);
+                reporterArgs.add(args[++i]);
+            }
+            else if (flag.equals("-o") || flag.equals("-e")) {
+                reporterArgs.add(args[i]);
+            }
+        }
+        return reporterArgs;
+    }
+
+    // The class data sharing archives for forks of the JVM, or null when not used
+    private ClassDataSharing classDataSharing() {
+        if (!classDataSharing) {
+            return null;
+        }
+        if (ForkClasspath.MANIFEST.equals(forkClasspath)) {
+            getLog().info("Class data sharing is not used with forkClasspath \"manifest\".");
+            return null;
+        }
+        String version = ClassDataSharing.javaVersion(forkJvm());
+        if (!ClassDataSharing.supports(version)) {
+            getLog().info("Class data sharing needs Java 10 or later in the forked processes, not "
+                    + (version == null ? "an unknown version" : version) + ".");
+            return null;
+        }
+        return new ClassDataSharing(classDataSharingDirectory, forkJvm());
+    }
+
+    //
+    // Whether forks with the given classpath can share class data, which
+    // puts the jars first: not when that would hide resources and classes
+    // of the project behind a copy in a jar.  Warns once per classpath.
+    //
+    synchronized boolean sharesClassData(List<String> classpath) {
+        Boolean known = classDataClasspaths.get(classpath);
+        if (known != null) {
+            return known;
+        }
+        boolean shares = false;
+        try {
+            List<String> shadowed = new ArrayList<String>(ClassDataSharing.shadowed(classpath));
+            if (shadowed.isEmpty()) {
+                shares = true;
+            }
+            else {
+                int shown = Math.min(shadowed.size(), 10);
+                getLog().warn("Class data sharing is skipped for these forks, as putting the dependency jars first "
+                        + "on the classpath would take these resources and classes of the project from a jar instead: "
+                        + String.join(", ", shadowed.subList(0, shown))
+                        + (shadowed.size() > shown ? String.format(" and %d more", shadowed.size() - shown) : "")
+                        + ".");
+            }
+        }
+        catch (IOException e) {
+            getLog().warn("Class data sharing is skipped for these forks, as the classpath could not be checked "
+                    + "for resources it would hide: " + e.getMessage());
+        }
+        classDataClasspaths.put(classpath, shares);
+        return shares;
+    }
+
+    private void createClassDataArchives() {
+        if (classData == null || !classData.hasRecordings()) {
+            return;
+        }
+        try {
+            for (File archive : classData.createArchives()) {
+                getLog().info("Created class data sharing archive " + archive + ".");
+            }
+        }
+        catch (IOException e) {
+            getLog().warn("Unable to create the class data sharing archive: " + e.getMessage());
+        }
+    }
+
+    // The events of the last run, or null when it did not fork
+    RunEvents runEvents() {
+        return runEvents;
+    }
+
+    // Times to rerun what failed in a forked run; TestMojo makes this configurable
+    int rerunFailingTestsCount() {
+        return 0;
+    }
+
+    // Whether TestMojo writes a timing report from the events of the run
+    boolean timingReport() {
+        return false;
+    }
+
+    //
+    // Whether a feature of the run needs the events of its forks.  Without
+    // one, the forks are started as they would be without the plugin's
+    // reporter, which is built against a ScalaTest and Scala version that
+    // need not be the ones of the project.
+    //
+    private boolean usesEvents() {
+        return watchdog != null || mergedJUnitXml != null || profileSettings != null || failFast
+                || rerunFailingTestsCount() > 0 || orderedByHistory() || timingReport();
+    }
+
+    // The tests and suites of the last run that failed and then passed on a rerun
+    List<String> flakyTests() {
+        return flakyTests;
+    }
+
+    //
+    // Reruns the failed tests and aborted suites of a forked run with args
+    // that did not pass in a new fork, then what failed in that fork, up to
+    // rerunFailingTestsCount times, and merges the reports of each rerun into
+    // those of the run.  Returns true if the run, or the last rerun, passed.
+    //
+    private boolean rerunFailures(String[] args, boolean passed, File outputFile) throws MojoFailureException {
+        flakyTests = Collections.emptyList();
+        int reruns = rerunFailingTestsCount();
+        if (passed || reruns <= 0 || runEvents == null) {
+            return passed;
+        }
+        List<EventChannel.Event> failures = runEvents.failures();
+        List<String> flaky = new ArrayList<String>();
+        for (int rerun = 1; rerun <= reruns && !failures.isEmpty(); rerun++) {
+            List<String> suiteArgs = Reruns.suiteArgs(failures);
+            if (suiteArgs == null) {
+                getLog().warn("Not rerunning the failed tests, as the run aborted.");
+                break;
+            }
+            getLog().info(String.format("Rerunning %d failed tests and aborted suites in a new fork (rerun %d of %d).",
+                    failures.size(), rerun, reruns));
+            RunEvents rerunEvents = new RunEvents();
+            if (watchdog != null) {
+                rerunEvents.addListener(watchdog);
+            }
+            if (mergedJUnitXml != null) {
+                mergedJUnitXml.rerun(rerun);
+                rerunEvents.addListener(mergedJUnitXml);
+            }
+            try {
+                eventChannel = new EventChannel(rerunEvents);
+            }
+            catch (IOException e) {
+                getLog().warn("Unable to open the event channel for the rerun: " + e.getMessage());
+                break;
+            }
+            boolean rerunPassed;
+            try {
+                List<String> rerunArgs = Reruns.rerunArgs(args, suiteArgs, rerun);
+                rerunArgs.addAll(Arrays.asList("-C", EventChannel.REPORTER));
+                rerunPassed = runForkingOnce(rerunArgs.toArray(new String[rerunArgs.size()]), outputFile, "rerun-" + rerun);
+            }
+            finally {
+                try {
+                    eventChannel.close();
+                }
+                catch (IOException ignored) {}
+                eventChannel = null;
+            }
+            try {
+                Reruns.mergeReports(args, rerun, abortedSuites(failures));
+            }
+            catch (IOException e) {
+                getLog().warn("Unable to merge the reports of the rerun: " + e.getMessage());
+            }
+            for (String test : Reruns.passed(failures, rerunEvents)) {
+                flaky.add(String.format("%s (passed on rerun %d)", test, rerun));
+            }
+            failures = rerunEvents.failures();
+            passed = rerunPassed && failures.isEmpty();
+            logFailures(failures);
+        }
+        flakyTests = unmodifiableList(flaky);
+        if (!flaky.isEmpty()) {
+            getLog().warn("Flaky tests, which failed and then passed on a rerun:");
+            for (String test : flaky) {
+                getLog().warn("  " + test);
+            }
+        }
+        return passed;
+    }
+
+    private static Set<String> abortedSuites(List<EventChannel.Event> failures) {
+        Set<String> suites = new HashSet<String>();
+        for (EventChannel.Event failure : failures) {
+            if (failure.kind == EventChannel.Kind.SUITE_ABORTED) {
+                suites.add(failure.suiteClassName);
+            }
+        }
+        return suites;
+    }
+
+    private void logFailures(List<EventChannel.Event> failures) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        getLog().error("Failed tests:");
+        for (EventChannel.Event failure : failures.subList(0, Math.min(failures.size(), MAX_FAILURES_LOGGED))) {
+            getLog().error("  " + RunEvents.describe(failure));
+        }
+        if (failures.size() > MAX_FAILURES_LOGGED) {
+            getLog().error(String.format("  ... and %d more", failures.size() - MAX_FAILURES_LOGGED));
+        }
+    }
+
+    // Whether to run only the suites affected by changes since the last successful run
+    boolean incremental() {
+        return false;
+    }
+
+    //
+    // Returns false when the plugin has worked out that there is nothing
+    // to run, which the Runner would otherwise take as a request to
+    // discover every suite.
+    //
+    private boolean hasSuitesToRun() throws MojoFailureException {
+        if (shardCount > 1) {
+            if (shardIndex < 0 || shardIndex >= shardCount) {
+                throw new MojoFailureException(String.format("shardIndex must be between 0 and %d, but was %d.", shardCount - 1, shardIndex));
+            }
+            if (plannedSuites() == null) {
+                throw new MojoFailureException("shardCount cannot be used with testNGXMLFiles, junitClasses or testsFiles.");
+            }
+        }
+        if (selectsSuites() && plannedSuites().isEmpty()) {
+            getLog().info("No suites to run.");
+            return false;
+        }
+        return true;
+    }
+
+    // Returns true if all tests pass
+    private boolean runWithoutForking(String[] args) {
+        try (
+            final ClassLoaderCache.Lease lease = classLoader()
+        ) {
+            return (Boolean) run(lease.loader()).invoke(null, new Object[]{args});
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            Throwable target = e.getTargetException();
+            if(target instanceof RuntimeException){
+                throw (RuntimeException)target;
+            } else {
+                throw new IllegalArgumentException(target);
+            }
+        }
+    }
+
+    // Returns true if all tests pass
+    private boolean runForkingOnce(String[] args, File outputFile, String name) throws MojoFailureException {
+        final List<String> classpath = new ArrayList<String>(testClasspathElements());
+        if (eventChannel != null || journalDirectory != null) {
+            classpath.add(classpathElementOf(ForkMain.class));
+        }
+        ForkTelemetry forkTelemetry = forkTelemetry(name);
+        final Commandline cli = forkCommandline("org.scalatest.tools.Runner", args, classpath, name, forkTelemetry);
+        logForkCommand(cli);
+
+        try {
+            final int result = executeWithinLimits(cli, outputFile, -1, forkTelemetry);
+
+            return result == 0;
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while waiting to start the forked process.", e);
+        }
+        catch (final CommandLineTimeOutException e) {
+            throw new MojoFailureException(String.format("Timed out after %d seconds waiting for forked process to complete.", forkedProcessTimeoutInSeconds), e);
+        }
+        catch (final CommandLineException e) {
+            throw new MojoFailureException("Exception while executing forked process.", e);
+        }
+    }
+
+    // Returns true if all tests pass
+    private boolean runForkingInParallel(String[] args, final File outputFile) throws MojoFailureException {
+        List<List<String>> suites = plannedSuites();
+        int forks = Math.min(forkCount(), suites.size());
+        if (forks == 0) {
+            getLog().info("No suites found to run.");
+            return true;
+        }
+        getLog().info(String.format("Running %d suites in %d forked JVMs.", suites.size(), forks));
+
+        final SuiteQueue queue;
+        try {
+            queue = new SuiteQueue(suites, forks, failFast ? 1 : Integer.MAX_VALUE);
+        }
+        catch (IOException e) {
+            throw new MojoFailureException("Unable to open the suite queue for the forked processes.", e);
+        }
+        if (failFast) {
+            stopOnFailures(queue);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(forks);
+        try {
+            final List<String> classpath = new ArrayList<String>(testClasspathElements());
+            classpath.add(classpathElementOf(ForkMain.class));
+
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int fork = 0; fork < forks; fork++) {
+                List<String> forkArgs = new ArrayList<String>();
+                forkArgs.add(String.valueOf(queue.getPort()));
+                forkArgs.add(String.valueOf(fork));
+                forkArgs.addAll(Arrays.asList(args));
+
+                final int forkNumber = fork;
+                final ForkTelemetry forkTelemetry = forkTelemetry("fork-" + fork);
+                final Commandline cli = forkCommandline(ForkMain.class.getName(),
+                        forkArgs.toArray(new String[forkArgs.size()]), classpath, "fork-" + fork, forkTelemetry);
+                logForkCommand(cli);
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws CommandLineException, InterruptedException {
+                        return executeWithinLimits(cli, outputFile, forkNumber, forkTelemetry);
+                    }
+                }));
+            }
+
+            boolean passed = true;
+            for (Future<Integer> result : results) {
+                passed &= result.get() == 0;
+            }
+            return passed;
+        }
+        catch (final ExecutionException e) {
+            if (e.getCause() instanceof CommandLineTimeOutException) {
+                throw new MojoFailureException(String.format("Timed out after %d seconds waiting for forked process to complete.", forkedProcessTimeoutInSeconds), e.getCause());
+            }
+            throw new MojoFailureException("Exception while executing forked process.", e.getCause());
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while waiting for forked processes to complete.", e);
+        }
+        finally {
+            executor.shutdownNow();
+            try {
+                queue.close();
+            }
+            catch (IOException ignored) {}
+            mergeReportParts(args, queue.batches());
+            if (queue.skipped() > 0) {
+                getLog().warn(String.format("Stopped after %d failures as failFast is set; %d suites did not run.",
+                        failFastThreshold, queue.skipped()));
+            }
+        }
+    }
+
+    //
+    // Runs the fork of cli, with the given number or -1, once it fits within
+    // the limits on forks of the whole build.  Returns its exit code.
+    //
+    private int executeWithinLimits(Commandline cli, File outputFile, int fork, ForkTelemetry forkTelemetry)
+            throws CommandLineException, InterruptedException {
+        ForkLimiter.Limits limits = new ForkLimiter.Limits(parseLimit(maxConcurrentForks),
+                parseLimit(maxConcurrentTestThreads), parseMemorySize(maxConcurrentForkHeap));
+        if (limits.isEmpty()) {
+            return execute(cli, outputFile, fork, forkTelemetry);
+        }
+        ForkLimiter limiter = ForkLimiter.forSession(session);
+        ForkLimiter.Permit permit = limiter.acquire(limits, testThreads(), forkHeap());
+        try {
+            String message = String.format("%s waited %.1f s to fork within the limits of the build; %s now running.",
+                    project.getArtifactId(), permit.waitedMillis / 1000.0, limiter.usage());
+            if (permit.waitedMillis >= 100) {
+                getLog().info(message);
+            } else {
+                getLog().debug(message);
+            }
+            return execute(cli, outputFile, fork, forkTelemetry);
+        }
+        finally {
+            permit.release();
+        }
+    }
+
+    private int execute(Commandline cli, File outputFile, int fork, ForkTelemetry forkTelemetry) throws CommandLineException {
+        List<ForkLauncher.Observer> observers = new ArrayList<ForkLauncher.Observer>();
+        if (forkTelemetry != null) {
+            observers.add(forkTelemetry);
+        }
+        if (watchdog != null) {
+            observers.add(watchdog.observer(fork));
+        }
+        try {
+            return ForkLauncher.execute(cli, outputFile, System.out, forkedProcessTimeoutInSeconds,
+                    observers.toArray(new ForkLauncher.Observer[observers.size()]));
+        }
+        finally {
+            if (forkTelemetry != null) {
+                telemetry.add(forkTelemetry);
+                getLog().info("Telemetry of " + forkTelemetry.summary());
+            }
+        }
+    }
+
+    //
+    // The telemetry of the fork with the given name, with its GC log in
+    // the telemetry directory, or null when forkTelemetry is not set.
+    //
+    private ForkTelemetry forkTelemetry(String name) {
+        if (!forkTelemetry) {
+            return null;
+        }
+        File directory = new File(project.getBuild().getDirectory(), "scalatest-telemetry");
+        directory.mkdirs();
+        File gcLog = new File(directory, name + "-gc.log");
+        gcLog.delete();
+        return new ForkTelemetry(name, gcLog, new File("/proc"));
+    }
+
+    // The telemetry of the forks of the last run, in the order they ended
+    List<ForkTelemetry> telemetry() {
+        synchronized (telemetry) {
+            return new ArrayList<ForkTelemetry>(telemetry);
+        }
+    }
+
+    // The maximum heap of a fork, or 0 when it is left to the JVM
+    private long forkHeap() {
+        long heap = maxHeap(argLine);
+        return heap > 0 ? heap : autoForkHeap;
+    }
+
+    // The test threads a fork runs, as the Runner decides them
+    private int testThreads() {
+        if (runsForksAsThreads()) {
+            return forkCount();
+        }
+        if (!parallel) {
+            return 1;
+        }
+        return threadCount > 0 ? threadCount : 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    // Has the events of the forks stop the queue once failFastThreshold failures are reported
+    private void stopOnFailures(final SuiteQueue queue) {
+        if (eventChannel == null) {
+            getLog().warn("failFast needs the events of the forked processes; running all suites.");
+            return;
+        }
+        runEvents.addListener(new EventChannel.Listener() {
+            private int failures;
+
+            public synchronized void event(EventChannel.Event event) {
+                if (event.kind == EventChannel.Kind.TEST_FAILED || event.kind == EventChannel.Kind.SUITE_ABORTED
+                        || event.kind == EventChannel.Kind.RUN_ABORTED) {
+                    if (++failures == Math.max(1, failFastThreshold)) {
+                        queue.stop();
+                    }
+                }
+            }
+        });
+    }
+
+    // Returns true if all tests pass
+    private boolean runInDaemon(String[] args) throws MojoFailureException {
+        List<String> jars = new ArrayList<String>();
+        List<String> directories = new ArrayList<String>();
+        for (String element : testClasspathElements()) {
+            if (new File(element).isDirectory()) {
+                directories.add(element);
+            }
+            else {
+                jars.add(element);
+            }
+        }
+        jars.add(classpathElementOf(DaemonMain.class));
+
+        Commandline cli = forkCommandline(DaemonMain.class.getName(), new String[0], jars);
+        String fingerprint = daemonFingerprint(cli, jars);
+        DaemonClient daemon = new DaemonClient(daemonDirectory, fingerprint);
+        stopReplacedDaemon(fingerprint);
+
+        cli.createArg().setValue(daemon.portFile().getAbsolutePath());
+        cli.createArg().setValue(String.valueOf(daemonIdleTimeoutInSeconds));
+        cli.createArg().setValue(fingerprint);
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("basedir", project.getBasedir().getAbsolutePath());
+
+        try (
+            final Writer outputWriter = getOutputWriter()
+        ) {
+            final StreamConsumer outputConsumer = new WriterStreamConsumer(outputWriter);
+            for (int attempt = 0; ; attempt++) {
+                Socket socket = daemon.connect();
+                if (socket == null) {
+                    logForkCommand(cli);
+                    long start = System.currentTimeMillis();
+                    socket = daemon.connectOrStart(cli, DAEMON_STARTUP_TIMEOUT_SECONDS);
+                    getLog().info(String.format("Started ScalaTest daemon %s in %d ms.", fingerprint, System.currentTimeMillis() - start));
+                }
+                else {
+                    getLog().info("Running in ScalaTest daemon " + fingerprint + ".");
+                }
+
+                Boolean passed = daemon.run(socket, directories, properties, args, outputConsumer, forkedProcessTimeoutInSeconds);
+                if (passed != null) {
+                    return passed;
+                }
+                if (attempt > 0) {
+                    throw new MojoFailureException("The ScalaTest daemon at " + daemon.portFile() + " rejected the run.");
+                }
+                daemon.forget();
+            }
+        }
+        catch (final SocketTimeoutException e) {
+            // The daemon is stuck in the run; leave it to exit by itself and start afresh next time
+            daemon.forget();
+            throw new MojoFailureException(String.format("Timed out after %d seconds waiting for the ScalaTest daemon to complete.", forkedProcessTimeoutInSeconds), e);
+        }
+        catch (IOException e) {
+            throw new MojoFailureException("Exception while running ScalaTest in the daemon.", e);
+        }
+    }
+
+    //
+    // Hashes everything that is fixed when a daemon starts, so that a
+    // daemon is only reused while all of it stays the same.  Jars are
+    // identified by size and modification time so that rebuilt snapshots
+    // are noticed.
+    //
+    private String daemonFingerprint(Commandline cli, List<String> jars) {
+        List<String> parts = new ArrayList<String>();
+        parts.addAll(Arrays.asList(cli.getCommandline()));
+        if (environmentVariables != null) {
+            parts.add(new TreeMap<String, String>(environmentVariables).toString());
+        }
+        parts.add(String.valueOf(cli.getWorkingDirectory()));
+        for (String jar : jars) {
+            File file = new File(jar);
+            parts.add(jar + "@" + file.length() + "@" + file.lastModified());
+        }
+        return fingerprint(parts);
+    }
+
+    //
+    // Asks the daemon this module used last to exit when the module now
+    // needs a different one, rather than leaving it to idle out.
+    //
+    private void stopReplacedDaemon(String fingerprint) {
+        File record = new File(project.getBuild().getDirectory(), "scalatest-daemon.fingerprint");
+        try {
+            String previous = readFully(record).trim();
+            if (!previous.isEmpty() && !previous.equals(fingerprint)) {
+                getLog().info("Stopping ScalaTest daemon " + previous + " as its classpath or JVM options changed.");
+                new DaemonClient(daemonDirectory, previous).shutdown();
+            }
+        }
+        catch (IOException e) {
+            // No daemon recorded yet
+        }
+        try {
+            writeFully(record, fingerprint);
+        }
+        catch (IOException e) {
+            getLog().debug("Unable to record the ScalaTest daemon used: " + e.getMessage());
+        }
+    }
+
+    // The java executable of forked processes
+    private String forkJvm() {
+        return jvm == null || jvm.isEmpty() ? getJvm() : jvm;
+    }
+
+    private void logForkCommand(Commandline cli) {
+        final String commandLogStatement = "Forking ScalaTest via: " + cli;
+        if (logForkedProcessCommand) {
+            getLog().info(commandLogStatement);
+        } else {
+            getLog().debug(commandLogStatement);
+        }
+    }
+
+    private Commandline forkCommandline(String mainClass, String[] args, List<String> classpath) throws MojoFailureException {
+        return forkCommandline(mainClass, args, classpath, null, null);
+    }
+
+    //
+    // The command line of a fork of the test run with the given name, such
+    // as "fork-2", or with a null name for other forks.
+    //
+    private Commandline forkCommandline(String mainClass, String[] args, List<String> classpath, String name,
+                                        ForkTelemetry forkTelemetry) throws MojoFailureException {
+        final Commandline cli = new Commandline();
+        if ((this.workingDirectory == null || this.workingDirectory.isEmpty())) {
+            cli.setWorkingDirectory(project.getBasedir());
+        } else {
+            cli.setWorkingDirectory(workingDirectory);
+        }
+
+        cli.setExecutable(forkJvm());
+        boolean sharesClassData = classData != null && sharesClassData(classpath);
+        if (sharesClassData) {
+            classpath = ClassDataSharing.jarsFirst(classpath);
+        }
+
+        // Set up environment
+        if (environmentVariables != null) {
+            for (final Map.Entry<String, String> entry : environmentVariables.entrySet()) {
+                cli.addEnvironment(entry.getKey(), entry.getValue());
+            }
+        }
+        if (forkClasspath == null || forkClasspath.equals(ForkClasspath.ENVIRONMENT)) {
+            cli.addEnvironment("CLASSPATH", buildClassPathEnvironment(classpath));
+        }
+
+        // Set up system properties
+        if (systemProperties != null) {
+            for (final Map.Entry<String, String> entry : systemProperties.entrySet()) {
+                cli.createArg().setValue(String.format("-D%s=%s", entry.getKey(), entry.getValue()));
+            }
+        }
+        cli.createArg().setValue(String.format("-Dbasedir=%s", project.getBasedir().getAbsolutePath()));
+        if (eventChannel != null) {
+            cli.createArg().setValue(String.format("-D%s=%d", EventChannel.PORT_PROPERTY, eventChannel.getPort()));
+        }
+        if (journalDirectory != null) {
+            cli.createArg().setValue(String.format("-D%s=%s", EventJournal.DIRECTORY_PROPERTY, journalDirectory.getAbsolutePath()));
+        }
+
+        // Share the classes of the dependency jars, before argLine so that it can turn that off
+        if (sharesClassData) {
+            try {
+                cli.addArguments(classData.jvmArguments(ClassDataSharing.jars(classpath)).toArray(new String[0]));
+            }
+            catch (IOException e) {
+                getLog().warn("Unable to use class data sharing: " + e.getMessage());
+            }
+        }
+
+        // Have the fork log its GC pauses for its telemetry
+        if (forkTelemetry != null) {
+            int javaVersion = ClassDataSharing.majorVersion(ClassDataSharing.javaVersion(forkJvm()));
+            cli.addArguments(forkTelemetry.jvmArguments(javaVersion).toArray(new String[0]));
+        }
+
+        // Have the fork record a profile of the run
+        if (profileSettings != null && name != null) {
+            File recording = JfrProfile.recording(profileDirectory(), name);
+            cli.addArguments(JfrProfile.jvmArguments(recording, profileSettings).toArray(new String[0]));
+        }
+
+        // The heap chosen by autoSizing, which argLine does not set
+        if (autoForkHeap > 0) {
+            cli.createArg().setValue(String.format("-Xmx%dm", autoForkHeap >> 20));
+        }
+
+        // Set user specified JVM arguments
+        if (argLine != null) {
+            cli.createArg().setLine(stripNewLines(argLine));
+        }
+
+        // Set debugging JVM arguments if debugging is enabled
+        if (debugForkedProcess) {
+            cli.createArg().setLine(stripNewLines(forkedProcessDebuggingArguments()));
+        }
+
+        // Pass the classpath in a file if so configured
+        if (forkClasspath != null && !forkClasspath.equals(ForkClasspath.ENVIRONMENT)) {
+            cli.addArguments(classpathFileArguments(classpath));
+        }
+
+        // Set ScalaTest arguments
+        cli.createArg().setValue(mainClass);
+        for (final String arg : args) {
+            cli.createArg().setValue(arg);
+        }
+        return cli;
+    }
+
+    //
+    // Concatenates, in batch order, the parts ForkMain had each batch write
+    // for the -f and -M files in args, then deletes the parts.
+    //
+    private void mergeReportParts(String[] args, int batches) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (ForkMain.isPartitionedFileArg(args[i])) {
+                File target = new File(args[++i]);
+                try {
+                    mergeParts(target, ForkMain.PART_SUFFIX, batches);
+                }
+                catch (IOException e) {
+                    getLog().warn("Unable to merge the report parts of " + target + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    //
+    // The file forked JVMs write their output to, or null to have it pumped
+    // to the console.  Forks append to it, so it is emptied once per run.
+    //
+    File getOutputFile() throws MojoFailureException {
+        return null;
+    }
+
+    protected Writer getOutputWriter() throws MojoFailureException {
+        return new PrintWriter(System.out) {
+            @Override
+            public void close() {
+                out = null; // System.out should stay open
+            }
+        };
+    }
+
+    private String[] classpathFileArguments(List<String> classpath) throws MojoFailureException {
+        File directory = new File(project.getBuild().getDirectory(), "scalatest-classpath");
+        try {
+            if (forkClasspath.equals(ForkClasspath.MANIFEST)) {
+                return new String[]{"-classpath", ForkClasspath.pathingJar(directory, classpath).getAbsolutePath()};
+            }
+            else if (forkClasspath.equals(ForkClasspath.ARGFILE)) {
+                return new String[]{"@" + ForkClasspath.argFile(directory, classpath).getAbsolutePath()};
+            }
+        }
+        catch (IOException e) {
+            throw new MojoFailureException("Unable to write the classpath of the forked process to " + directory, e);
+        }
+        throw new MojoFailureException("forkClasspath must be \"environment\", \"manifest\" or \"argfile\", not \"" + forkClasspath + "\".");
+    }
+
+    static String buildClassPathEnvironment(List<String> classpath) {
+        StringBuilder buf = new StringBuilder();
+        boolean first = true;
+        for (String e : classpath) {
+            if (first) {
+                first = false;
+            }
+            else {
+                buf.append(File.pathSeparator);
+            }
+            buf.append(e);
+        }
+        return buf.toString();
+    }
+
+    private String forkedProcessDebuggingArguments() {
+        if (debugArgLine == null) {
+            return String.format("-Xdebug -Xrunjdwp:transport=dt_socket,server=y,suspend=y,address=%s", debuggerPort);
+        } else {
+            return debugArgLine;
+        }
+    }
+
+    protected boolean isScalaTestAvailable() {
+        try (
+            final ClassLoaderCache.Lease lease = classLoader()
+        ) {
+            lease.loader().loadClass("org.scalatest.tools.Runner");
+            return true;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    // This is just used by runWithoutForking to get the method to invoke
+    private Method run(ClassLoader loader) {
         try {
-            Class<?> runner = classLoader().loadClass("org.scalatest.tools.Runner");
+            Class<?> runner = loader.loadClass("org.scalatest.tools.Runner");
             return runner.getMethod("run", String[].class);
         } catch (NoSuchMethodException e) {
             throw new IllegalStateException(e);
@@ -416,21 +1720,222 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
         }
     }
 
-    // This is just used by run to get a class loader from which to load ScalaTest
-    private ClassLoader classLoader() {
+    //
+    // This is just used by run to get a class loader from which to load
+    // ScalaTest.  Jars resolved from the local repository go in a loader
+    // shared with other modules that have the same ones; jars of modules in
+    // the reactor, and anything else, go in a child loader of this module.
+    // Class directories are left to the runpath, as ever.
+    //
+    ClassLoaderCache.Lease classLoader() {
         try {
-            List<URL> urls = new ArrayList<URL>();
-            for (String element : testClasspathElements()) {
-                File file = new File(element);
+            List<String> sharedIds = new ArrayList<String>();
+            List<File> shared = new ArrayList<File>();
+            List<File> rest = new ArrayList<File>();
+            splitClasspath(project, testClasspathElements(), sharedIds, shared, rest);
+
+            List<URL> sharedJars = new ArrayList<URL>();
+            for (File jar : shared) {
+                sharedJars.add(jar.toURI().toURL());
+            }
+            List<String> moduleIds = new ArrayList<String>();
+            List<URL> moduleJars = new ArrayList<URL>();
+            moduleIds.add(project.getId());
+            for (File file : rest) {
                 if (file.isFile()) {
-                    urls.add(file.toURI().toURL());
+                    moduleIds.add(file.getPath() + "@" + file.length() + "@" + file.lastModified());
+                    moduleJars.add(file.toURI().toURL());
                 }
             }
-            URL[] u = urls.toArray(new URL[urls.size()]);
-            return new URLClassLoader(u);
+            return ClassLoaderCache.acquire(cacheSession(), fingerprint(sharedIds), sharedJars, fingerprint(moduleIds), moduleJars);
         } catch (MalformedURLException e) {
             throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read the test classpath", e);
+        }
+    }
+
+    //
+    // Splits the test classpath elements of module into the jars resolved
+    // from the local repository, which modules with the same ones can share
+    // a class loader for, adding their ids with their size and modification
+    // time to sharedIds, and the rest: its class directories and jars from
+    // anywhere else.  The jars are not read, as isScalaTestAvailable gets
+    // here even when the tests only run in forks.
+    //
+    private void splitClasspath(MavenProject module, List<String> elements, List<String> sharedIds,
+                                List<File> shared, List<File> rest) throws IOException {
+        Map<String, Artifact> artifacts = new HashMap<String, Artifact>();
+        for (Artifact artifact : module.getArtifacts()) {
+            if (artifact.getFile() != null) {
+                artifacts.put(artifact.getFile().getAbsolutePath(), artifact);
+            }
+        }
+        String repository = localRepository();
+
+        for (String element : elements) {
+            File file = new File(element).getAbsoluteFile();
+            Artifact artifact = file.isFile() ? artifacts.get(file.getPath()) : null;
+            if (artifact != null && repository != null && file.getPath().startsWith(repository)) {
+                sharedIds.add(artifact.getId() + "@" + file.length() + "@" + file.lastModified());
+                shared.add(file);
+            }
+            else {
+                rest.add(file);
+            }
+        }
+    }
+
+    private String localRepository() {
+        if (session == null || session.getLocalRepository() == null) {
+            return null;
+        }
+        return new File(session.getLocalRepository().getBasedir()).getAbsolutePath() + File.separator;
+    }
+
+    //
+    // What the class loaders of the build are cached under, ended with the
+    // build by a SessionEndListener, or null to cache nothing.
+    //
+    private Object cacheSession() {
+        if (session == null || session.getRequest() == null) {
+            return null;
+        }
+        SessionEndListener.register(session.getRequest());
+        return session.getRequest();
+    }
+
+    //
+    // The plan for running the tests of module in a fork that runs those of
+    // several modules: its jars from the local repository, with the plugin,
+    // go into a class loader shared with the modules with the same ones, and
+    // the rest of its test classpath onto the runpath of its own Runner,
+    // ahead of the Runner arguments args.
+    //
+    AggregateMain.Module aggregatedModule(int number, MavenProject module, List<String> args) throws MojoFailureException {
+        List<String> sharedIds = new ArrayList<String>();
+        List<File> shared = new ArrayList<File>();
+        List<File> rest = new ArrayList<File>();
+        try {
+            splitClasspath(module, (List<String>) module.getTestClasspathElements(), sharedIds, shared, rest);
+        }
+        catch (DependencyResolutionRequiredException e) {
+            throw new MojoFailureException("The test dependencies of " + module.getArtifactId() + " are not resolved.", e);
+        }
+        catch (IOException e) {
+            throw new MojoFailureException("Unable to read the test classpath of " + module.getArtifactId() + ".", e);
+        }
+
+        List<String> jars = new ArrayList<String>();
+        for (File jar : shared) {
+            jars.add(jar.getPath());
+        }
+        jars.add(classpathElementOf(ForkMain.class));
+        List<String> runpath = new ArrayList<String>();
+        for (File element : rest) {
+            runpath.add(element.getPath().replaceAll(" ", "\\\\ "));
         }
+        runpath.add(this.runpath);
+
+        List<String> runnerArgs = new ArrayList<String>(compoundArg("-R", runpath.toArray(new String[runpath.size()])));
+        runnerArgs.addAll(args);
+        return new AggregateMain.Module(number, module.getArtifactId(), module.getBasedir().getAbsolutePath(),
+                fingerprint(sharedIds), jars, runnerArgs);
+    }
+
+    //
+    // Runs the tests of modules in at most the given number of forks, each
+    // running its share of them one after the other, with a reporter
+    // sending their events back over an EventChannel.  Returns true if all
+    // tests pass.
+    //
+    boolean runAggregated(List<AggregateMain.Module> modules, int forks) throws MojoFailureException {
+        runEvents = new RunEvents();
+        mergedJUnitXml = openMergedJUnitXml();
+        if (mergedJUnitXml != null) {
+            runEvents.addListener(mergedJUnitXml);
+        }
+        telemetry.clear();
+        try {
+            eventChannel = new EventChannel(runEvents);
+        }
+        catch (IOException e) {
+            getLog().warn("Unable to open the event channel for the forked processes: " + e.getMessage());
+        }
+        List<List<AggregateMain.Module>> shares = AggregateMain.share(modules, forks);
+        File directory = new File(project.getBuild().getDirectory(), "scalatest-aggregate");
+        final File outputFile = getOutputFile();
+        profileSettings = profileSettings();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(shares.size());
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int fork = 0; fork < shares.size(); fork++) {
+                String name = shares.size() == 1 ? "fork" : "fork-" + fork;
+                File plan = new File(directory, name + ".plan");
+                AggregateMain.write(plan, withEventReporter(shares.get(fork)));
+
+                final ForkTelemetry forkTelemetry = forkTelemetry(name);
+                final Commandline cli = forkCommandline(AggregateMain.class.getName(),
+                        new String[]{plan.getAbsolutePath()}, singletonList(classpathElementOf(AggregateMain.class)),
+                        name, forkTelemetry);
+                logForkCommand(cli);
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws CommandLineException, InterruptedException {
+                        return executeWithinLimits(cli, outputFile, -1, forkTelemetry);
+                    }
+                }));
+            }
+
+            boolean passed = true;
+            for (Future<Integer> result : results) {
+                passed &= result.get() == 0;
+            }
+            return passed;
+        }
+        catch (final IOException e) {
+            throw new MojoFailureException("Unable to write the plan of the forked processes to " + directory + ".", e);
+        }
+        catch (final ExecutionException e) {
+            if (e.getCause() instanceof CommandLineTimeOutException) {
+                throw new MojoFailureException(String.format("Timed out after %d seconds waiting for forked process to complete.", forkedProcessTimeoutInSeconds), e.getCause());
+            }
+            throw new MojoFailureException("Exception while executing forked process.", e.getCause());
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while waiting for forked processes to complete.", e);
+        }
+        finally {
+            executor.shutdownNow();
+            if (eventChannel != null) {
+                try {
+                    eventChannel.close();
+                }
+                catch (IOException ignored) {}
+                eventChannel = null;
+            }
+            closeMergedJUnitXml();
+            if (profileSettings != null) {
+                summarizeProfile();
+                profileSettings = null;
+            }
+        }
+    }
+
+    // The modules with the reporter of the event channel added to their Runner arguments
+    private List<AggregateMain.Module> withEventReporter(List<AggregateMain.Module> modules) {
+        if (eventChannel == null) {
+            return modules;
+        }
+        List<AggregateMain.Module> reporting = new ArrayList<AggregateMain.Module>();
+        for (AggregateMain.Module module : modules) {
+            List<String> args = new ArrayList<String>(module.runnerArgs);
+            args.addAll(Arrays.asList("-C", EventChannel.REPORTER));
+            reporting.add(new AggregateMain.Module(module.number, module.name, module.basedir, module.sharedKey,
+                    module.sharedJars, args));
+        }
+        return reporting;
     }
 
     // Have to use the programmatic way of getting the classpath elements
@@ -450,9 +1955,18 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
 
     // This is the configuration parameters shared by all concrete Mojo subclasses
     List<String> sharedConfiguration() {
+        sizeForResources();
         return unmodifiableList(
             new ArrayList<String>() {{
             addAll(runpath());
+            addAll(runnerOptions());
+        }});
+    }
+
+    // The shared configuration but the runpath
+    List<String> runnerOptions() {
+        return unmodifiableList(
+            new ArrayList<String>() {{
             addAll(config());
             addAll(tagsToInclude());
             addAll(tagsToExclude());
@@ -524,6 +2038,8 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
             String useThreadCount = threadCount == 0 ? "" : ("" + threadCount);
             return unmodifiableList(singletonList("-P" + useSuiteSorting + useThreadCount));
         }
+        else if (runsForksAsThreads())
+            return unmodifiableList(singletonList("-P" + forkCount()));
         else
             return Collections.<String>emptyList();
     }
@@ -538,24 +2054,379 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
     // a substring.  A -t argument is used for tests preceded by an '@'
     // sign, and -z is used for others.
     //
+    // When the suite queue is used the suites are handed to the forks
+    // batch by batch instead.
+    //
     private List<String> suites() {
+        if (usesSuiteQueue()) {
+            return Collections.<String>emptyList();
+        }
         List<String> list = new ArrayList<String>();
+        for (List<String> suite : selectsSuites() ? plannedSuites() : suiteArgs()) {
+            list.addAll(suite);
+        }
+        return unmodifiableList(list);
+    }
+
+    private List<List<String>> suiteArgs() {
+        List<List<String>> list = new ArrayList<List<String>>();
 
         for (String suite: splitOnComma(suites)) {
             SuiteTestPair pair = new SuiteTestPair(suite);
 
             if (pair.suite != null) {
-                list.add("-s");
-                list.add(pair.suite);
+                List<String> args = new ArrayList<String>();
+                args.add("-s");
+                args.add(pair.suite);
 
                 if (pair.test != null) {
-                    addTest(list, pair.test);
+                    addTest(args, pair.test);
                 }
+                list.add(unmodifiableList(args));
             }
         }
         return unmodifiableList(list);
     }
 
+    int forkCount() {
+        return parseForkCount(forkCount);
+    }
+
+    //
+    // Fails on a fork count or limit that cannot be read, naming the
+    // parameter, before any of them is used.
+    //
+    void checkForkCounts() throws MojoFailureException {
+        checkCount("forkCount", forkCount);
+        checkCount("maxConcurrentForks", maxConcurrentForks);
+        checkCount("maxConcurrentTestThreads", maxConcurrentTestThreads);
+        try {
+            parseMemorySize(maxConcurrentForkHeap);
+        }
+        catch (RuntimeException e) {
+            throw new MojoFailureException("maxConcurrentForkHeap must be a size such as \"4g\" or \"512m\", not \""
+                    + maxConcurrentForkHeap + "\".");
+        }
+    }
+
+    private static void checkCount(String parameter, String value) throws MojoFailureException {
+        try {
+            parseForkCount(value);
+        }
+        catch (NumberFormatException e) {
+            throw new MojoFailureException(parameter + " must be a number such as \"4\", or a number of forks per "
+                    + "processor such as \"1.5C\", not \"" + value + "\".");
+        }
+    }
+
+    //
+    // Chooses the forks, their heap and their test threads from the
+    // resources of the build when autoSizing is set, keeping what the
+    // configuration gives.
+    //
+    private void sizeForResources() {
+        if (!autoSizing || sized) {
+            return;
+        }
+        sized = true;
+        ContainerResources resources = ContainerResources.detect();
+        long reserved = Runtime.getRuntime().maxMemory();
+        boolean forking = !"never".equals(forkMode) && !"daemon".equals(forkMode);
+        if (forking && forkCount() == 1) {
+            forkCount = String.valueOf(resources.forks(reserved));
+        }
+        int forks = forking ? forkCount() : 1;
+        if (forking && maxHeap(argLine) == 0) {
+            autoForkHeap = resources.forkHeap(forks, reserved);
+        }
+        if (parallel && threadCount == 0) {
+            threadCount = resources.threads(forks);
+        }
+        getLog().info(String.format("Sized for %s: %s, %s, %s.", resources,
+                forking ? forks + (forks == 1 ? " fork" : " forks") : "no forks",
+                forkHeap() > 0 ? "-Xmx" + (forkHeap() >> 20) + "m" : "default heap",
+                parallel ? threadCount + " test threads" : "sequential tests"));
+    }
+
+    // True when the suites are served to several forks from a SuiteQueue
+    boolean usesSuiteQueue() {
+        return queuesSuites() && !writesHtmlReports();
+    }
+
+    // True when the configuration asks for the suite queue, HTML reports aside
+    private boolean queuesSuites() {
+        return !"never".equals(forkMode) && !"daemon".equals(forkMode) && (forkCount() > 1 || failFast)
+                && plannedSuites() != null;
+    }
+
+    //
+    // True when the HTML reports keep the forkCount forks from being used,
+    // as every batch of the queue would write over the report of the one
+    // before.  A single fork then runs forkCount suites at a time instead.
+    //
+    boolean runsForksAsThreads() {
+        return !parallel && forkCount() > 1 && writesHtmlReports() && queuesSuites();
+    }
+
+    // Whether the run writes HTML reports, which TestMojo configures
+    boolean writesHtmlReports() {
+        return false;
+    }
+
+    // True when the plugin, rather than the Runner, decides which suites run
+    boolean selectsSuites() {
+        return (shardCount > 1 || usesSuiteQueue() || incremental() || indexSuites || orderedByHistory())
+                && plannedSuites() != null;
+    }
+
+    //
+    // Returns the Runner arguments for each suite the plugin plans to run,
+    // or null when the suites to run can only be worked out by the Runner
+    // itself.
+    //
+    private List<List<String>> plannedSuites() {
+        if (!plannedSuitesResolved) {
+            plannedSuitesResolved = true;
+            if (testNGConfigFiles != null || jUnitClasses != null || testsFiles != null) {
+                if (forkCount() > 1) {
+                    getLog().warn("forkCount is ignored with testNGXMLFiles, junitClasses or testsFiles; "
+                            + "running in a single fork.");
+                }
+                if (incremental()) {
+                    getLog().warn("incremental is ignored with testNGXMLFiles, junitClasses or testsFiles; "
+                            + "running all suites.");
+                }
+                if (failFast) {
+                    getLog().warn("failFast is ignored with testNGXMLFiles, junitClasses or testsFiles; "
+                            + "running all suites.");
+                }
+                if (orderedByHistory()) {
+                    getLog().warn("suiteOrder is ignored with testNGXMLFiles, junitClasses or testsFiles.");
+                }
+            }
+            else {
+                // Like the Runner, discover suites unless named, or only in the packages given
+                List<List<String>> list = new ArrayList<List<String>>(suiteArgs());
+                if (suites == null || membersOnlySuites != null || wildcardSuites != null) {
+                    List<String> membersOnly = splitOnComma(membersOnlySuites);
+                    List<String> wildcard = splitOnComma(wildcardSuites);
+                    Set<String> named = new HashSet<String>();
+                    for (List<String> suite : list) {
+                        named.add(suite.get(1));
+                    }
+                    for (String suite : discoverSuites()) {
+                        if ((membersOnlySuites == null && wildcardSuites == null
+                                || SuiteDiscovery.inPackages(suite, membersOnly, wildcard)) && !named.contains(suite)) {
+                            list.add(unmodifiableList(Arrays.asList("-s", suite)));
+                        }
+                    }
+                }
+                list = shardCount > 1 ? shard(list) : list;
+                list = incremental() ? selectChanged(list) : list;
+                plannedSuites = orderedByHistory() ? orderByHistory(list) : unmodifiableList(list);
+            }
+        }
+        return plannedSuites;
+    }
+
+    // True when the suites run in the order of their history
+    private boolean orderedByHistory() {
+        if ("history".equals(suiteOrder)) {
+            return true;
+        }
+        if (suiteOrder != null && !suiteOrder.equals("default")) {
+            getLog().warn("Invalid suiteOrder: \"" + suiteOrder + "\"; using default instead.");
+            suiteOrder = "default";
+        }
+        return false;
+    }
+
+    private List<List<String>> orderByHistory(List<List<String>> suites) {
+        SuiteHistory history = SuiteHistory.read(suiteHistoryFile);
+        int failed = 0;
+        for (List<String> suite : suites) {
+            if (history.failedRecently(suite.get(1))) {
+                failed++;
+            }
+        }
+        getLog().info(String.format("Running %d suites that failed recently first, then the others longest first, "
+                + "as recorded in %s.", failed, suiteHistoryFile));
+        return history.order(suites);
+    }
+
+    //
+    // Adds the durations and failures of the suites of the last run to their
+    // history, read again in case another build recorded a run meanwhile.
+    //
+    private void recordSuiteHistory() {
+        if (!orderedByHistory() || runEvents == null) {
+            return;
+        }
+        Set<String> failed = new HashSet<String>();
+        for (EventChannel.Event failure : runEvents.failures()) {
+            if (failure.suiteClassName != null) {
+                failed.add(failure.suiteClassName);
+            }
+        }
+        SuiteHistory history = SuiteHistory.read(suiteHistoryFile);
+        history.record(runEvents.suiteDurations(), failed);
+        try {
+            history.write(suiteHistoryFile);
+        }
+        catch (IOException e) {
+            getLog().warn("Unable to record the history of the suites: " + e.getMessage());
+        }
+    }
+
+    private List<List<String>> shard(List<List<String>> suites) {
+        Map<String, Long> durations = SuiteShards.readJUnitXmlDurations(shardTimings);
+        List<List<String>> shard = SuiteShards.shard(suites, durations, shardIndex, shardCount);
+        if (durations.isEmpty()) {
+            getLog().info(String.format("Shard %d of %d: %d of %d suites, assigned by name as %s.",
+                    shardIndex + 1, shardCount, shard.size(), suites.size(),
+                    shardTimings == null ? "shardTimings is not set" : "no timings were found in " + shardTimings));
+        }
+        else {
+            getLog().info(String.format("Shard %d of %d: %d of %d suites, expected %.1f s (average %.1f s per shard).",
+                    shardIndex + 1, shardCount, shard.size(), suites.size(),
+                    SuiteShards.total(shard, durations) / 1000.0,
+                    SuiteShards.total(suites, durations) / 1000.0 / shardCount));
+        }
+        return shard;
+    }
+
+    //
+    // Returns the suites whose digest differs from the one recorded by the
+    // last successful run, and keeps the new digests for recording.
+    //
+    private List<List<String>> selectChanged(List<List<String>> suites) {
+        Set<File> directories = new LinkedHashSet<File>();
+        Set<File> jars = new LinkedHashSet<File>();
+        List<File> elements = new ArrayList<File>(runpathRoots());
+        for (String element : testClasspathElements()) {
+            elements.add(new File(element));
+        }
+        for (File element : elements) {
+            (element.isDirectory() ? directories : jars).add(element.getAbsoluteFile());
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            IncrementalSelection selection = new IncrementalSelection(new ArrayList<File>(directories),
+                    new ArrayList<File>(jars), incrementalConfiguration());
+            Map<String, String> digests = selection.digests(suites);
+            File record = incrementalRecordFile();
+            Map<String, String> recorded = IncrementalSelection.readRecord(record);
+            List<List<String>> changed = IncrementalSelection.changed(suites, digests, recorded);
+            getLog().info(String.format("Incremental: %d of %d suites affected by changes since the last successful run (%d ms).",
+                    changed.size(), suites.size(), System.currentTimeMillis() - start));
+
+            // Other shards keep their suites' digests in the same record
+            incrementalRecord = new HashMap<String, String>(shardCount > 1 ? recorded : Collections.<String, String>emptyMap());
+            incrementalRecord.putAll(digests);
+            return changed;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to read the classes of the project", e);
+        }
+    }
+
+    // Everything besides the classes whose change should rerun every suite
+    private List<String> incrementalConfiguration() {
+        List<String> parts = new ArrayList<String>();
+        parts.add("argLine=" + argLine);
+        parts.add("jvm=" + jvm);
+        parts.add("systemProperties=" + (systemProperties == null ? null : new TreeMap<String, String>(systemProperties)));
+        parts.add("environmentVariables=" + (environmentVariables == null ? null : new TreeMap<String, String>(environmentVariables)));
+        parts.add("config=" + config());
+        parts.add("tagsToInclude=" + tagsToInclude());
+        parts.add("tagsToExclude=" + tagsToExclude());
+        parts.add("tests=" + tests());
+        parts.add("spanScaleFactor=" + spanScaleFactor);
+        return parts;
+    }
+
+    //
+    // Identifies the inputs of a run with the given arguments, for skipping
+    // runs whose inputs did not change.
+    //
+    String resultFingerprint(String[] args) throws MojoFailureException {
+        List<String> parts = new ArrayList<String>();
+        parts.add("args=" + Arrays.asList(args));
+        parts.add("argLine=" + argLine);
+        parts.add("jvm=" + forkJvm());
+        parts.add("forkMode=" + forkMode);
+        parts.add("workingDirectory=" + workingDirectory);
+        parts.add("systemProperties=" + (systemProperties == null ? null : new TreeMap<String, String>(systemProperties)));
+        parts.add("environmentVariables=" + (environmentVariables == null ? null : new TreeMap<String, String>(environmentVariables)));
+        List<String> classpath = new ArrayList<String>(testClasspathElements());
+        for (File root : runpathRoots()) {
+            classpath.add(root.getAbsolutePath());
+        }
+        try {
+            ResultCache.addClasspath(parts, classpath);
+        }
+        catch (IOException e) {
+            throw new MojoFailureException("Unable to read the test classpath", e);
+        }
+        return fingerprint(parts);
+    }
+
+    private File incrementalRecordFile() {
+        return new File(project.getBuild().getDirectory(), "scalatest-incremental.properties");
+    }
+
+    private void recordIncrementalRun() {
+        if (incrementalRecord != null) {
+            try {
+                IncrementalSelection.writeRecord(incrementalRecordFile(), incrementalRecord);
+            }
+            catch (IOException e) {
+                getLog().warn("Unable to record the suites run for incremental runs: " + e.getMessage());
+            }
+        }
+    }
+
+    private List<String> discoverSuites() {
+        List<File> roots = runpathRoots();
+        List<File> lookup = new ArrayList<File>(roots);
+        for (String element : testClasspathElements()) {
+            lookup.add(new File(element));
+        }
+
+        long start = System.currentTimeMillis();
+        SuiteDiscovery discovery = new SuiteDiscovery(lookup, new File(project.getBuild().getDirectory(), "scalatest-discovery.index"));
+        try {
+            List<String> found = discovery.discover(roots, suffixes);
+            getLog().info(String.format("Discovered %d suites in %d ms, reading %d changed class files.",
+                    found.size(), System.currentTimeMillis() - start, discovery.classFilesRead()));
+            return found;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to discover suites", e);
+        }
+        finally {
+            try {
+                discovery.close();
+            }
+            catch (IOException ignored) {}
+        }
+    }
+
+    // The local directories and jars the Runner would discover suites in
+    private List<File> runpathRoots() {
+        List<File> roots = new ArrayList<File>();
+        roots.add(outputDirectory);
+        roots.add(testOutputDirectory);
+        for (String element : splitOnComma(runpath)) {
+            File file = new File(element);
+            if (file.exists()) {
+                roots.add(file);
+            }
+        }
+        return roots;
+    }
+
     //
     // Parses a string containing a Suite name followed
     // optionally by a test name.
@@ -564,6 +2435,8 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
     // and test "hello there".
     //
     static private class SuiteTestPair {
+        private static final Pattern SEPARATOR = Pattern.compile("(?s)\\s");
+
         String suite;
         String test;
 
@@ -572,7 +2445,7 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
                 String trimStr = str.trim();
 
                 if (trimStr.length() > 0) {
-                    String[] splits = trimStr.split("(?s)\\s", 2);
+                    String[] splits = SEPARATOR.split(trimStr, 2);
                     if (splits.length > 1) {
                         suite = splits[0];
                         test = splits[1].trim();
@@ -636,12 +2509,13 @@ abstract class AbstractScalaTestMojo extends AbstractMojo {
        return compoundArg("-q", suffixes);
     }
 
+    // Expanded to the suites they hold when the plugin selects the suites
     private List<String> membersOnlySuites() {
-        return suiteArg("-m", membersOnlySuites);
+        return selectsSuites() ? Collections.<String>emptyList() : suiteArg("-m", membersOnlySuites);
     }
 
     private List<String> wildcardSuites() {
-        return suiteArg("-w", wildcardSuites);
+        return selectsSuites() ? Collections.<String>emptyList() : suiteArg("-w", wildcardSuites);
     }
 
     private List<String> testNGConfigFiles() {
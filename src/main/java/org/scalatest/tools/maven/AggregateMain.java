@@ -0,0 +1,215 @@
+package org.scalatest.tools.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Entry point of a forked JVM running the tests of several modules of the reactor for the
+ * <code>test-aggregate</code> goal.  Each module is run with ScalaTest's Runner in turn, from
+ * a plan the mojo writes.  The jars of a module that come from the local repository, ScalaTest
+ * and Scala among them, are loaded by a class loader shared with the modules that have the
+ * same ones, and its class directories and other jars by the runpath loader of its own Runner,
+ * so that modules whose dependencies differ do not see each other's versions.
+ * <p>
+ * Like {@link ForkMain}, this class runs outside Maven and only uses the JDK.
+ */
+public final class AggregateMain {
+
+    // Printed ahead of the output of each module, followed by its name
+    static final String HEADER = "*** Module ";
+
+    private AggregateMain() {
+    }
+
+    // Arguments: <plan file>
+    public static void main(String[] args) {
+        int status;
+        try {
+            status = run(read(new File(args[0]))) ? 0 : 1;
+        } catch (Throwable t) {
+            t.printStackTrace();
+            status = 2;
+        }
+        // The Runner may leave non-daemon threads behind
+        System.exit(status);
+    }
+
+    // Returns true if the tests of all modules pass
+    private static boolean run(List<Module> modules) throws IOException {
+        boolean passed = true;
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        Properties saved = (Properties) System.getProperties().clone();
+        String sharedKey = null;
+        URLClassLoader shared = null;
+        try {
+            for (Module module : modules) {
+                if (!module.sharedKey.equals(sharedKey)) {
+                    if (shared != null) {
+                        shared.close();
+                    }
+                    // Only the JDK is visible above the jars of the modules
+                    shared = new URLClassLoader(urls(module.sharedJars), ClassLoader.getSystemClassLoader().getParent());
+                    sharedKey = module.sharedKey;
+                }
+                System.out.println(HEADER + module.name);
+                System.setProperty(EventChannel.FORK_PROPERTY, String.valueOf(module.number));
+                System.setProperty("basedir", module.basedir);
+                thread.setContextClassLoader(shared);
+                try {
+                    Method run = Class.forName("org.scalatest.tools.Runner", true, shared).getMethod("run", String[].class);
+                    passed &= (Boolean) run.invoke(null, new Object[]{module.runnerArgs.toArray(new String[0])});
+                } catch (ClassNotFoundException e) {
+                    System.err.println("ScalaTest is not among the jars of " + module.name + " from the local repository.");
+                    passed = false;
+                } catch (InvocationTargetException e) {
+                    e.getTargetException().printStackTrace();
+                    passed = false;
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    e.printStackTrace();
+                    passed = false;
+                } finally {
+                    thread.setContextClassLoader(contextLoader);
+                    System.setProperties((Properties) saved.clone());
+                }
+            }
+        } finally {
+            if (shared != null) {
+                shared.close();
+            }
+        }
+        return passed;
+    }
+
+    private static URL[] urls(List<String> paths) throws IOException {
+        URL[] urls = new URL[paths.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = new File(paths.get(i)).toURI().toURL();
+        }
+        return urls;
+    }
+
+    //
+    // Splits modules into at most the given number of equal runs of modules
+    // for the forks, with the modules that can share a class loader next to
+    // each other, in the order they first appear, so that forks create as
+    // few class loaders as they can.
+    //
+    static List<List<Module>> share(List<Module> modules, int forks) {
+        Map<String, List<Module>> byKey = new LinkedHashMap<String, List<Module>>();
+        for (Module module : modules) {
+            List<Module> group = byKey.get(module.sharedKey);
+            if (group == null) {
+                group = new ArrayList<Module>();
+                byKey.put(module.sharedKey, group);
+            }
+            group.add(module);
+        }
+        List<Module> ordered = new ArrayList<Module>();
+        for (List<Module> group : byKey.values()) {
+            ordered.addAll(group);
+        }
+
+        List<List<Module>> shares = new ArrayList<List<Module>>();
+        int count = Math.max(1, Math.min(forks, ordered.size()));
+        int start = 0;
+        for (int share = 0; share < count; share++) {
+            int end = start + (ordered.size() - start) / (count - share);
+            if (end > start) {
+                shares.add(new ArrayList<Module>(ordered.subList(start, end)));
+            }
+            start = end;
+        }
+        return shares;
+    }
+
+    static void write(File plan, List<Module> modules) throws IOException {
+        File parent = plan.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(plan)));
+        try {
+            out.writeInt(modules.size());
+            for (Module module : modules) {
+                out.writeInt(module.number);
+                out.writeUTF(module.name);
+                out.writeUTF(module.basedir);
+                out.writeUTF(module.sharedKey);
+                writeStrings(out, module.sharedJars);
+                writeStrings(out, module.runnerArgs);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    static List<Module> read(File plan) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(plan)));
+        try {
+            int count = in.readInt();
+            List<Module> modules = new ArrayList<Module>(count);
+            for (int i = 0; i < count; i++) {
+                modules.add(new Module(in.readInt(), in.readUTF(), in.readUTF(), in.readUTF(),
+                        readStrings(in), readStrings(in)));
+            }
+            return modules;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> strings = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    /**
+     * The tests of a module to run: the number its events carry as their fork, the jars of
+     * the class loader it shares with the modules with the same key, and its Runner arguments,
+     * its own class directories and jars on their runpath.
+     */
+    static final class Module {
+        final int number;
+        final String name;
+        final String basedir;
+        final String sharedKey;
+        final List<String> sharedJars;
+        final List<String> runnerArgs;
+
+        Module(int number, String name, String basedir, String sharedKey, List<String> sharedJars, List<String> runnerArgs) {
+            this.number = number;
+            this.name = name;
+            this.basedir = basedir;
+            this.sharedKey = sharedKey;
+            this.sharedJars = sharedJars;
+            this.runnerArgs = runnerArgs;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package org.scalatest.tools.maven;
+
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineTimeOutException;
+import org.codehaus.plexus.util.cli.Commandline;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.scalatest.tools.maven.MojoUtils.UTF_8;
+import static org.scalatest.tools.maven.MojoUtils.fingerprint;
+
+/**
+ * Application class data sharing archives for forked JVMs, which map the classes of the
+ * test dependencies from a file prepared earlier instead of loading them from jars.
+ * <p>
+ * A fork without an archive for its classpath records the classes it loads.  After the run
+ * the jars' classes from those lists are dumped to an archive named after a fingerprint of
+ * the JVM and of the jars, which later forks then start with.  A changed jar or JVM means
+ * a new fingerprint, so the archive is rebuilt by the next run; archives unused for
+ * {@link #MAX_AGE_MILLIS} are removed.
+ * <p>
+ * The JVM only archives classes from jars, and requires the classpath an archive was
+ * dumped with to start the classpath it is used with.  So forks put the jars first and
+ * the class directories after them, and {@link #shadowed} tells which resources and
+ * classes of the project a jar then hides.
+ */
+final class ClassDataSharing {
+    static final long MAX_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    // A dump takes seconds; one taking longer is left for a later run rather than hold up the build
+    private static final int DUMP_TIMEOUT_SECONDS = 60;
+
+    private final File directory;
+    private final String jvm;
+    private final String jvmIdentity;
+    private final int javaVersion;
+
+    // Class lists being recorded by forks, by the archive they are for
+    private final Map<File, List<File>> recordings = new LinkedHashMap<File, List<File>>();
+    private final Map<File, List<String>> recordedJars = new LinkedHashMap<File, List<String>>();
+
+    ClassDataSharing(File directory, String jvm) {
+        this.directory = directory;
+        this.jvm = jvm;
+        File executable = new File(jvm);
+        String version = javaVersion(jvm);
+        this.jvmIdentity = executable.getAbsolutePath() + "@" + executable.length() + "@" + executable.lastModified()
+                + "@" + version;
+        this.javaVersion = majorVersion(version);
+    }
+
+    //
+    // The Java version the JVM at the given path reports in the release
+    // file of its installation, or null when there is none to read.
+    //
+    static String javaVersion(String jvm) {
+        File bin = new File(jvm).getAbsoluteFile().getParentFile();
+        if (bin == null || bin.getParentFile() == null) {
+            return null;
+        }
+        File home = bin.getParentFile();
+        // A Java 8 JDK runs from its jre directory, with the release file one level up
+        for (File release : new File[]{new File(home, "release"), new File(home.getParentFile(), "release")}) {
+            if (release.isFile()) {
+                Properties properties = new Properties();
+                try {
+                    InputStream in = new FileInputStream(release);
+                    try {
+                        properties.load(in);
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    return null;
+                }
+                String version = properties.getProperty("JAVA_VERSION");
+                return version == null ? null : version.replace("\"", "");
+            }
+        }
+        return null;
+    }
+
+    // Whether a JVM of the given version can archive application classes, which needs Java 10
+    static boolean supports(String version) {
+        return majorVersion(version) >= 10;
+    }
+
+    // Java 10 only archives application classes when asked to; later versions always do
+    static List<String> appClassOptions(int javaVersion) {
+        List<String> options = new ArrayList<String>();
+        if (javaVersion == 10) {
+            options.add("-XX:+UseAppCDS");
+        }
+        return options;
+    }
+
+    // The feature release of a Java version, 8 for "1.8.0_392", or 0 when not known
+    static int majorVersion(String version) {
+        if (version == null) {
+            return 0;
+        }
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        int end = 0;
+        while (end < version.length() && Character.isDigit(version.charAt(end))) {
+            end++;
+        }
+        return end > 0 ? Integer.parseInt(version.substring(0, end)) : 0;
+    }
+
+    // The classpath with the jars first, in their order, then everything else
+    static List<String> jarsFirst(List<String> classpath) {
+        List<String> jars = jars(classpath);
+        List<String> result = new ArrayList<String>(jars);
+        for (String element : classpath) {
+            if (!jars.contains(element)) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    static List<String> jars(List<String> classpath) {
+        List<String> jars = new ArrayList<String>();
+        for (String element : classpath) {
+            if (new File(element).isFile()) {
+                jars.add(element);
+            }
+        }
+        return jars;
+    }
+
+    //
+    // The resources and classes of the class directories of classpath that
+    // a jar after them also has, by their path in the directory, and which
+    // jarsFirst thus takes from the jar instead.
+    //
+    static Set<String> shadowed(List<String> classpath) throws IOException {
+        Set<String> shadowed = new LinkedHashSet<String>();
+        for (int i = 0; i < classpath.size(); i++) {
+            File classes = new File(classpath.get(i));
+            List<String> laterJars = jars(classpath.subList(i + 1, classpath.size()));
+            if (classes.isDirectory() && !laterJars.isEmpty()) {
+                Set<String> entries = new HashSet<String>();
+                for (String jar : laterJars) {
+                    ZipFile zip = new ZipFile(jar);
+                    try {
+                        Enumeration<? extends ZipEntry> jarEntries = zip.entries();
+                        while (jarEntries.hasMoreElements()) {
+                            entries.add(jarEntries.nextElement().getName());
+                        }
+                    } finally {
+                        zip.close();
+                    }
+                }
+                collectShadowed(classes, "", entries, shadowed);
+            }
+        }
+        return shadowed;
+    }
+
+    private static void collectShadowed(File directory, String prefix, Set<String> entries, Set<String> shadowed) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                collectShadowed(file, path + "/", entries, shadowed);
+            } else if (entries.contains(path)) {
+                shadowed.add(path);
+            }
+        }
+    }
+
+    File archive(List<String> jars) {
+        List<String> parts = new ArrayList<String>();
+        parts.add("jvm:" + jvmIdentity);
+        for (String jar : jars) {
+            File file = new File(jar);
+            parts.add(jar + "@" + file.length() + "@" + file.lastModified());
+        }
+        return new File(directory, "classes-" + fingerprint(parts) + ".jsa");
+    }
+
+    //
+    // The JVM options for a fork with the given jars at the start of its
+    // classpath: the archive if there is one, or else the options to record
+    // the classes the fork loads so that an archive can be built from them.
+    //
+    synchronized List<String> jvmArguments(List<String> jars) throws IOException {
+        List<String> arguments = new ArrayList<String>();
+        File archive = archive(jars);
+        arguments.addAll(appClassOptions(javaVersion));
+        if (archive.isFile()) {
+            archive.setLastModified(System.currentTimeMillis());
+            arguments.add("-Xshare:auto");
+            arguments.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+            return arguments;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        File classList = File.createTempFile(archive.getName(), ".classlist", directory);
+        List<File> lists = recordings.get(archive);
+        if (lists == null) {
+            lists = new ArrayList<File>();
+            recordings.put(archive, lists);
+            recordedJars.put(archive, jars);
+        }
+        lists.add(classList);
+        arguments.add("-XX:DumpLoadedClassList=" + classList.getAbsolutePath());
+        return arguments;
+    }
+
+    // Whether forks recorded classes for an archive still to be built
+    synchronized boolean hasRecordings() {
+        return !recordings.isEmpty();
+    }
+
+    //
+    // Builds the archives for the class lists the forks recorded, then
+    // removes the lists and any archives that have gone unused.  Returns
+    // the archives built.
+    //
+    synchronized List<File> createArchives() throws IOException {
+        List<File> created = new ArrayList<File>();
+        try {
+            for (Map.Entry<File, List<File>> recording : recordings.entrySet()) {
+                File archive = recording.getKey();
+                if (createArchive(archive, recordedJars.get(archive), recording.getValue())) {
+                    created.add(archive);
+                }
+            }
+        } finally {
+            for (List<File> lists : recordings.values()) {
+                for (File list : lists) {
+                    list.delete();
+                }
+            }
+            recordings.clear();
+            recordedJars.clear();
+        }
+        removeStaleArchives();
+        return created;
+    }
+
+    private boolean createArchive(File archive, List<String> jars, List<File> lists) throws IOException {
+        File classList = mergeClassLists(archive, lists);
+        File temp = File.createTempFile(archive.getName(), ".tmp", directory);
+        try {
+            Commandline cli = new Commandline();
+            cli.setExecutable(jvm);
+            cli.addArguments(appClassOptions(javaVersion).toArray(new String[0]));
+            cli.createArg().setValue("-Xshare:dump");
+            cli.createArg().setValue("-XX:SharedClassListFile=" + classList.getAbsolutePath());
+            cli.createArg().setValue("-XX:SharedArchiveFile=" + temp.getAbsolutePath());
+            cli.createArg().setValue("-cp");
+            cli.createArg().setValue(join(jars));
+            File log = new File(directory, archive.getName() + ".log");
+            log.delete();
+            int exitCode;
+            try {
+                exitCode = ForkLauncher.execute(cli, log, null, DUMP_TIMEOUT_SECONDS);
+            } catch (CommandLineTimeOutException e) {
+                throw new IOException("Dumping " + archive + " took longer than " + DUMP_TIMEOUT_SECONDS
+                        + " seconds; forks run without it");
+            } catch (CommandLineException e) {
+                throw new IOException("Unable to run " + jvm + " to dump the archive", e);
+            }
+            if (exitCode != 0 || temp.length() == 0) {
+                throw new IOException("Dumping " + archive + " failed with exit code " + exitCode + "; see " + log);
+            }
+            log.delete();
+            return temp.renameTo(archive) || archive.isFile();
+        } finally {
+            temp.delete();
+            classList.delete();
+        }
+    }
+
+    // The union of the class lists, in the order the classes were first loaded
+    private File mergeClassLists(File archive, List<File> lists) throws IOException {
+        Set<String> lines = new LinkedHashSet<String>();
+        for (File list : lists) {
+            if (!list.isFile()) {
+                continue;
+            }
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(list), UTF_8));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    lines.add(line);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        File merged = File.createTempFile(archive.getName(), ".classlist", directory);
+        OutputStream out = new FileOutputStream(merged);
+        try {
+            for (String line : lines) {
+                out.write((line + "\n").getBytes(UTF_8));
+            }
+        } finally {
+            out.close();
+        }
+        return merged;
+    }
+
+    private void removeStaleArchives() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - MAX_AGE_MILLIS;
+        for (File file : files) {
+            if (file.lastModified() < oldest) {
+                file.delete();
+            }
+        }
+    }
+
+    private static String join(List<String> classpath) {
+        StringBuilder joined = new StringBuilder();
+        for (String element : classpath) {
+            if (joined.length() > 0) {
+                joined.append(File.pathSeparatorChar);
+            }
+            joined.append(element);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,257 @@
+package org.scalatest.tools.maven;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * The few facts the plugin needs about a class, read straight from its class file
+ * so that the class never has to be loaded.
+ */
+final class ClassFileInfo {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_INTERFACE = 0x0200;
+    static final int ACC_ABSTRACT = 0x0400;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    // Class types inside field, method and generic signatures, e.g. "Lorg/example/Hello;"
+    private static final Pattern TYPE_IN_DESCRIPTOR = Pattern.compile("L([\\w$]+(?:/[\\w$]+)*)[;<]");
+
+    // Binary names, e.g. "org.example.HelloSpec"
+    final String name;
+    final String superName;
+    final List<String> interfaces;
+    final int access;
+    final boolean publicNoArgConstructor;
+    final Set<String> annotations;
+    // Every class named in the constant pool, this one excepted
+    final Set<String> references;
+
+    private ClassFileInfo(String name, String superName, List<String> interfaces, int access,
+                          boolean publicNoArgConstructor, Set<String> annotations, Set<String> references) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = unmodifiableList(interfaces);
+        this.access = access;
+        this.publicNoArgConstructor = publicNoArgConstructor;
+        this.annotations = unmodifiableSet(annotations);
+        this.references = unmodifiableSet(references);
+    }
+
+    // Rebuilds the facts kept in a suite discovery index, which leaves out the references
+    static ClassFileInfo restore(String name, String superName, List<String> interfaces, int access,
+                                 boolean publicNoArgConstructor, Set<String> annotations) {
+        return new ClassFileInfo(name, superName, interfaces, access, publicNoArgConstructor, annotations,
+                new HashSet<String>());
+    }
+
+    boolean isPublic() {
+        return (access & ACC_PUBLIC) != 0;
+    }
+
+    boolean isConcrete() {
+        return (access & (ACC_INTERFACE | ACC_ABSTRACT)) == 0;
+    }
+
+    static ClassFileInfo read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor
+        in.readUnsignedShort(); // major
+
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classIndex = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1:  // Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7:  // Class
+                    classIndex[i] = in.readUnsignedShort();
+                    break;
+                case 8:  // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    in.readUnsignedShort();
+                    break;
+                case 15: // MethodHandle
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case 3:  // Integer
+                case 4:  // Float
+                case 9:  // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    in.readInt();
+                    break;
+                case 5:  // Long
+                case 6:  // Double
+                    in.readLong();
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        String name = className(utf8, classIndex, in.readUnsignedShort());
+        String superName = className(utf8, classIndex, in.readUnsignedShort());
+
+        int interfaceCount = in.readUnsignedShort();
+        List<String> interfaces = new ArrayList<String>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(className(utf8, classIndex, in.readUnsignedShort()));
+        }
+
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            in.readUnsignedShort(); // access
+            in.readUnsignedShort(); // name
+            in.readUnsignedShort(); // descriptor
+            skipAttributes(in);
+        }
+
+        boolean publicNoArgConstructor = false;
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            int methodAccess = in.readUnsignedShort();
+            String methodName = utf8[in.readUnsignedShort()];
+            String descriptor = utf8[in.readUnsignedShort()];
+            if ((methodAccess & ACC_PUBLIC) != 0 && "<init>".equals(methodName) && "()V".equals(descriptor)) {
+                publicNoArgConstructor = true;
+            }
+            skipAttributes(in);
+        }
+
+        Set<String> annotations = new HashSet<String>();
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("RuntimeVisibleAnnotations".equals(attributeName)) {
+                int annotationCount = in.readUnsignedShort();
+                for (int a = 0; a < annotationCount; a++) {
+                    annotations.add(descriptorToName(utf8[in.readUnsignedShort()]));
+                    skipElementValuePairs(in);
+                }
+            } else {
+                skipFully(in, length);
+            }
+        }
+
+        Set<String> references = references(utf8, classIndex);
+        references.remove(name);
+        return new ClassFileInfo(name, superName, interfaces, access, publicNoArgConstructor, annotations, references);
+    }
+
+    //
+    // Collects the classes of Class constants and those appearing in
+    // descriptors and signatures.  Strings that merely look like descriptors
+    // may add names of classes that are not used, which errs on the safe
+    // side for the incremental selection of suites.
+    //
+    private static Set<String> references(String[] utf8, int[] classIndex) {
+        Set<String> references = new HashSet<String>();
+        for (int i = 1; i < classIndex.length; i++) {
+            if (classIndex[i] != 0) {
+                String className = utf8[classIndex[i]];
+                if (className.startsWith("[")) {
+                    addDescriptorTypes(className, references);
+                } else {
+                    references.add(className.replace('/', '.'));
+                }
+            }
+        }
+        for (String string : utf8) {
+            if (string != null && string.indexOf(';') >= 0) {
+                addDescriptorTypes(string, references);
+            }
+        }
+        return references;
+    }
+
+    private static void addDescriptorTypes(String descriptor, Set<String> references) {
+        Matcher matcher = TYPE_IN_DESCRIPTOR.matcher(descriptor);
+        while (matcher.find()) {
+            references.add(matcher.group(1).replace('/', '.'));
+        }
+    }
+
+    private static String className(String[] utf8, int[] classIndex, int index) {
+        return index == 0 ? null : utf8[classIndex[index]].replace('/', '.');
+    }
+
+    // "Lorg/scalatest/WrapWith;" -> "org.scalatest.WrapWith"
+    private static String descriptorToName(String descriptor) {
+        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.readUnsignedShort();
+            skipFully(in, in.readInt());
+        }
+    }
+
+    private static void skipElementValuePairs(DataInputStream in) throws IOException {
+        int pairs = in.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            in.readUnsignedShort();
+            skipElementValue(in);
+        }
+    }
+
+    private static void skipElementValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                in.readUnsignedShort();
+                in.readUnsignedShort();
+                break;
+            case '@':
+                in.readUnsignedShort();
+                skipElementValuePairs(in);
+                break;
+            case '[':
+                int values = in.readUnsignedShort();
+                for (int i = 0; i < values; i++) {
+                    skipElementValue(in);
+                }
+                break;
+            default: // constants and 'c' class literals
+                in.readUnsignedShort();
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new IOException("Truncated class file");
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.scalatest.tools.maven;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The class loaders ScalaTest runs in when <code>forkMode</code> is "never", shared by the
+ * modules of a build.  Maven keeps the plugin's classes loaded for the whole session, so
+ * a static cache lets module after module reuse the loaders of the ones before it.
+ * <p>
+ * Loaders come in two levels: a shared loader for the third-party jars of a module, keyed
+ * by their coordinates, sizes and modification times so that modules with the same
+ * dependencies get the same loader, and a child of it per module for the jars the build
+ * itself produced.  Each
+ * use holds a {@link Lease}; loaders nobody holds stay cached until their session ends, which
+ * {@link SessionEndListener} has happen at the end of the build, and are closed then.
+ */
+final class ClassLoaderCache {
+    private static final List<Entry> entries = new ArrayList<Entry>();
+
+    // Sessions that have ended; loaders of those are closed as soon as they are released
+    private static final Set<Object> endedSessions = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    private ClassLoaderCache() {
+    }
+
+    //
+    // Returns a lease on a loader for the given jars: the shared loader for
+    // sharedKey, or a child of it for moduleKey when there are module jars.
+    // A null session disables caching: the loaders are closed on release.
+    //
+    static synchronized Lease acquire(Object session, String sharedKey, List<URL> sharedJars,
+                                      String moduleKey, List<URL> moduleJars) {
+        if (session != null) {
+            startSession(session);
+        }
+        Entry shared = entry(session, sharedKey, sharedJars, null);
+        Entry module = moduleJars.isEmpty() ? null : entry(session, moduleKey, moduleJars, shared);
+        return new Lease(shared, module);
+    }
+
+    //
+    // Closes the loaders of the session that are not in use, and has the
+    // ones still in use closed when they are released.
+    //
+    static synchronized void endSession(Object session) {
+        endedSessions.add(session);
+        closeIdle(session);
+    }
+
+    // Number of loaders open, for tests
+    static synchronized int size() {
+        return entries.size();
+    }
+
+    // A new session means the previous ones are over, as in a Maven daemon
+    private static void startSession(Object session) {
+        for (Entry entry : new ArrayList<Entry>(entries)) {
+            if (entry.session != null && entry.session != session) {
+                endedSessions.add(entry.session);
+                closeIdle(entry.session);
+            }
+        }
+        for (Iterator<Object> i = endedSessions.iterator(); i.hasNext(); ) {
+            Object ended = i.next();
+            if (ended != session && !hasEntries(ended)) {
+                i.remove();
+            }
+        }
+    }
+
+    private static Entry entry(Object session, String key, List<URL> jars, Entry parent) {
+        if (session != null && !endedSessions.contains(session)) {
+            for (Entry entry : entries) {
+                if (entry.session == session && entry.key.equals(key) && entry.parent == parent) {
+                    entry.references++;
+                    return entry;
+                }
+            }
+        }
+        ClassLoader parentLoader = parent != null ? parent.loader : ClassLoader.getSystemClassLoader();
+        Entry entry = new Entry(session, key, new URLClassLoader(jars.toArray(new URL[jars.size()]), parentLoader), parent);
+        entry.references++;
+        entries.add(entry);
+        return entry;
+    }
+
+    private static synchronized void release(Entry entry) {
+        entry.references--;
+        if (entry.references == 0 && (entry.session == null || endedSessions.contains(entry.session))) {
+            close(entry);
+        }
+    }
+
+    private static void closeIdle(Object session) {
+        // Children first, so that a shared loader only goes once nothing uses it
+        for (Entry entry : new ArrayList<Entry>(entries)) {
+            if (entry.session == session && entry.parent != null && entry.references == 0) {
+                close(entry);
+            }
+        }
+        for (Entry entry : new ArrayList<Entry>(entries)) {
+            if (entry.session == session && entry.references == 0) {
+                close(entry);
+            }
+        }
+    }
+
+    private static boolean hasEntries(Object session) {
+        for (Entry entry : entries) {
+            if (entry.session == session) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void close(Entry entry) {
+        entries.remove(entry);
+        try {
+            entry.loader.close();
+        } catch (IOException ignored) {}
+    }
+
+    private static final class Entry {
+        final Object session;
+        final String key;
+        final URLClassLoader loader;
+        final Entry parent;
+        int references;
+
+        Entry(Object session, String key, URLClassLoader loader, Entry parent) {
+            this.session = session;
+            this.key = key;
+            this.loader = loader;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * A use of a cached loader, to be closed when done with it.
+     */
+    static final class Lease implements Closeable {
+        private final Entry shared;
+        private final Entry module;
+        private boolean closed;
+
+        private Lease(Entry shared, Entry module) {
+            this.shared = shared;
+            this.module = module;
+        }
+
+        ClassLoader loader() {
+            return module != null ? module.loader : shared.loader;
+        }
+
+        public void close() {
+            synchronized (ClassLoaderCache.class) {
+                if (!closed) {
+                    closed = true;
+                    if (module != null) {
+                        release(module);
+                    }
+                    release(shared);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.scalatest.tools.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+
+import static org.scalatest.tools.maven.MojoUtils.readFully;
+
+/**
+ * The processors and memory the build may use: the limits of its cgroup on Linux, for builds
+ * in containers, or else those of the machine.  Both cgroup v2 and v1 are read; the limits
+ * of the cgroups above the build's own count too, and the lowest applies.
+ */
+final class ContainerResources {
+    // Least memory a fork is given, heap and the rest of the JVM together
+    static final long MIN_FORK_MEMORY = 512L << 20;
+
+    final int cpus;
+    final long memory;
+    final String source;
+
+    ContainerResources(int cpus, long memory, String source) {
+        this.cpus = cpus;
+        this.memory = memory;
+        this.source = source;
+    }
+
+    static ContainerResources detect() {
+        return read(new File("/"), Runtime.getRuntime().availableProcessors(), physicalMemory());
+    }
+
+    //
+    // Forks to run when reserved bytes of memory are kept for the Maven JVM:
+    // one for every two CPUs, leaving room for the compiler and garbage
+    // collector threads of the forks, as long as each gets MIN_FORK_MEMORY.
+    //
+    int forks(long reserved) {
+        int forks = Math.max(1, cpus / 2);
+        if (memory > 0) {
+            forks = (int) Math.max(1, Math.min(forks, (memory - reserved(reserved)) / MIN_FORK_MEMORY));
+        }
+        return forks;
+    }
+
+    //
+    // Maximum heap for each of forks forked JVMs, three quarters of their
+    // share of the memory to leave room for metaspace, thread stacks and
+    // code cache, or 0 when the memory is not known.
+    //
+    long forkHeap(int forks, long reserved) {
+        if (memory <= 0) {
+            return 0;
+        }
+        long share = Math.max(MIN_FORK_MEMORY, (memory - reserved(reserved)) / Math.max(1, forks));
+        return (share / 4 * 3) >> 20 << 20;
+    }
+
+    // Test threads for each of forks JVMs, so that together they use every CPU
+    int threads(int forks) {
+        return Math.max(1, cpus / Math.max(1, forks));
+    }
+
+    // At most half of the memory is kept for Maven, whatever its own maximum heap
+    private long reserved(long reserved) {
+        return Math.min(reserved, memory / 2);
+    }
+
+    //
+    // The resources seen from the file system at root, given the processors
+    // and memory of the machine, 0 for memory when it is not known.
+    //
+    static ContainerResources read(File root, int processors, long physicalMemory) {
+        String cgroups = read(new File(root, "proc/self/cgroup"));
+        File mount = new File(root, "sys/fs/cgroup");
+        if (cgroups != null && new File(mount, "cgroup.controllers").isFile()) {
+            return readV2(mount, cgroupPath(cgroups, ""), processors, physicalMemory);
+        }
+        if (cgroups != null && mount.isDirectory()) {
+            return readV1(mount, cgroups, processors, physicalMemory);
+        }
+        return new ContainerResources(processors, physicalMemory, "host");
+    }
+
+    private static ContainerResources readV2(File mount, String path, int processors, long physicalMemory) {
+        int cpus = processors;
+        long memory = physicalMemory;
+        // From the cgroup of the build up to the root, as each level can have limits
+        for (File dir = new File(mount, path); dir != null && dir.getPath().startsWith(mount.getPath()); dir = dir.getParentFile()) {
+            String cpuMax = read(new File(dir, "cpu.max"));
+            String[] quota = cpuMax == null ? new String[0] : cpuMax.trim().split("\\s+");
+            if (quota.length == 2) {
+                cpus = lower(cpus, number(quota[0]), number(quota[1]));
+            }
+            memory = lower(memory, read(new File(dir, "memory.max")));
+        }
+        return new ContainerResources(cpus, memory, "cgroup v2");
+    }
+
+    private static ContainerResources readV1(File mount, String cgroups, int processors, long physicalMemory) {
+        int cpus = processors;
+        File cpu = controllerDir(mount, cgroups, "cpu", "cpu.cfs_quota_us");
+        if (cpu != null) {
+            cpus = lower(cpus, number(read(new File(cpu, "cpu.cfs_quota_us"))),
+                    number(read(new File(cpu, "cpu.cfs_period_us"))));
+        }
+        long memory = physicalMemory;
+        File memoryDir = controllerDir(mount, cgroups, "memory", "memory.limit_in_bytes");
+        if (memoryDir != null) {
+            memory = lower(memory, read(new File(memoryDir, "memory.limit_in_bytes")));
+        }
+        return new ContainerResources(cpus, memory, "cgroup v1");
+    }
+
+    //
+    // The directory of the cgroup of the given v1 controller that has file:
+    // the one named in /proc/self/cgroup, or the root of the hierarchy when
+    // that path is outside of what the container sees.
+    //
+    private static File controllerDir(File mount, String cgroups, String controller, String file) {
+        File hierarchy = null;
+        for (String name : new String[]{controller, controller + ",cpuacct", "cpuacct," + controller}) {
+            if (new File(mount, name).isDirectory()) {
+                hierarchy = new File(mount, name);
+                break;
+            }
+        }
+        if (hierarchy == null) {
+            return null;
+        }
+        File dir = new File(hierarchy, cgroupPath(cgroups, controller));
+        if (new File(dir, file).isFile()) {
+            return dir;
+        }
+        return new File(hierarchy, file).isFile() ? hierarchy : null;
+    }
+
+    //
+    // The path of the cgroup of the given v1 controller in /proc/self/cgroup
+    // lines like "4:cpu,cpuacct:/docker/abc", or the v2 one for "".
+    //
+    static String cgroupPath(String cgroups, String controller) {
+        for (String line : cgroups.split("\n")) {
+            String[] fields = line.trim().split(":", 3);
+            if (fields.length == 3 && (controller.isEmpty() ? fields[1].isEmpty()
+                    : ("," + fields[1] + ",").contains("," + controller + ","))) {
+                return fields[2];
+            }
+        }
+        return "/";
+    }
+
+    // The lower of cpus and the processors a CFS quota amounts to, rounded up
+    private static int lower(int cpus, long quota, long period) {
+        if (quota <= 0 || period <= 0) {
+            return cpus;
+        }
+        return (int) Math.min(cpus, Math.max(1, (quota + period - 1) / period));
+    }
+
+    // The lower of memory and a limit, where "max" or an unrealistic value means no limit
+    private static long lower(long memory, String limit) {
+        long value = number(limit);
+        // cgroup v1 reports no limit as the largest multiple of the page size
+        if (value <= 0 || value >= Long.MAX_VALUE / 2) {
+            return memory;
+        }
+        return memory <= 0 ? value : Math.min(memory, value);
+    }
+
+    // The number in a cgroup file, or -1 for "max", nothing or anything else
+    private static long number(String value) {
+        try {
+            return value == null ? -1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return readFully(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Total memory of the machine, or 0 when the JVM does not tell
+    private static long physicalMemory() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        try {
+            Method method = os.getClass().getMethod("getTotalPhysicalMemorySize");
+            method.setAccessible(true);
+            return ((Number) method.invoke(os)).longValue();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    public String toString() {
+        return String.format("%d CPUs and %s of memory (%s)", cpus, memory > 0 ? (memory >> 20) + " MB" : "an unknown amount", source);
+    }
+}
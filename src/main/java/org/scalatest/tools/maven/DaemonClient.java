@@ -0,0 +1,234 @@
+package org.scalatest.tools.maven;
+
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The plugin's side of <code>forkMode</code> "daemon": finds the {@link DaemonMain} serving a
+ * fingerprint, starting one if there is none, and sends it runs.
+ * <p>
+ * A daemon is identified by a fingerprint of everything fixed at its startup: the command
+ * line, environment, working directory and the jars on its classpath.  Any change to those
+ * leads to a different daemon, so a stale one is never reused.
+ */
+final class DaemonClient {
+    // Serializes daemon startup between the threads of a parallel build
+    private static final Object startLock = new Object();
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final File directory;
+    private final String fingerprint;
+
+    DaemonClient(File directory, String fingerprint) {
+        this.directory = directory;
+        this.fingerprint = fingerprint;
+    }
+
+    File portFile() {
+        return new File(directory, fingerprint + ".port");
+    }
+
+    File secretFile() {
+        return DaemonMain.secretFile(portFile());
+    }
+
+    File logFile() {
+        return new File(directory, fingerprint + ".log");
+    }
+
+    // Returns a connection to the running daemon, or null if there is none
+    Socket connect() {
+        try {
+            String port = DaemonMain.readPublished(portFile());
+            if (port == null) {
+                return null;
+            }
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port)),
+                        CONNECT_TIMEOUT_MILLIS);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    //
+    // Connects to the daemon, starting it with the given command line if
+    // it is not running.  The command line must end with the arguments
+    // DaemonMain expects.
+    //
+    Socket connectOrStart(Commandline cli, int startupTimeoutSeconds) throws IOException {
+        synchronized (startLock) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create directory " + directory);
+            }
+            RandomAccessFile lockFile = new RandomAccessFile(new File(directory, fingerprint + ".lock"), "rw");
+            try {
+                FileLock lock = lockFile.getChannel().lock();
+                try {
+                    Socket socket = connect();
+                    if (socket != null) {
+                        return socket;
+                    }
+                    return start(cli, startupTimeoutSeconds);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+    private Socket start(Commandline cli, int startupTimeoutSeconds) throws IOException {
+        forget();
+        ProcessBuilder builder;
+        try {
+            builder = ForkLauncher.processBuilder(cli);
+        } catch (CommandLineException e) {
+            throw new IOException("Unable to set up the environment of the ScalaTest daemon", e);
+        }
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile()));
+        Process process = builder.start();
+
+        long deadline = System.currentTimeMillis() + startupTimeoutSeconds * 1000L;
+        while (System.currentTimeMillis() < deadline) {
+            Socket socket = connect();
+            if (socket != null) {
+                return socket;
+            }
+            if (!process.isAlive()) {
+                throw new IOException("The ScalaTest daemon exited with " + process.exitValue() + "; see " + logFile());
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while starting the ScalaTest daemon");
+            }
+        }
+        process.destroy();
+        throw new IOException("The ScalaTest daemon did not start within " + startupTimeoutSeconds + " seconds; see " + logFile());
+    }
+
+    //
+    // Runs ScalaTest in the daemon with the given class directories and
+    // system properties, feeding its output to consumer.  Returns whether
+    // all tests passed, or null when the daemon on the other end turned
+    // out not to be the one for this fingerprint, or its secret is gone.
+    //
+    Boolean run(Socket socket, List<String> directories, Map<String, String> properties, String[] args,
+                StreamConsumer consumer, int timeoutSeconds) throws IOException {
+        try {
+            String secret = DaemonMain.readPublished(secretFile());
+            if (secret == null) {
+                return null;
+            }
+            socket.setSoTimeout(timeoutSeconds * 1000);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            out.writeUTF(secret);
+            out.writeUTF(fingerprint);
+            out.writeByte(DaemonMain.RUN);
+            out.writeInt(directories.size());
+            for (String directory : directories) {
+                out.writeUTF(directory);
+            }
+            out.writeInt(properties.size());
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                out.writeUTF(property.getKey());
+                out.writeUTF(property.getValue());
+            }
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+
+            byte[] buffer = new byte[1024];
+            while (true) {
+                byte frame;
+                try {
+                    frame = in.readByte();
+                } catch (EOFException e) {
+                    throw new IOException("The ScalaTest daemon exited during the run; see " + logFile());
+                }
+                switch (frame) {
+                    case DaemonMain.OUTPUT:
+                        int length = in.readInt();
+                        if (length > buffer.length) {
+                            buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+                        }
+                        in.readFully(buffer, 0, length);
+                        consumer.consumeLine(new String(buffer, 0, length, "UTF-8"));
+                        break;
+                    case DaemonMain.DONE:
+                        return in.readBoolean();
+                    case DaemonMain.FAILED:
+                        throw new IOException("ScalaTest failed in the daemon: " + in.readUTF());
+                    case DaemonMain.REJECTED:
+                        return null;
+                    default:
+                        throw new IOException("Unexpected reply from the ScalaTest daemon: " + frame);
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    // Asks the daemon to exit, if it is running
+    void shutdown() {
+        Socket socket = connect();
+        if (socket != null) {
+            try {
+                String secret = DaemonMain.readPublished(secretFile());
+                if (secret == null) {
+                    return;
+                }
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeUTF(secret);
+                out.writeUTF(fingerprint);
+                out.writeByte(DaemonMain.SHUTDOWN);
+                out.flush();
+            } catch (IOException ignored) {
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    // Stops handing out the daemon's port, so that the next run starts a new one
+    void forget() {
+        portFile().delete();
+    }
+}
@@ -0,0 +1,279 @@
+package org.scalatest.tools.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Properties;
+
+/**
+ * Entry point of a long-lived runner JVM for <code>forkMode</code> "daemon".  The daemon keeps
+ * the jars of the test classpath, ScalaTest and Scala among them, loaded and warmed up between
+ * runs, and runs each request with the project's class directories in a fresh class loader so
+ * that runs do not see each other's classes.
+ * <p>
+ * Requests are served one at a time over a loopback socket whose port the daemon publishes
+ * in a port file.  As the loopback is open to every user of the machine, and the name of the
+ * port file gives away the fingerprint, the daemon also writes a random secret to a file next
+ * to it that only its owner can read, and serves only requests that start with that secret.
+ * The daemon exits when no request arrives within its idle timeout, or when asked to.  Like
+ * {@link ForkMain}, this class runs outside Maven and only uses the JDK.
+ */
+public final class DaemonMain {
+    static final byte RUN = 1;
+    static final byte SHUTDOWN = 2;
+
+    static final byte OUTPUT = 1;
+    static final byte DONE = 2;
+    static final byte FAILED = 3;
+    static final byte REJECTED = 4;
+
+    // Receives everything printed in the daemon; points at the client of the current run
+    private static final SwitchableOutputStream output = new SwitchableOutputStream();
+
+    private DaemonMain() {
+    }
+
+    // Arguments: <port file> <idle timeout in seconds> <fingerprint>
+    public static void main(String[] args) throws Exception {
+        File portFile = new File(args[0]);
+        int idleTimeoutSeconds = Integer.parseInt(args[1]);
+        String fingerprint = args[2];
+
+        // Installed before anything captures System.out, Scala's Console included
+        PrintStream printStream = new PrintStream(output, true, "UTF-8");
+        System.setOut(printStream);
+        System.setErr(printStream);
+
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        String secret = hex(random);
+
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(idleTimeoutSeconds * 1000);
+        // The secret is in place before the port is handed out
+        publish(secretFile(portFile), secret);
+        publish(portFile, String.valueOf(server.getLocalPort()));
+
+        try {
+            while (true) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    return; // idle for too long
+                }
+                try {
+                    if (!serve(socket, secret, fingerprint)) {
+                        return;
+                    }
+                } catch (IOException e) {
+                    // The client went away; wait for the next one
+                } finally {
+                    output.target = null;
+                    socket.close();
+                }
+            }
+        } finally {
+            unpublish(portFile, String.valueOf(server.getLocalPort()));
+            unpublish(secretFile(portFile), secret);
+            server.close();
+            System.exit(0);
+        }
+    }
+
+    // Returns false when the daemon should shut down
+    private static boolean serve(Socket socket, String secret, String fingerprint) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        boolean knowsSecret = MessageDigest.isEqual(secret.getBytes("UTF-8"), in.readUTF().getBytes("UTF-8"));
+        if (!knowsSecret || !fingerprint.equals(in.readUTF())) {
+            out.writeByte(REJECTED);
+            out.flush();
+            return true;
+        }
+        if (in.readByte() == SHUTDOWN) {
+            return false;
+        }
+
+        URL[] directories = new URL[in.readInt()];
+        for (int i = 0; i < directories.length; i++) {
+            directories[i] = new File(in.readUTF()).toURI().toURL();
+        }
+        Properties properties = new Properties();
+        int propertyCount = in.readInt();
+        for (int i = 0; i < propertyCount; i++) {
+            properties.setProperty(in.readUTF(), in.readUTF());
+        }
+        String[] runnerArgs = new String[in.readInt()];
+        for (int i = 0; i < runnerArgs.length; i++) {
+            runnerArgs[i] = in.readUTF();
+        }
+
+        output.target = out;
+        Properties systemProperties = System.getProperties();
+        Properties saved = (Properties) systemProperties.clone();
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        URLClassLoader loader = new URLClassLoader(directories, DaemonMain.class.getClassLoader());
+        try {
+            systemProperties.putAll(properties);
+            thread.setContextClassLoader(loader);
+
+            Class<?> runner = Class.forName("org.scalatest.tools.Runner", true, loader);
+            Method run = runner.getMethod("run", String[].class);
+            boolean passed = (Boolean) run.invoke(null, new Object[]{runnerArgs});
+            output.flushLine();
+            synchronized (out) {
+                out.writeByte(DONE);
+                out.writeBoolean(passed);
+                out.flush();
+            }
+        } catch (Exception | LinkageError e) {
+            Throwable cause = e instanceof InvocationTargetException ? ((InvocationTargetException) e).getTargetException() : e;
+            cause.printStackTrace();
+            output.flushLine();
+            synchronized (out) {
+                out.writeByte(FAILED);
+                out.writeUTF(String.valueOf(cause));
+                out.flush();
+            }
+        } finally {
+            output.target = null;
+            thread.setContextClassLoader(contextLoader);
+            System.setProperties(saved);
+            loader.close();
+        }
+        return true;
+    }
+
+    // The file holding the secret of the daemon publishing portFile
+    static File secretFile(File portFile) {
+        String name = portFile.getName();
+        if (name.endsWith(".port")) {
+            name = name.substring(0, name.length() - ".port".length());
+        }
+        return new File(portFile.getAbsoluteFile().getParentFile(), name + ".secret");
+    }
+
+    //
+    // Replaces file with one holding content, in one rename.  The file is
+    // created readable and writable by its owner only.
+    //
+    static void publish(File file, String content) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        Path path = temp.toPath();
+        Files.deleteIfExists(path);
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system
+            Files.createFile(path);
+            if (!(temp.setReadable(false, false) && temp.setReadable(true, true)
+                    && temp.setWritable(false, false) && temp.setWritable(true, true))) {
+                temp.delete();
+                throw new IOException("Cannot make " + temp + " private to its owner");
+            }
+        }
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot write " + file);
+            }
+        }
+    }
+
+    // Only removes the file if a newer daemon has not replaced it
+    private static void unpublish(File file, String content) {
+        try {
+            if (content.equals(readPublished(file))) {
+                file.delete();
+            }
+        } catch (IOException ignored) {}
+    }
+
+    // Returns null when there is no such file
+    static String readPublished(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            in.readFully(bytes);
+            return new String(bytes, "UTF-8").trim();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    //
+    // Sends what is printed during a run to the client a line at a time,
+    // and drops what is printed between runs.
+    //
+    private static final class SwitchableOutputStream extends OutputStream {
+        volatile DataOutputStream target;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (b == '\n') {
+                flushLine();
+            } else if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        synchronized void flushLine() throws IOException {
+            DataOutputStream out = target;
+            if (out != null) {
+                synchronized (out) {
+                    out.writeByte(OUTPUT);
+                    out.writeInt(line.size());
+                    line.writeTo(out);
+                    out.flush();
+                }
+            }
+            line.reset();
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package org.scalatest.tools.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives the events of forked ScalaTest runs over a loopback socket.  Each fork runs
+ * {@link #REPORTER} as a reporter, which connects to the port named by the
+ * {@link #PORT_PROPERTY} system property and streams the events of each Runner invocation
+ * to it.  This class runs in the forks as well, so it uses nothing but the JDK.
+ * <p>
+ * The format is meant to be cheap enough to leave on for runs with many tests.  Each
+ * connection starts with the fork number, and each record is a kind byte followed by its fields.  Numbers are variable-length, and a suite
+ * or test name is sent once per connection and then referred to by its index.
+ */
+final class EventChannel implements Closeable {
+    static final String PORT_PROPERTY = "scalatest.maven.events";
+
+    // Set by ForkMain to the number of its fork, so that events can say which fork ran them
+    static final String FORK_PROPERTY = "scalatest.maven.fork";
+
+    // Named rather than referenced: it implements a ScalaTest type the plugin does not load
+    static final String REPORTER = "org.scalatest.tools.maven.EventReporter";
+
+    // The suite the Runner wraps discovered suites in, which runs as long as they all do
+    static final String DISCOVERY_SUITE = "org.scalatest.tools.DiscoverySuite";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x53544531; // "STE1"
+    private static final int ACCEPT_POLL_MILLIS = 50;
+    private static final long READER_TIMEOUT_MILLIS = 10000;
+
+    enum Kind {
+        RUN_STARTING(false, false, false, false),
+        SUITE_STARTING(true, false, false, false),
+        SUITE_COMPLETED(true, false, true, false),
+        SUITE_ABORTED(true, false, true, true),
+        TEST_STARTING(true, true, false, false),
+        TEST_SUCCEEDED(true, true, true, false),
+        TEST_FAILED(true, true, true, true),
+        TEST_IGNORED(true, true, false, false),
+        TEST_PENDING(true, true, true, false),
+        TEST_CANCELED(true, true, true, true),
+        RUN_COMPLETED(false, false, true, false),
+        RUN_STOPPED(false, false, true, false),
+        RUN_ABORTED(false, false, true, true);
+
+        final boolean hasSuite;
+        final boolean hasTest;
+        final boolean hasDuration;
+        final boolean hasMessage;
+
+        Kind(boolean hasSuite, boolean hasTest, boolean hasDuration, boolean hasMessage) {
+            this.hasSuite = hasSuite;
+            this.hasTest = hasTest;
+            this.hasDuration = hasDuration;
+            this.hasMessage = hasMessage;
+        }
+
+        boolean endsRun() {
+            return this == RUN_COMPLETED || this == RUN_STOPPED || this == RUN_ABORTED;
+        }
+    }
+
+    /**
+     * Receives the events of all forks, from one thread per connection.
+     */
+    interface Listener {
+        void event(Event event);
+    }
+
+    private final ServerSocket server;
+    private final Listener listener;
+    private final Thread acceptor;
+    private final List<Thread> readers = new ArrayList<Thread>();
+    private final List<Socket> connections = new ArrayList<Socket>();
+    private volatile boolean closing;
+
+    EventChannel(Listener listener) throws IOException {
+        this.listener = listener;
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.server.setSoTimeout(ACCEPT_POLL_MILLIS);
+
+        acceptor = new Thread("scalatest-event-channel") {
+            @Override
+            public void run() {
+                accept();
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    //
+    // Accepts connections until closing, and then until none is left
+    // waiting, so that a fork that connected just before exiting is read.
+    //
+    private void accept() {
+        try {
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    if (closing) {
+                        return;
+                    }
+                    continue;
+                }
+                Thread reader = new Thread("scalatest-event-reader") {
+                    @Override
+                    public void run() {
+                        read(socket);
+                    }
+                };
+                reader.setDaemon(true);
+                synchronized (this) {
+                    connections.add(socket);
+                    readers.add(reader);
+                }
+                reader.start();
+            }
+        } catch (IOException e) {
+            // The server socket was closed
+        } finally {
+            try {
+                server.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void read(Socket socket) {
+        try {
+            EventInput in = new EventInput(socket.getInputStream());
+            Event event;
+            while ((event = in.read()) != null) {
+                listener.event(event);
+            }
+        } catch (IOException e) {
+            // A fork that dies mid-record ends its stream like any other
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    //
+    // Stops accepting connections and waits for the events already sent to
+    // be delivered.  The forks are done by now, so their streams have ended
+    // or are about to.
+    //
+    public void close() throws IOException {
+        closing = true;
+        long deadline = System.currentTimeMillis() + READER_TIMEOUT_MILLIS;
+        try {
+            acceptor.join(READER_TIMEOUT_MILLIS);
+            List<Thread> started;
+            synchronized (this) {
+                started = new ArrayList<Thread>(readers);
+            }
+            for (Thread reader : started) {
+                reader.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.close();
+        synchronized (this) {
+            for (Socket socket : connections) {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * One event of a forked run.  Names and the message are null, and the duration -1, where
+     * the kind of event has none.  The thread is the one the event happened on, for suite and
+     * test events, and the fork is -1 where the run was not in a numbered fork.
+     */
+    static final class Event {
+        final Kind kind;
+        final String suiteId;
+        final String suiteClassName;
+        final String testName;
+        final long duration;
+        final String message;
+        final int testCount;
+        final String thread;
+        final int fork;
+
+        Event(Kind kind, String suiteId, String suiteClassName, String testName, long duration, String message,
+              int testCount, String thread, int fork) {
+            this.kind = kind;
+            this.suiteId = suiteId;
+            this.suiteClassName = suiteClassName;
+            this.testName = testName;
+            this.duration = duration;
+            this.message = message;
+            this.testCount = testCount;
+            this.thread = thread;
+            this.fork = fork;
+        }
+    }
+
+    /**
+     * Writes events in the channel format.  Not thread safe.
+     */
+    static final class EventOutput {
+        private final DataOutputStream out;
+        private final Map<String, Integer> names = new HashMap<String, Integer>();
+
+        // Writes the events of the given fork, or of no numbered fork when it is -1
+        EventOutput(OutputStream out, int fork) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+            this.out.writeInt(MAGIC);
+            writeNumber(fork + 1);
+        }
+
+        void write(Event event) throws IOException {
+            out.writeByte(event.kind.ordinal());
+            if (event.kind == Kind.RUN_STARTING) {
+                writeNumber(event.testCount);
+            }
+            if (event.kind.hasSuite) {
+                writeName(event.suiteId);
+                writeName(event.suiteClassName);
+                writeName(event.thread);
+            }
+            if (event.kind.hasTest) {
+                writeName(event.testName);
+            }
+            if (event.kind.hasDuration) {
+                writeNumber(event.duration + 1);
+            }
+            if (event.kind.hasMessage) {
+                writeString(event.message);
+            }
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+
+        // A name seen before goes as its index; a new one as the next index and the name
+        private void writeName(String name) throws IOException {
+            Integer index = names.get(name);
+            if (index != null) {
+                writeNumber(index);
+            } else {
+                writeNumber(names.size());
+                writeString(name);
+                names.put(name, names.size());
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            byte[] bytes = (string == null ? "" : string).getBytes(UTF_8);
+            writeNumber(bytes.length);
+            out.write(bytes);
+        }
+
+        // Seven bits per byte, low bits first, with the high bit set on all but the last
+        private void writeNumber(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    /**
+     * Reads events in the channel format.
+     */
+    static final class EventInput {
+        private final DataInputStream in;
+        private final List<String> names = new ArrayList<String>();
+        private boolean started;
+        private int fork;
+
+        EventInput(InputStream in) {
+            this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        }
+
+        // The next event, or null at the end of the stream
+        Event read() throws IOException {
+            if (!started) {
+                started = true;
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a ScalaTest event stream");
+                }
+                fork = (int) readNumber() - 1;
+            }
+            int code = in.read();
+            if (code == -1) {
+                return null;
+            }
+            if (code >= Kind.values().length) {
+                throw new IOException("Unknown event kind " + code);
+            }
+            Kind kind = Kind.values()[code];
+            int testCount = kind == Kind.RUN_STARTING ? (int) readNumber() : 0;
+            String suiteId = kind.hasSuite ? readName() : null;
+            String suiteClassName = kind.hasSuite ? readName() : null;
+            String thread = kind.hasSuite ? readName() : null;
+            String testName = kind.hasTest ? readName() : null;
+            long duration = kind.hasDuration ? readNumber() - 1 : -1;
+            String message = kind.hasMessage ? readString() : null;
+            return new Event(kind, suiteId, suiteClassName, testName, duration, message, testCount, thread, fork);
+        }
+
+        private String readName() throws IOException {
+            int index = (int) readNumber();
+            if (index < names.size()) {
+                return names.get(index);
+            }
+            if (index != names.size()) {
+                throw new IOException("Name index " + index + " out of sequence");
+            }
+            String name = readString();
+            names.add(name);
+            return name;
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[(int) readNumber()];
+            in.readFully(bytes);
+            return new String(bytes, UTF_8);
+        }
+
+        private long readNumber() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.read();
+                if (b == -1) {
+                    throw new EOFException();
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed number");
+        }
+    }
+}
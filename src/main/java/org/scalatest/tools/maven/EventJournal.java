@@ -0,0 +1,176 @@
+package org.scalatest.tools.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The files a run records its ScalaTest events to, so that its reports can be generated again
+ * without running the tests.  Each Runner invocation in a fork runs {@link #REPORTER}, which
+ * appends to a file of its own in the directory named by the {@link #DIRECTORY_PROPERTY}
+ * system property; {@link #REPLAY} hands the events of all the files to the reporters of a
+ * later execution.  This class runs in the forks as well, so it uses nothing but the JDK.
+ * <p>
+ * A file is a gzip stream of records, each the length of a serialized event followed by its
+ * bytes.  The stream is flushed as suites end, so a fork that dies leaves a file whose complete
+ * records can still be read.
+ */
+final class EventJournal {
+    static final String DIRECTORY_PROPERTY = "scalatest.maven.journal";
+
+    // Named rather than referenced: they use ScalaTest types the plugin does not load
+    static final String REPORTER = "org.scalatest.tools.maven.JournalReporter";
+    static final String REPLAY = "org.scalatest.tools.maven.JournalReplay";
+
+    static final String SUFFIX = ".journal";
+
+    // Exit codes of REPLAY
+    static final int RECORDED_FAILURES = 1;
+    static final int CANNOT_REPLAY = 2;
+
+    private static final FilenameFilter JOURNAL_FILES = new FilenameFilter() {
+        public boolean accept(File dir, String name) {
+            return name.endsWith(SUFFIX);
+        }
+    };
+
+    private EventJournal() {
+    }
+
+    // The journal files in directory, in name order, or none if there is no directory
+    static File[] files(File directory) {
+        File[] files = directory.listFiles(JOURNAL_FILES);
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    // Removes the journal of an earlier run
+    static void clear(File directory) throws IOException {
+        for (File file : files(directory)) {
+            if (!file.delete()) {
+                throw new IOException("Cannot delete " + file);
+            }
+        }
+    }
+
+    /**
+     * Appends records to a new journal file.  Not thread safe.
+     */
+    static final class Output {
+        private final GZIPOutputStream gzip;
+        private final DataOutputStream out;
+
+        // A new file in directory, named after the fork that writes it, or "run" when it is -1
+        Output(File directory, int fork) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create directory " + directory);
+            }
+            String prefix = (fork < 0 ? "run" : String.format("fork-%03d", fork)) + "-";
+            File file = File.createTempFile(prefix, SUFFIX, directory);
+            gzip = new GZIPOutputStream(new FileOutputStream(file), 64 * 1024, true);
+            out = new DataOutputStream(new BufferedOutputStream(gzip, 64 * 1024));
+        }
+
+        void write(byte[] record) throws IOException {
+            out.writeInt(record.length);
+            out.write(record);
+        }
+
+        // Makes the records written so far readable, at the cost of compressing less well
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the records of a journal file.
+     */
+    static final class Input {
+        private final File file;
+        private DataInputStream in;
+        private int records;
+        private boolean reopened;
+        private boolean ended;
+
+        Input(File file) throws IOException {
+            this.file = file;
+            in = open(file, 64 * 1024);
+        }
+
+        private static DataInputStream open(File file, int inputSize) throws IOException {
+            return new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), inputSize)));
+        }
+
+        //
+        // The next record, or null at the end of the file or where a fork
+        // stopped writing it.  A fork killed mid-write can leave a cut off or
+        // garbled compressed block after its last complete record, which
+        // shows as an EOFException or a ZipException, so any error reading
+        // past that record ends the file.
+        //
+        byte[] read() throws IOException {
+            if (ended) {
+                return null;
+            }
+            try {
+                byte[] record = readRecord();
+                records++;
+                return record;
+            } catch (EOFException e) {
+                ended = true;
+                return null;
+            } catch (IOException e) {
+                // The inflater drops what it decoded in the call that met the
+                // garbled block, which may hold complete records.  Reading the
+                // file again a compressed byte at a time gets them all.
+                if (reopened || !reopen()) {
+                    ended = true;
+                    return null;
+                }
+                return read();
+            }
+        }
+
+        private byte[] readRecord() throws IOException {
+            byte[] record = new byte[in.readInt()];
+            in.readFully(record);
+            return record;
+        }
+
+        // Opens the file again where the last record read ended; returns false if it cannot
+        private boolean reopen() {
+            reopened = true;
+            try {
+                in.close();
+                in = open(file, 1);
+                for (int i = 0; i < records; i++) {
+                    readRecord();
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
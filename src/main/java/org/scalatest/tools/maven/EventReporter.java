@@ -0,0 +1,207 @@
+package org.scalatest.tools.maven;
+
+import org.scalatest.Reporter;
+import org.scalatest.events.RunAborted;
+import org.scalatest.events.RunCompleted;
+import org.scalatest.events.RunStarting;
+import org.scalatest.events.RunStopped;
+import org.scalatest.events.SuiteAborted;
+import org.scalatest.events.SuiteCompleted;
+import org.scalatest.events.SuiteStarting;
+import org.scalatest.events.TestCanceled;
+import org.scalatest.events.TestFailed;
+import org.scalatest.events.TestIgnored;
+import org.scalatest.events.TestPending;
+import org.scalatest.events.TestStarting;
+import org.scalatest.events.TestSucceeded;
+import org.scalatest.tools.maven.EventChannel.Event;
+import org.scalatest.tools.maven.EventChannel.EventOutput;
+import org.scalatest.tools.maven.EventChannel.Kind;
+import scala.Option;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * The reporter a forked Runner sends its events to the plugin through, registered with
+ * <code>-C</code> and connecting to the {@link EventChannel} port named by a system property.
+ * <p>
+ * Output is buffered and flushed when a suite ends, a test fails or the run ends, and
+ * otherwise at most every {@link #FLUSH_INTERVAL_MILLIS}, so that progress shows while a
+ * run goes on without a write for every test.  A thread flushes what is left waiting, so
+ * that the start of a suite or test that then hangs still reaches the plugin.  A failure to connect or write turns the
+ * reporter off rather than failing the run.
+ */
+public final class EventReporter implements Reporter {
+    static final long FLUSH_INTERVAL_MILLIS = 100;
+
+    private Socket socket;
+    private EventOutput out;
+    private long lastFlush;
+    private boolean pending;
+
+    public EventReporter() {
+        String port = System.getProperty(EventChannel.PORT_PROPERTY);
+        if (port == null) {
+            return;
+        }
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(port));
+            socket.setTcpNoDelay(true);
+            out = new EventOutput(socket.getOutputStream(), fork());
+            lastFlush = System.currentTimeMillis();
+            startFlusher();
+        } catch (IOException e) {
+            close();
+        } catch (NumberFormatException e) {
+            close();
+        }
+    }
+
+    private static int fork() {
+        String fork = System.getProperty(EventChannel.FORK_PROPERTY);
+        return fork == null ? -1 : Integer.parseInt(fork);
+    }
+
+    public synchronized void apply(org.scalatest.events.Event event) {
+        if (out == null) {
+            return;
+        }
+        try {
+            Event converted = convert(event);
+            if (converted == null) {
+                return;
+            }
+            out.write(converted);
+            pending = true;
+            long now = System.currentTimeMillis();
+            Kind kind = converted.kind;
+            if (kind.endsRun()) {
+                close();
+            } else if (kind.hasMessage || kind == Kind.SUITE_COMPLETED || now - lastFlush >= FLUSH_INTERVAL_MILLIS) {
+                out.flush();
+                lastFlush = now;
+                pending = false;
+            }
+        } catch (IOException e) {
+            close();
+        } catch (LinkageError e) {
+            // A ScalaTest version whose events differ from the ones this was built against
+            close();
+        }
+    }
+
+    private void startFlusher() {
+        Thread flusher = new Thread("scalatest-event-flusher") {
+            @Override
+            public void run() {
+                try {
+                    while (flushPending()) {
+                        Thread.sleep(FLUSH_INTERVAL_MILLIS);
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }
+        };
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Flushes events left waiting for a flush; false once the reporter is closed
+    private synchronized boolean flushPending() {
+        if (out == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (pending && now - lastFlush >= FLUSH_INTERVAL_MILLIS) {
+            try {
+                out.flush();
+                lastFlush = now;
+                pending = false;
+            } catch (IOException e) {
+                close();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The channel form of event, or null for the kinds of event the channel leaves out
+    private static Event convert(org.scalatest.events.Event event) {
+        if (event instanceof TestStarting) {
+            TestStarting e = (TestStarting) event;
+            return event(Kind.TEST_STARTING, e.threadName(), e.suiteId(), e.suiteClassName(), e.testName(), Option.empty(), null);
+        } else if (event instanceof TestSucceeded) {
+            TestSucceeded e = (TestSucceeded) event;
+            return event(Kind.TEST_SUCCEEDED, e.threadName(), e.suiteId(), e.suiteClassName(), e.testName(), e.duration(), null);
+        } else if (event instanceof TestFailed) {
+            TestFailed e = (TestFailed) event;
+            return event(Kind.TEST_FAILED, e.threadName(), e.suiteId(), e.suiteClassName(), e.testName(), e.duration(), message(e.message(), e.throwable()));
+        } else if (event instanceof TestIgnored) {
+            TestIgnored e = (TestIgnored) event;
+            return event(Kind.TEST_IGNORED, e.threadName(), e.suiteId(), e.suiteClassName(), e.testName(), Option.empty(), null);
+        } else if (event instanceof TestPending) {
+            TestPending e = (TestPending) event;
+            return event(Kind.TEST_PENDING, e.threadName(), e.suiteId(), e.suiteClassName(), e.testName(), e.duration(), null);
+        } else if (event instanceof TestCanceled) {
+            TestCanceled e = (TestCanceled) event;
+            return event(Kind.TEST_CANCELED, e.threadName(), e.suiteId(), e.suiteClassName(), e.testName(), e.duration(), message(e.message(), e.throwable()));
+        } else if (event instanceof SuiteStarting) {
+            SuiteStarting e = (SuiteStarting) event;
+            return event(Kind.SUITE_STARTING, e.threadName(), e.suiteId(), e.suiteClassName(), null, Option.empty(), null);
+        } else if (event instanceof SuiteCompleted) {
+            SuiteCompleted e = (SuiteCompleted) event;
+            return event(Kind.SUITE_COMPLETED, e.threadName(), e.suiteId(), e.suiteClassName(), null, e.duration(), null);
+        } else if (event instanceof SuiteAborted) {
+            SuiteAborted e = (SuiteAborted) event;
+            return event(Kind.SUITE_ABORTED, e.threadName(), e.suiteId(), e.suiteClassName(), null, e.duration(), message(e.message(), e.throwable()));
+        } else if (event instanceof RunStarting) {
+            return new Event(Kind.RUN_STARTING, null, null, null, -1, null, ((RunStarting) event).testCount(), null, -1);
+        } else if (event instanceof RunCompleted) {
+            return run(Kind.RUN_COMPLETED, ((RunCompleted) event).duration(), null);
+        } else if (event instanceof RunStopped) {
+            return run(Kind.RUN_STOPPED, ((RunStopped) event).duration(), null);
+        } else if (event instanceof RunAborted) {
+            RunAborted e = (RunAborted) event;
+            return run(Kind.RUN_ABORTED, e.duration(), message(e.message(), e.throwable()));
+        }
+        return null;
+    }
+
+    private static Event event(Kind kind, String thread, String suiteId, Option<String> suiteClassName,
+                               String testName, Option<Object> duration, String message) {
+        String className = suiteClassName.isDefined() ? suiteClassName.get() : suiteId;
+        return new Event(kind, suiteId, className, testName, millis(duration), message, 0, thread, -1);
+    }
+
+    private static Event run(Kind kind, Option<Object> duration, String message) {
+        return new Event(kind, null, null, null, millis(duration), message, 0, null, -1);
+    }
+
+    // The detail message of the throwable if it has one, as ScalaTest's own reporters show it
+    private static String message(String message, Option<Throwable> throwable) {
+        if (throwable.isDefined() && throwable.get().getMessage() != null) {
+            return throwable.get().getMessage();
+        }
+        return message;
+    }
+
+    private static long millis(Option<Object> duration) {
+        return duration.isDefined() ? (Long) duration.get() : -1;
+    }
+
+    private void close() {
+        try {
+            if (out != null) {
+                out.close();
+            } else if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            out = null;
+            socket = null;
+        }
+    }
+}
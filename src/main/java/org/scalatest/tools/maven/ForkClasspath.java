@@ -0,0 +1,111 @@
+package org.scalatest.tools.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.scalatest.tools.maven.MojoUtils.UTF_8;
+import static org.scalatest.tools.maven.MojoUtils.fingerprint;
+
+/**
+ * Writes the classpath of a forked JVM to a file, so that the command line stays short
+ * however many dependencies the tests have.  The classpath goes either into the
+ * <code>Class-Path</code> manifest attribute of an otherwise empty "pathing" jar, or into a
+ * <code>-classpath</code> option of an argument file as read by <code>java @file</code> since
+ * Java 9.
+ * <p>
+ * Files are named after a fingerprint of the classpath and written only when missing, so
+ * repeated builds with an unchanged classpath reuse the file already on disk.
+ */
+final class ForkClasspath {
+    static final String ENVIRONMENT = "environment";
+    static final String MANIFEST = "manifest";
+    static final String ARGFILE = "argfile";
+
+    private ForkClasspath() {
+    }
+
+    // Returns the pathing jar for classpath in directory, writing it if needed
+    static File pathingJar(File directory, List<String> classpath) throws IOException {
+        File jar = new File(directory, "classpath-" + fingerprint(classpath) + ".jar");
+        if (jar.isFile()) {
+            return jar;
+        }
+
+        // Manifest entries are URLs; directories only count as such with a trailing slash
+        StringBuilder classPath = new StringBuilder();
+        for (String element : classpath) {
+            File file = new File(element).getAbsoluteFile();
+            String url = file.toURI().toString();
+            if (!file.isFile() && !url.endsWith("/")) {
+                url += "/";
+            }
+            if (classPath.length() > 0) {
+                classPath.append(' ');
+            }
+            classPath.append(url);
+        }
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath.toString());
+
+        File temp = temporaryFile(jar);
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            new JarOutputStream(out, manifest).close();
+        } finally {
+            out.close();
+        }
+        return publish(temp, jar);
+    }
+
+    // Returns the argument file for classpath in directory, writing it if needed
+    static File argFile(File directory, List<String> classpath) throws IOException {
+        File file = new File(directory, "classpath-" + fingerprint(classpath) + ".args");
+        if (file.isFile()) {
+            return file;
+        }
+
+        // Inside quotes the launcher treats backslashes as escapes, so double them
+        StringBuilder joined = new StringBuilder();
+        for (String element : classpath) {
+            if (joined.length() > 0) {
+                joined.append(File.pathSeparatorChar);
+            }
+            joined.append(element);
+        }
+        String quoted = joined.toString().replace("\\", "\\\\").replace("\"", "\\\"");
+
+        File temp = temporaryFile(file);
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(("-classpath\n\"" + quoted + "\"\n").getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+        return publish(temp, file);
+    }
+
+    private static File temporaryFile(File target) throws IOException {
+        File directory = target.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        return File.createTempFile(target.getName(), ".tmp", directory);
+    }
+
+    // Moves temp into place; a concurrent build may have written the same file first
+    private static File publish(File temp, File target) throws IOException {
+        if (!temp.renameTo(target) && !target.isFile()) {
+            temp.delete();
+            throw new IOException("Cannot write " + target);
+        }
+        temp.delete();
+        return target;
+    }
+}
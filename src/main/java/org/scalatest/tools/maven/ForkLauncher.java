@@ -0,0 +1,283 @@
+package org.scalatest.tools.maven;
+
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineTimeOutException;
+import org.codehaus.plexus.util.cli.Commandline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs forked JVMs.  Their standard output and error either go straight to a file, written
+ * by the operating system without passing through Maven, or are pumped to the console in
+ * large batches of whole lines.
+ * <p>
+ * The pump reads into a few large buffers while a second thread writes filled ones out, so
+ * a fork keeps running while the console catches up.  Once all buffers are full the pump
+ * stops reading and the fork blocks on its output, which keeps memory bounded when a fork
+ * writes faster than the console can take it.
+ */
+final class ForkLauncher {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int BUFFERS = 3;
+
+    private ForkLauncher() {
+    }
+
+    // The command line as a process to start, without going through a shell
+    static ProcessBuilder processBuilder(Commandline cli) throws CommandLineException {
+        ProcessBuilder builder = new ProcessBuilder(cli.getCommandline());
+        builder.directory(cli.getWorkingDirectory());
+        for (String variable : cli.getEnvironmentVariables()) {
+            int equals = variable.indexOf('=');
+            builder.environment().put(variable.substring(0, equals), variable.substring(equals + 1));
+        }
+        return builder;
+    }
+
+    /**
+     * Watches a forked process while it runs.
+     */
+    interface Observer {
+        void started(Process process);
+
+        // Called once the process has ended, or is being abandoned
+        void ended();
+    }
+
+    //
+    // Runs the command and returns its exit code.  Output goes to the end of
+    // outputFile if given, or else to console, which forks running at the
+    // same time may share.  The process is watched by the observers until
+    // it ends.
+    //
+    static int execute(Commandline cli, File outputFile, OutputStream console, int timeoutSeconds,
+                       Observer... observers) throws CommandLineException {
+        ProcessBuilder builder = processBuilder(cli);
+        builder.redirectErrorStream(true);
+        if (outputFile != null) {
+            builder.redirectOutput(ProcessBuilder.Redirect.appendTo(outputFile));
+        }
+        // As with the shell the fork used to be started through, its input is
+        // a pipe closed right away, so tests reading stdin see its end rather
+        // than wait on, or consume, the input of Maven
+        builder.redirectInput(ProcessBuilder.Redirect.PIPE);
+
+        final Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            throw new CommandLineException("Error while executing process.", e);
+        }
+        Thread destroyer = new Thread("scalatest-fork-destroyer") {
+            @Override
+            public void run() {
+                process.destroy();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(destroyer);
+        for (Observer observer : observers) {
+            observer.started(process);
+        }
+
+        Pump pump = null;
+        try {
+            process.getOutputStream().close();
+            if (outputFile == null) {
+                pump = new Pump(process.getInputStream(), console);
+                pump.start();
+            }
+            if (timeoutSeconds > 0) {
+                if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                    throw new CommandLineTimeOutException("Process timed out after " + timeoutSeconds + " seconds.");
+                }
+            } else {
+                process.waitFor();
+            }
+            if (pump != null) {
+                pump.join();
+            }
+            return process.exitValue();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new CommandLineException("Interrupted while waiting for the forked process.", e);
+        } catch (IOException e) {
+            process.destroyForcibly();
+            throw new CommandLineException("Error while executing process.", e);
+        } finally {
+            for (Observer observer : observers) {
+                observer.ended();
+            }
+            try {
+                Runtime.getRuntime().removeShutdownHook(destroyer);
+            } catch (IllegalStateException ignored) {
+                // The JVM is shutting down and the hook runs anyway
+            }
+        }
+    }
+
+    //
+    // The process id of process: from Process.pid() on Java 9 and later,
+    // or the field holding it on Java 8; -1 when neither tells.
+    //
+    static long pid(Process process) {
+        try {
+            return ((Number) Process.class.getMethod("pid").invoke(process)).longValue();
+        } catch (NoSuchMethodException e) {
+            try {
+                Field pid = process.getClass().getDeclaredField("pid");
+                pid.setAccessible(true);
+                return pid.getInt(process);
+            } catch (Exception notUnix) {
+                return -1;
+            }
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    //
+    // Copies a fork's output to a shared stream.  Chunks end at a line break
+    // where the buffer holds one, so that the lines of forks writing to the
+    // same console are not cut into each other.
+    //
+    private static final class Pump {
+        private static final Chunk END = new Chunk(new byte[0], 0);
+
+        private final InputStream in;
+        private final OutputStream out;
+        private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<byte[]>(BUFFERS);
+        private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<Chunk>(BUFFERS + 1);
+        private final Thread reader;
+        private final Thread writer;
+        private volatile IOException failure;
+
+        Pump(InputStream in, OutputStream out) {
+            this.in = in;
+            this.out = out;
+            for (int i = 0; i < BUFFERS; i++) {
+                free.add(new byte[BUFFER_SIZE]);
+            }
+            reader = new Thread("scalatest-fork-output-reader") {
+                @Override
+                public void run() {
+                    read();
+                }
+            };
+            writer = new Thread("scalatest-fork-output-writer") {
+                @Override
+                public void run() {
+                    write();
+                }
+            };
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+        }
+
+        void start() {
+            reader.start();
+            writer.start();
+        }
+
+        // Waits until all output is written, rethrowing any failure to read or write it
+        void join() throws InterruptedException, IOException {
+            reader.join();
+            writer.join();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void read() {
+            try {
+                byte[] buffer = free.take();
+                int length = 0;
+                int read;
+                while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                    length += read;
+                    int end = lastLineBreak(buffer, length) + 1;
+                    if (end == 0 && length == buffer.length) {
+                        end = length; // a line longer than the buffer
+                    }
+                    if (end > 0) {
+                        byte[] next = free.take(); // blocks while the writer is behind
+                        System.arraycopy(buffer, end, next, 0, length - end);
+                        hand(buffer, end);
+                        length -= end;
+                        buffer = next;
+                    }
+                }
+                if (length > 0) {
+                    hand(buffer, length);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                // The run is being abandoned
+            } finally {
+                try {
+                    filled.put(END);
+                } catch (InterruptedException ignored) {}
+                try {
+                    in.close();
+                } catch (IOException ignored) {}
+            }
+        }
+
+        private void hand(byte[] buffer, int length) throws InterruptedException {
+            filled.put(new Chunk(buffer, length));
+        }
+
+        private void write() {
+            try {
+                while (true) {
+                    Chunk chunk = filled.take();
+                    if (chunk == END) {
+                        return;
+                    }
+                    // Once output cannot be written, it is dropped so that the fork does not block on it
+                    if (failure == null) {
+                        try {
+                            synchronized (out) {
+                                out.write(chunk.bytes, 0, chunk.length);
+                                out.flush();
+                            }
+                        } catch (IOException e) {
+                            failure = e;
+                        }
+                    }
+                    free.put(chunk.bytes);
+                }
+            } catch (InterruptedException e) {
+                // The run is being abandoned
+            }
+        }
+
+        private static int lastLineBreak(byte[] buffer, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class Chunk {
+        final byte[] bytes;
+        final int length;
+
+        Chunk(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.scalatest.tools.maven;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Limits the forked JVMs running at once across the modules of a build, such as one run
+ * with <code>-T</code>, by their number, their test threads and their maximum heap.  Maven
+ * keeps the plugin's classes loaded for the whole session, so a static limiter per session
+ * is seen by every execution in it.
+ * <p>
+ * Forks are let through in the order they asked, so a fork that needs much of a limit is
+ * not passed over again and again by smaller ones.  Each execution passes its own limits;
+ * a fork that needs more than a limit allows on its own starts once nothing else runs.
+ */
+final class ForkLimiter {
+    private static final Map<Object, ForkLimiter> sessions = new WeakHashMap<Object, ForkLimiter>();
+
+    private final LinkedList<Object> waiting = new LinkedList<Object>();
+    private int forks;
+    private int threads;
+    private long heap;
+
+    // The limiter of the session, or one of its own for a null session
+    static synchronized ForkLimiter forSession(Object session) {
+        if (session == null) {
+            return new ForkLimiter();
+        }
+        ForkLimiter limiter = sessions.get(session);
+        if (limiter == null) {
+            limiter = new ForkLimiter();
+            sessions.put(session, limiter);
+        }
+        return limiter;
+    }
+
+    /**
+     * The most a session may run at once; 0 for no limit.
+     */
+    static final class Limits {
+        final int forks;
+        final int threads;
+        final long heap;
+
+        Limits(int forks, int threads, long heap) {
+            this.forks = forks;
+            this.threads = threads;
+            this.heap = heap;
+        }
+
+        boolean isEmpty() {
+            return forks <= 0 && threads <= 0 && heap <= 0;
+        }
+    }
+
+    /**
+     * What a running fork holds, until released.
+     */
+    final class Permit {
+        final int threads;
+        final long heap;
+        final long waitedMillis;
+        private boolean released;
+
+        private Permit(int threads, long heap, long waitedMillis) {
+            this.threads = threads;
+            this.heap = heap;
+            this.waitedMillis = waitedMillis;
+        }
+
+        void release() {
+            synchronized (ForkLimiter.this) {
+                if (!released) {
+                    released = true;
+                    forks--;
+                    ForkLimiter.this.threads -= threads;
+                    ForkLimiter.this.heap -= heap;
+                    ForkLimiter.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    //
+    // Waits until a fork with the given test threads and heap in bytes fits
+    // within limits, after the forks that asked before it.
+    //
+    synchronized Permit acquire(Limits limits, int threads, long heap) throws InterruptedException {
+        Object ticket = new Object();
+        waiting.add(ticket);
+        long start = System.nanoTime();
+        try {
+            while (waiting.getFirst() != ticket || !fits(limits, threads, heap)) {
+                wait();
+            }
+        } finally {
+            waiting.remove(ticket);
+            notifyAll();
+        }
+        forks++;
+        this.threads += threads;
+        this.heap += heap;
+        return new Permit(threads, heap, (System.nanoTime() - start) / 1000000);
+    }
+
+    private boolean fits(Limits limits, int threads, long heap) {
+        return forks == 0
+                || (limits.forks <= 0 || forks + 1 <= limits.forks)
+                && (limits.threads <= 0 || this.threads + threads <= limits.threads)
+                && (limits.heap <= 0 || this.heap + heap <= limits.heap);
+    }
+
+    // What is in use, for the build log
+    synchronized String usage() {
+        return String.format("%d forks with %d test threads and %d MB of heap", forks, threads, heap >> 20);
+    }
+}
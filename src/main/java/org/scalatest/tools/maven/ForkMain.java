@@ -0,0 +1,105 @@
+package org.scalatest.tools.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of a forked JVM when the plugin runs suites in more than one fork.  Connects
+ * back to the {@link SuiteQueue} of the mojo that launched it and runs each batch of suites
+ * it is handed with ScalaTest's Runner, until the queue has no more to give.
+ * <p>
+ * This class is loaded from the test classpath of the forked JVM rather than from Maven,
+ * so it must not use anything but the JDK.
+ */
+public final class ForkMain {
+    static final byte NEXT_BATCH = 1;
+    static final int NO_MORE_BATCHES = -1;
+
+    // Appended to the file of each file reporter, followed by the batch number
+    static final String PART_SUFFIX = ".part-";
+
+    private ForkMain() {
+    }
+
+    // Arguments: <queue port> <fork number> <Runner arguments...>
+    public static void main(String[] args) {
+        int status;
+        try {
+            status = run(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                    Arrays.copyOfRange(args, 2, args.length)) ? 0 : 1;
+        } catch (Throwable t) {
+            t.printStackTrace();
+            status = 2;
+        }
+        // The Runner may leave non-daemon threads behind
+        System.exit(status);
+    }
+
+    private static boolean run(int port, int fork, String[] runnerArgs) throws Exception {
+        Method run = Class.forName("org.scalatest.tools.Runner").getMethod("run", String[].class);
+        boolean passed = true;
+        System.setProperty(EventChannel.FORK_PROPERTY, String.valueOf(fork));
+
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out.writeInt(fork);
+
+            while (true) {
+                out.writeByte(NEXT_BATCH);
+                out.flush();
+
+                int batch = in.readInt();
+                if (batch == NO_MORE_BATCHES) {
+                    return passed;
+                }
+                List<String> batchArgs = partArgs(runnerArgs, batch);
+                int suites = in.readInt();
+                for (int s = 0; s < suites; s++) {
+                    int length = in.readInt();
+                    for (int a = 0; a < length; a++) {
+                        batchArgs.add(in.readUTF());
+                    }
+                }
+
+                try {
+                    passed &= (Boolean) run.invoke(null, new Object[]{batchArgs.toArray(new String[batchArgs.size()])});
+                } catch (InvocationTargetException e) {
+                    throw new Exception("Runner failed for batch " + batch, e.getTargetException());
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    //
+    // File reporters truncate their file at the start of every Runner run, so
+    // each batch writes its own part of every -f and -M file.  The mojo stitches
+    // the parts back together in batch order once all forks are done.
+    //
+    static List<String> partArgs(String[] args, int batch) {
+        List<String> result = new ArrayList<String>(args.length + 16);
+        for (int i = 0; i < args.length; i++) {
+            result.add(args[i]);
+            if (isPartitionedFileArg(args[i]) && i + 1 < args.length) {
+                result.add(args[++i] + PART_SUFFIX + batch);
+            }
+        }
+        return result;
+    }
+
+    static boolean isPartitionedFileArg(String arg) {
+        return arg.startsWith("-f") || arg.equals("-M");
+    }
+}
@@ -0,0 +1,246 @@
+package org.scalatest.tools.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.scalatest.tools.maven.MojoUtils.UTF_8;
+
+/**
+ * What a forked JVM used: its GC pauses and the most heap it kept after a collection, read from
+ * the GC log it is started to write, and the peaks of its resident memory, threads and open files,
+ * sampled from <code>/proc/&lt;pid&gt;</code> while it runs.  The samples are only taken on Linux;
+ * elsewhere only the GC log is read.
+ * <p>
+ * Java 9 and later write a unified GC log, and Java 8 one of its own format; both are parsed.
+ * Collectors that do not log their pauses with the heap before and after, such as ZGC, leave
+ * the GC part empty.
+ */
+final class ForkTelemetry implements ForkLauncher.Observer {
+    static final String JSON_FILE = "scalatest-telemetry.json";
+
+    private static final long SAMPLE_MILLIS = 1000;
+
+    // "[0.123s][info][gc] GC(3) Pause Young (Normal) (G1 Evacuation Pause) 24M->3M(256M) 2.345ms"
+    private static final Pattern UNIFIED_PAUSE =
+            Pattern.compile("Pause.*?(\\d+)([KMG])->(\\d+)([KMG])\\(\\d+[KMG]\\)\\s+([0-9.]+)ms");
+
+    // "0.512: [GC (Allocation Failure)  65536K->1234K(251392K), 0.0023 secs]"
+    private static final Pattern JAVA_8_PAUSE =
+            Pattern.compile("\\[(?:Full )?GC.*?(\\d+)K->(\\d+)K\\(\\d+K\\), ([0-9.]+) secs\\]");
+
+    final String name;
+    private final File gcLog;
+    private final File proc;
+
+    private int pauses;
+    private double pauseMillis;
+    private double maxPauseMillis;
+    private long peakHeapAfterGc;
+
+    private volatile boolean sampled;
+    private volatile long peakRss;
+    private volatile int peakThreads;
+    private volatile int peakOpenFiles;
+
+    private Thread sampler;
+    private volatile boolean stopped;
+
+    //
+    // Telemetry of the fork with the given name, which writes its GC log to
+    // gcLog, with its process sampled under proc, normally /proc.
+    //
+    ForkTelemetry(String name, File gcLog, File proc) {
+        this.name = name;
+        this.gcLog = gcLog;
+        this.proc = proc;
+    }
+
+    // The options that have a JVM of the given feature release write the GC log
+    List<String> jvmArguments(int javaVersion) {
+        if (javaVersion >= 9) {
+            return Collections.singletonList("-Xlog:gc:file=\"" + gcLog.getAbsolutePath() + "\"");
+        }
+        return Collections.singletonList("-Xloggc:" + gcLog.getAbsolutePath());
+    }
+
+    //
+    // Samples process until it ends, when /proc tells about it.
+    //
+    public void started(Process process) {
+        final File directory = new File(proc, String.valueOf(ForkLauncher.pid(process)));
+        if (!new File(directory, "status").isFile()) {
+            return;
+        }
+        sampler = new Thread("scalatest-fork-telemetry") {
+            @Override
+            public void run() {
+                while (!stopped) {
+                    sample(directory);
+                    try {
+                        Thread.sleep(SAMPLE_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    // Stops sampling, once the fork has ended, and reads its GC log
+    public void ended() {
+        stopped = true;
+        if (sampler != null) {
+            sampler.interrupt();
+            try {
+                sampler.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            readGcLog(gcLog);
+        } catch (IOException e) {
+            // No pauses to tell about
+        }
+    }
+
+    //
+    // Takes the peaks from the status and file descriptors of the process
+    // in directory.  VmHWM is the peak the kernel keeps of the resident
+    // memory, so that it is exact whenever the samples are taken.
+    //
+    void sample(File directory) {
+        try {
+            long rss = 0;
+            int threads = 0;
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(new File(directory, "status")), UTF_8));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("VmHWM:") || line.startsWith("VmRSS:")) {
+                        rss = Math.max(rss, kilobytes(line) * 1024);
+                    } else if (line.startsWith("Threads:")) {
+                        threads = Integer.parseInt(line.substring("Threads:".length()).trim());
+                    }
+                }
+            } finally {
+                in.close();
+            }
+            String[] files = new File(directory, "fd").list();
+            peakRss = Math.max(peakRss, rss);
+            peakThreads = Math.max(peakThreads, threads);
+            peakOpenFiles = Math.max(peakOpenFiles, files == null ? 0 : files.length);
+            sampled = true;
+        } catch (IOException e) {
+            // The process ended
+        } catch (NumberFormatException e) {
+            // Not a status this knows
+        }
+    }
+
+    private static long kilobytes(String statusLine) {
+        String value = statusLine.substring(statusLine.indexOf(':') + 1).trim();
+        int space = value.indexOf(' ');
+        return Long.parseLong(space < 0 ? value : value.substring(0, space));
+    }
+
+    void readGcLog(File file) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                Matcher unified = UNIFIED_PAUSE.matcher(line);
+                if (unified.find()) {
+                    pause(Double.parseDouble(unified.group(5)), bytes(unified.group(3), unified.group(4)));
+                    continue;
+                }
+                Matcher java8 = JAVA_8_PAUSE.matcher(line);
+                if (java8.find()) {
+                    pause(Double.parseDouble(java8.group(3)) * 1000, Long.parseLong(java8.group(2)) * 1024);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void pause(double millis, long heapAfter) {
+        pauses++;
+        pauseMillis += millis;
+        maxPauseMillis = Math.max(maxPauseMillis, millis);
+        peakHeapAfterGc = Math.max(peakHeapAfterGc, heapAfter);
+    }
+
+    private static long bytes(String size, String unit) {
+        int shift = unit.equals("G") ? 30 : unit.equals("M") ? 20 : 10;
+        return Long.parseLong(size) << shift;
+    }
+
+    //
+    // One line for the build log, e.g. "fork-0: 12 GC pauses, 45.2 ms in
+    // total and 8.1 ms at most, 34 MB of heap after GC at most; peak RSS
+    // 210 MB, 23 threads and 41 open files at most".
+    //
+    String summary() {
+        StringBuilder line = new StringBuilder(name).append(": ");
+        if (pauses == 0) {
+            line.append("no GC pauses logged");
+        } else {
+            line.append(String.format(Locale.ROOT, "%d GC pauses, %.1f ms in total and %.1f ms at most, %d MB of heap after GC at most",
+                    pauses, pauseMillis, maxPauseMillis, peakHeapAfterGc >> 20));
+        }
+        if (sampled) {
+            line.append(String.format(Locale.ROOT, "; peak RSS %d MB, %d threads and %d open files at most",
+                    peakRss >> 20, peakThreads, peakOpenFiles));
+        }
+        return line.toString();
+    }
+
+    private String json() {
+        StringBuilder json = new StringBuilder();
+        json.append(String.format(Locale.ROOT, "{\"fork\": \"%s\", \"gcPauses\": %d, \"gcPauseMillis\": %.3f, "
+                        + "\"maxGcPauseMillis\": %.3f, \"peakHeapAfterGcBytes\": %d",
+                name, pauses, pauseMillis, maxPauseMillis, peakHeapAfterGc));
+        if (sampled) {
+            json.append(String.format(Locale.ROOT, ", \"peakRssBytes\": %d, \"peakThreads\": %d, \"peakOpenFiles\": %d",
+                    peakRss, peakThreads, peakOpenFiles));
+        }
+        return json.append("}").toString();
+    }
+
+    // Writes the telemetry of forks to JSON_FILE in directory
+    static void write(File directory, List<ForkTelemetry> forks) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(directory, JSON_FILE)), UTF_8));
+        try {
+            out.write("{\n  \"forks\": [");
+            for (int i = 0; i < forks.size(); i++) {
+                out.write(i == 0 ? "\n    " : ",\n    ");
+                out.write(forks.get(i).json());
+            }
+            out.write("\n  ]\n}\n");
+        } finally {
+            out.close();
+        }
+    }
+}
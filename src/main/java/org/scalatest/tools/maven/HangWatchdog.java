@@ -0,0 +1,300 @@
+package org.scalatest.tools.maven;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+import org.scalatest.tools.maven.EventChannel.Event;
+import org.scalatest.tools.maven.EventChannel.Kind;
+
+/**
+ * Stops forks stuck in a suite or test.  The suites and tests each fork is running are
+ * followed from its events, and one that runs past its timeout has its fork dumped a few
+ * times, some seconds apart, so that the dumps show whether its threads move at all, and
+ * the fork is then destroyed unless the suite or test finished in the meantime.
+ * <p>
+ * The dumps are taken with the <code>jcmd</code> of the JDK of the forks, into files named
+ * after the suite.  Without one, as with a bare JRE, the fork is sent <code>SIGQUIT</code>,
+ * which has it print its threads to its own output.
+ */
+final class HangWatchdog implements EventChannel.Listener, Closeable {
+    private static final long CHECK_MILLIS = 1000;
+    private static final long JCMD_TIMEOUT_SECONDS = 30;
+
+    private final long suiteTimeoutMillis;
+    private final long testTimeoutMillis;
+    private final int dumps;
+    private final long dumpIntervalMillis;
+    private final File jcmd;
+    private final File dumpDirectory;
+    private final Log log;
+
+    // What each fork is running, by fork and then suite id or suite id and test name
+    private final Map<String, Running> running = new LinkedHashMap<String, Running>();
+    private final Map<Integer, Process> processes = new HashMap<Integer, Process>();
+    private final List<String> hangs = Collections.synchronizedList(new ArrayList<String>());
+    private final Thread checker;
+    private volatile boolean closed;
+
+    //
+    // A watchdog for timeouts of suites and tests in seconds, either 0 for
+    // none, that takes dumps thread dumps dumpIntervalSeconds apart with
+    // jcmd, which need not exist, into dumpDirectory.
+    //
+    HangWatchdog(int suiteTimeoutSeconds, int testTimeoutSeconds, int dumps, int dumpIntervalSeconds,
+                 File jcmd, File dumpDirectory, Log log) {
+        this.suiteTimeoutMillis = TimeUnit.SECONDS.toMillis(suiteTimeoutSeconds);
+        this.testTimeoutMillis = TimeUnit.SECONDS.toMillis(testTimeoutSeconds);
+        this.dumps = Math.max(1, dumps);
+        this.dumpIntervalMillis = TimeUnit.SECONDS.toMillis(Math.max(0, dumpIntervalSeconds));
+        this.jcmd = jcmd;
+        this.dumpDirectory = dumpDirectory;
+        this.log = log;
+        checker = new Thread("scalatest-hang-watchdog") {
+            @Override
+            public void run() {
+                while (!closed) {
+                    check(System.currentTimeMillis());
+                    try {
+                        Thread.sleep(CHECK_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        checker.setDaemon(true);
+        checker.start();
+    }
+
+    //
+    // The jcmd of the JDK the java executable at jvm belongs to, looked for
+    // next to it and, for the JRE inside a Java 8 JDK, in the bin directory
+    // above, or null when there is none.
+    //
+    static File jcmd(String jvm) {
+        File bin = new File(jvm).getAbsoluteFile().getParentFile();
+        String name = jvm.toLowerCase().endsWith(".exe") ? "jcmd.exe" : "jcmd";
+        if (bin == null) {
+            return null;
+        }
+        for (File jcmd : new File[]{new File(bin, name), new File(bin, "../../bin/" + name)}) {
+            if (jcmd.isFile()) {
+                return jcmd;
+            }
+        }
+        return null;
+    }
+
+    // Has the watchdog follow the process of the fork with the given number, -1 for a single fork
+    ForkLauncher.Observer observer(final int fork) {
+        return new ForkLauncher.Observer() {
+            public void started(Process process) {
+                synchronized (HangWatchdog.this) {
+                    processes.put(fork, process);
+                }
+            }
+
+            public void ended() {
+                synchronized (HangWatchdog.this) {
+                    processes.remove(fork);
+                    forget(fork);
+                }
+            }
+        };
+    }
+
+    public synchronized void event(Event event) {
+        if (event.kind == Kind.SUITE_STARTING && suiteTimeoutMillis > 0 && !EventChannel.DISCOVERY_SUITE.equals(event.suiteClassName)) {
+            running.put(key(event.fork, event.suiteId, null), new Running(event, suiteTimeoutMillis));
+        } else if (event.kind == Kind.TEST_STARTING && testTimeoutMillis > 0) {
+            running.put(key(event.fork, event.suiteId, event.testName), new Running(event, testTimeoutMillis));
+        } else if (event.kind.endsRun()) {
+            forget(event.fork);
+        } else if (event.kind.hasDuration) {
+            running.remove(key(event.fork, event.suiteId, event.kind.hasTest ? event.testName : null));
+        }
+    }
+
+    private void forget(int fork) {
+        for (Iterator<Running> it = running.values().iterator(); it.hasNext(); ) {
+            if (it.next().fork == fork) {
+                it.remove();
+            }
+        }
+    }
+
+    private static String key(int fork, String suiteId, String testName) {
+        return testName == null ? fork + "\u0000" + suiteId : fork + "\u0000" + suiteId + "\u0000" + testName;
+    }
+
+    //
+    // Starts on the suites and tests that are over their timeout at the
+    // given time, each on a thread of its own, as dumping takes a while.
+    //
+    void check(long now) {
+        List<Running> overdue = new ArrayList<Running>();
+        synchronized (this) {
+            for (Running entry : running.values()) {
+                if (!entry.handled && now - entry.started > entry.timeoutMillis && processes.containsKey(entry.fork)) {
+                    entry.handled = true;
+                    overdue.add(entry);
+                }
+            }
+        }
+        for (final Running entry : overdue) {
+            Thread handler = new Thread("scalatest-hang-dumper") {
+                @Override
+                public void run() {
+                    handle(entry);
+                }
+            };
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    //
+    // Dumps the fork running entry, and destroys it unless entry finished
+    // between the dumps.
+    //
+    void handle(Running entry) {
+        Process process;
+        synchronized (this) {
+            process = processes.get(entry.fork);
+        }
+        if (process == null) {
+            return;
+        }
+        log.warn(String.format("%s has run for more than %d s in %s; taking %d thread dumps of it.",
+                entry, TimeUnit.MILLISECONDS.toSeconds(entry.timeoutMillis), forkName(entry.fork), dumps));
+        for (int dump = 1; dump <= dumps; dump++) {
+            threadDump(process, new File(dumpDirectory, dumpName(entry, dump)));
+            if (!isRunning(entry)) {
+                log.warn(entry + " finished while its fork was being dumped; leaving the fork running.");
+                return;
+            }
+            if (dump < dumps) {
+                try {
+                    Thread.sleep(dumpIntervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+        if (!isRunning(entry) || closed) {
+            return;
+        }
+        String hang = String.format("%s (over %d s in %s)", entry, TimeUnit.MILLISECONDS.toSeconds(entry.timeoutMillis),
+                forkName(entry.fork));
+        hangs.add(hang);
+        log.error("Stopping " + forkName(entry.fork) + ", stuck in " + entry + "; thread dumps are in " + dumpDirectory + ".");
+        process.destroyForcibly();
+    }
+
+    private synchronized boolean isRunning(Running entry) {
+        return running.containsValue(entry);
+    }
+
+    //
+    // Has jcmd write the threads of process to file, or else sends it
+    // SIGQUIT to print them to its output.
+    //
+    private void threadDump(Process process, File file) {
+        long pid = ForkLauncher.pid(process);
+        if (pid < 0) {
+            log.warn("Unable to take a thread dump: the process id of the fork is not known.");
+            return;
+        }
+        if (jcmd != null) {
+            dumpDirectory.mkdirs();
+            try {
+                Process dump = new ProcessBuilder(jcmd.getPath(), String.valueOf(pid), "Thread.print", "-l")
+                        .redirectErrorStream(true).redirectOutput(file).start();
+                if (dump.waitFor(JCMD_TIMEOUT_SECONDS, TimeUnit.SECONDS) && dump.exitValue() == 0) {
+                    log.info("Thread dump written to " + file);
+                    return;
+                }
+                dump.destroyForcibly();
+            } catch (IOException e) {
+                // Falls back to SIGQUIT
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        try {
+            Process quit = new ProcessBuilder("kill", "-3", String.valueOf(pid)).start();
+            if (quit.waitFor(JCMD_TIMEOUT_SECONDS, TimeUnit.SECONDS) && quit.exitValue() == 0) {
+                log.info("Sent SIGQUIT to the fork; its thread dump is in its output.");
+                return;
+            }
+        } catch (IOException e) {
+            // No kill command, as on Windows
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        log.warn("Unable to take a thread dump of process " + pid + ".");
+    }
+
+    // e.g. "org.example.SlowSpec-fork-2-dump-1.txt"
+    static String dumpName(Running entry, int dump) {
+        String fork = entry.fork < 0 ? "fork" : "fork-" + entry.fork;
+        return entry.suite.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + fork + "-dump-" + dump + ".txt";
+    }
+
+    private static String forkName(int fork) {
+        return fork < 0 ? "the forked JVM" : "fork " + fork;
+    }
+
+    // The suites and tests whose forks were stopped, as lines for the build log
+    List<String> hangs() {
+        synchronized (hangs) {
+            return new ArrayList<String>(hangs);
+        }
+    }
+
+    public void close() {
+        closed = true;
+        checker.interrupt();
+    }
+
+    /**
+     * A suite or test a fork is running.
+     */
+    static final class Running {
+        final int fork;
+        final String suite;
+        final String test;
+        final long started;
+        final long timeoutMillis;
+        boolean handled;
+
+        Running(Event starting, long timeoutMillis) {
+            this(starting.fork, starting.suiteClassName, starting.kind.hasTest ? starting.testName : null,
+                    System.currentTimeMillis(), timeoutMillis);
+        }
+
+        Running(int fork, String suite, String test, long started, long timeoutMillis) {
+            this.fork = fork;
+            this.suite = suite;
+            this.test = test;
+            this.started = started;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public String toString() {
+            return test == null ? "suite " + suite : "test \"" + test + "\" of " + suite;
+        }
+    }
+}
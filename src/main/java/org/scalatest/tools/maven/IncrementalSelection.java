@@ -0,0 +1,237 @@
+package org.scalatest.tools.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static org.scalatest.tools.maven.MojoUtils.fingerprint;
+import static org.scalatest.tools.maven.MojoUtils.hash;
+import static org.scalatest.tools.maven.MojoUtils.readBytes;
+
+/**
+ * Picks the suites whose code changed since the last successful run, for incremental
+ * test runs.
+ * <p>
+ * Every class file in the class directories is scanned for the classes its constant pool
+ * names.  A suite depends on the classes it reaches through those references, and on the
+ * jars holding any class it reaches that is not in the directories.  Its digest covers the
+ * contents of those classes, the size and modification time of those jars, the resources
+ * in the directories, the list of jars and the configuration of the run; a suite runs again
+ * when its digest differs from the one recorded by the last successful run.
+ * <p>
+ * Like any analysis of compiled code, this does not see constants that the compiler
+ * inlined into the classes using them.
+ */
+final class IncrementalSelection {
+    private final Map<String, ClassNode> classes = new HashMap<String, ClassNode>();
+    private final Map<String, List<File>> jarsByPackage = new HashMap<String, List<File>>();
+    private final String sharedDigest;
+
+    //
+    // Scans the given class directories and indexes the packages in the
+    // jars.  Anything that should make every suite run again when changed,
+    // such as the configuration, goes in shared.  So do the paths of the
+    // jars: a dependency added, removed or changed in version reruns every
+    // suite, as its effect through other jars cannot be traced, while a jar
+    // rebuilt in place only reruns the suites reaching into it.
+    //
+    IncrementalSelection(List<File> directories, List<File> jars, List<String> shared) throws IOException {
+        List<String> sharedParts = new ArrayList<String>(shared);
+        for (File directory : directories) {
+            scan(directory, "", sharedParts);
+        }
+        Collections.sort(sharedParts);
+        for (File jar : jars) {
+            sharedParts.add("jar:" + jar.getPath());
+            if (jar.isFile()) {
+                indexPackages(jar);
+            }
+        }
+        this.sharedDigest = fingerprint(sharedParts);
+    }
+
+    //
+    // Returns the digest of each suite, keyed by suite name.  Each item holds
+    // the Runner arguments for one suite, ("-s", suiteName, ...), and these are
+    // part of the digest so that a change to the tests selected reruns it.
+    //
+    Map<String, String> digests(List<List<String>> items) {
+        Map<String, String> digests = new HashMap<String, String>();
+        for (List<String> item : items) {
+            Set<String> parts = new TreeSet<String>(dependencies(item.get(1)));
+            parts.add("args:" + item);
+            parts.add("shared:" + sharedDigest);
+            digests.put(item.get(1), fingerprint(new ArrayList<String>(parts)));
+        }
+        return unmodifiableMap(digests);
+    }
+
+    // The items whose digest differs from the recorded one
+    static List<List<String>> changed(List<List<String>> items, Map<String, String> digests, Map<String, String> recorded) {
+        List<List<String>> result = new ArrayList<List<String>>();
+        for (List<String> item : items) {
+            String suite = item.get(1);
+            if (!digests.get(suite).equals(recorded.get(suite))) {
+                result.add(item);
+            }
+        }
+        return unmodifiableList(result);
+    }
+
+    //
+    // The classes of the directories reachable from the suite, with their
+    // content hashes, and the jars of the other classes it reaches.
+    //
+    private Set<String> dependencies(String suite) {
+        Set<String> parts = new HashSet<String>();
+        Set<String> visited = new HashSet<String>();
+        Deque<String> pending = new ArrayDeque<String>();
+        pending.add(suite);
+        visited.add(suite);
+        while (!pending.isEmpty()) {
+            String name = pending.removeFirst();
+            ClassNode node = classes.get(name);
+            if (node == null) {
+                List<File> jars = jarsByPackage.get(packageOf(name));
+                if (jars != null) {
+                    for (File jar : jars) {
+                        parts.add("jar:" + jar.getPath() + "@" + jar.length() + "@" + jar.lastModified());
+                    }
+                }
+                continue;
+            }
+            parts.add("class:" + name + "@" + node.hash);
+            for (String reference : node.references) {
+                if (visited.add(reference)) {
+                    pending.add(reference);
+                }
+            }
+        }
+        return parts;
+    }
+
+    private void scan(File dir, String prefix, List<String> resources) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                scan(file, path + "/", resources);
+            } else if (path.endsWith(".class")) {
+                byte[] bytes = readBytes(file);
+                ClassFileInfo info;
+                try {
+                    info = ClassFileInfo.read(new ByteArrayInputStream(bytes));
+                } catch (IOException e) {
+                    resources.add(path + "@" + hash(bytes));
+                    continue;
+                }
+                classes.put(info.name, new ClassNode(hash(bytes), info.references));
+            } else {
+                resources.add(path + "@" + hash(readBytes(file)));
+            }
+        }
+    }
+
+    private void indexPackages(File file) throws IOException {
+        JarFile jar = new JarFile(file);
+        try {
+            Set<String> packages = new HashSet<String>();
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                String path = entries.nextElement().getName();
+                if (path.endsWith(".class")) {
+                    int slash = path.lastIndexOf('/');
+                    packages.add(slash < 0 ? "" : path.substring(0, slash).replace('/', '.'));
+                }
+            }
+            for (String pkg : packages) {
+                List<File> jars = jarsByPackage.get(pkg);
+                if (jars == null) {
+                    jars = new ArrayList<File>(1);
+                    jarsByPackage.put(pkg, jars);
+                }
+                jars.add(file);
+            }
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static String packageOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(0, dot);
+    }
+
+    //
+    // The digests recorded by the last successful run, by suite name, or
+    // an empty map when there is no record.
+    //
+    static Map<String, String> readRecord(File file) {
+        Map<String, String> record = new HashMap<String, String>();
+        if (file.isFile()) {
+            Properties properties = new Properties();
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                return record;
+            }
+            for (String suite : properties.stringPropertyNames()) {
+                record.put(suite, properties.getProperty(suite));
+            }
+        }
+        return record;
+    }
+
+    static void writeRecord(File file, Map<String, String> record) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        Properties properties = new Properties();
+        properties.putAll(record);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, "Suite digests of the last successful ScalaTest run");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static final class ClassNode {
+        final String hash;
+        final Set<String> references;
+
+        ClassNode(String hash, Set<String> references) {
+            this.hash = hash;
+            this.references = references;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package org.scalatest.tools.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Java Flight Recorder profiles of forked runs: the options that start a recording with the
+ * plugin's settings, and a summary of the recordings of a run, made of the methods most often
+ * on CPU, the sites that allocated most and the locks threads waited longest for, with the
+ * CPU and allocations of each suite.
+ * <p>
+ * A sample or allocation counts for the suite of the innermost frame of its stack that is in a
+ * suite class or one nested in it, such as the closure of a test.  When no frame is, the name
+ * ScalaTest gives the threads running a suite is used, which only Java 8 records as renamed.
+ * <p>
+ * The recordings are read through <code>jdk.jfr.consumer</code>, which the plugin is not built
+ * against as Java 8 only has it from update 262, so the summary needs a Maven JVM that has it.
+ */
+final class JfrProfile {
+    static final String SETTINGS = "scalatest-profile.jfc";
+    static final String SUMMARY_FILE = "scalatest-profile.txt";
+
+    // Prefix and suffix of the recordings, named after their forks
+    static final String PREFIX = "scalatest-";
+    static final String SUFFIX = ".jfr";
+
+    private static final int STACK_DEPTH = 128;
+
+    // Frames of the lock implementations themselves, skipped to find what waited on a lock
+    private static final List<String> LOCK_FRAMES = Arrays.asList(
+            "java.util.concurrent.locks.", "sun.misc.Unsafe", "jdk.internal.misc.Unsafe");
+
+    private final Set<String> suites;
+    private final Map<String, String> suitesBySimpleName = new HashMap<String, String>();
+
+    private final Map<String, Long> cpuByMethod = new HashMap<String, Long>();
+    private final Map<String, Long> cpuBySuite = new HashMap<String, Long>();
+    private final Map<String, Long> sampledAllocations = new HashMap<String, Long>();
+    private final Map<String, Long> sampledAllocationsBySuite = new HashMap<String, Long>();
+    private final Map<String, Long> tlabAllocations = new HashMap<String, Long>();
+    private final Map<String, Long> tlabAllocationsBySuite = new HashMap<String, Long>();
+    private final Map<String, Long> lockNanos = new HashMap<String, Long>();
+    private final Map<String, Long> lockCounts = new HashMap<String, Long>();
+    private long samples;
+    private int recordings;
+
+    //
+    // A profile that attributes what it reads to the suites of the given
+    // class names.
+    //
+    JfrProfile(Collection<String> suites) {
+        this.suites = new HashSet<String>(suites);
+        Set<String> ambiguous = new HashSet<String>();
+        for (String suite : suites) {
+            String simpleName = suite.substring(suite.lastIndexOf('.') + 1);
+            if (suitesBySimpleName.put(simpleName, suite) != null) {
+                ambiguous.add(simpleName);
+            }
+        }
+        suitesBySimpleName.keySet().removeAll(ambiguous);
+    }
+
+    //
+    // Writes the plugin's settings to directory, for forks to start
+    // recording with, and returns the file.
+    //
+    static File writeSettings(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        File settings = new File(directory, SETTINGS);
+        InputStream in = JfrProfile.class.getResourceAsStream("/" + SETTINGS);
+        if (in == null) {
+            throw new IOException("No " + SETTINGS + " in the plugin");
+        }
+        try {
+            OutputStream out = new FileOutputStream(settings);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return settings;
+    }
+
+    //
+    // Whether the JVM at jvm, of the given feature release, can record:
+    // Java 11 and later, and Java 8 from the update that brought Flight
+    // Recorder to OpenJDK, which has a jfr.jar.
+    //
+    static boolean canRecord(String jvm, int javaVersion) {
+        if (javaVersion >= 11) {
+            return true;
+        }
+        File bin = new File(jvm).getAbsoluteFile().getParentFile();
+        return javaVersion == 8 && bin != null && new File(bin.getParentFile(), "lib/jfr.jar").isFile();
+    }
+
+    // The options that have a fork record to recording with settings until it exits
+    static List<String> jvmArguments(File recording, File settings) {
+        return Arrays.asList(
+                "-XX:StartFlightRecording=dumponexit=true,filename=" + recording.getAbsolutePath()
+                        + ",settings=" + settings.getAbsolutePath(),
+                "-XX:FlightRecorderOptions=stackdepth=" + STACK_DEPTH);
+    }
+
+    // The recording of the fork with the given name in directory
+    static File recording(File directory, String fork) {
+        return new File(directory, PREFIX + fork + SUFFIX);
+    }
+
+    // Removes the recordings of an earlier run from directory
+    static void clear(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(PREFIX) && file.getName().endsWith(SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    // Whether this JVM can read recordings
+    static boolean canRead() {
+        try {
+            Class.forName("jdk.jfr.consumer.RecordingFile");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    //
+    // Adds the events of recording to the profile.  Needs canRead().
+    //
+    void read(File recording) throws IOException {
+        Consumer consumer;
+        try {
+            consumer = new Consumer();
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unable to read Flight Recorder recordings in this JVM", e);
+        }
+        try {
+            consumer.read(recording.toPath());
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause
+                    : new IOException("Unable to read " + recording + ": " + cause, cause);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unable to read " + recording + ": " + e, e);
+        }
+        recordings++;
+    }
+
+    //
+    // Adds an event of the given type, with its stack trace as the classes
+    // and methods of its frames, innermost first, and the value the type
+    // is counted by: the bytes of an allocation or nanoseconds of a wait.
+    //
+    void add(String type, List<String[]> frames, String thread, String objectClass, long value) {
+        if (type.equals("jdk.ExecutionSample")) {
+            if (!frames.isEmpty()) {
+                samples++;
+                increment(cpuByMethod, method(frames.get(0)), 1);
+                increment(cpuBySuite, suite(frames, thread), 1);
+            }
+        } else if (type.equals("jdk.ObjectAllocationSample")) {
+            addAllocation(sampledAllocations, sampledAllocationsBySuite, frames, thread, objectClass, value);
+        } else if (type.equals("jdk.ObjectAllocationInNewTLAB") || type.equals("jdk.ObjectAllocationOutsideTLAB")) {
+            addAllocation(tlabAllocations, tlabAllocationsBySuite, frames, thread, objectClass, value);
+        } else if (type.equals("jdk.JavaMonitorEnter") || (type.equals("jdk.ThreadPark") && isLock(objectClass))) {
+            String site = lockSite(frames) + " (" + objectClass + ")";
+            increment(lockNanos, site, value);
+            increment(lockCounts, site, 1);
+        }
+    }
+
+    private void addAllocation(Map<String, Long> bySite, Map<String, Long> bySuite, List<String[]> frames,
+                               String thread, String objectClass, long bytes) {
+        if (frames.isEmpty()) {
+            return;
+        }
+        increment(bySite, method(frames.get(0)) + " (" + objectClass + ")", bytes);
+        increment(bySuite, suite(frames, thread), bytes);
+    }
+
+    // Parking on a condition is waiting for something to do, not for a lock
+    private static boolean isLock(String blocker) {
+        return blocker != null && !blocker.endsWith("$ConditionObject");
+    }
+
+    private static String lockSite(List<String[]> frames) {
+        for (String[] frame : frames) {
+            boolean lockFrame = false;
+            for (String prefix : LOCK_FRAMES) {
+                lockFrame |= frame[0].startsWith(prefix);
+            }
+            if (!lockFrame) {
+                return method(frame);
+            }
+        }
+        return frames.isEmpty() ? "(no stack trace)" : method(frames.get(0));
+    }
+
+    // The suite of the innermost frame in a suite class, or else of the thread, or null
+    private String suite(List<String[]> frames, String thread) {
+        for (String[] frame : frames) {
+            int nested = frame[0].indexOf('$');
+            String outer = nested < 0 ? frame[0] : frame[0].substring(0, nested);
+            if (suites.contains(outer)) {
+                return outer;
+            }
+        }
+        // ScalaTest runs suites on threads named like "ScalaTest-main-running-HelloSpec"
+        int running = thread == null ? -1 : thread.indexOf("running-");
+        if (thread != null && thread.contains("ScalaTest") && running >= 0) {
+            return suitesBySimpleName.get(thread.substring(running + "running-".length()));
+        }
+        return null;
+    }
+
+    // The source form of a class name as the JVM gives it, e.g. "byte[]" for "[B"
+    static String typeName(String name) {
+        int dimensions = 0;
+        while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions == 0) {
+            return name;
+        }
+        String element = name.substring(dimensions);
+        int primitive = "ZBCSIJFD".indexOf(element.charAt(0));
+        if (primitive >= 0 && element.length() == 1) {
+            element = new String[]{"boolean", "byte", "char", "short", "int", "long", "float", "double"}[primitive];
+        } else if (element.startsWith("L") && element.endsWith(";")) {
+            element = element.substring(1, element.length() - 1);
+        }
+        StringBuilder type = new StringBuilder(element);
+        for (int i = 0; i < dimensions; i++) {
+            type.append("[]");
+        }
+        return type.toString();
+    }
+
+    private static String method(String[] frame) {
+        return frame[0] + "." + frame[1];
+    }
+
+    private static void increment(Map<String, Long> counts, String key, long by) {
+        if (key == null) {
+            return;
+        }
+        Long count = counts.get(key);
+        counts.put(key, count == null ? by : count + by);
+    }
+
+    //
+    // The summary for the build log: the top entries of each part, or a
+    // line saying there was nothing to read.
+    //
+    List<String> summary(int top) {
+        List<String> lines = new ArrayList<String>();
+        lines.add(String.format("Profile of %d forked JVMs: %d CPU samples.", recordings, samples));
+        if (samples > 0) {
+            lines.add("Methods most often on CPU:");
+            for (Map.Entry<String, Long> method : top(cpuByMethod, top)) {
+                lines.add(String.format(Locale.ROOT, "  %5.1f%%  %s", 100.0 * method.getValue() / samples, method.getKey()));
+            }
+        }
+        // Sampled allocations are weighed by the JVM to stand for all; TLAB events only for what they saw
+        boolean sampled = !sampledAllocations.isEmpty();
+        Map<String, Long> allocations = sampled ? sampledAllocations : tlabAllocations;
+        if (!allocations.isEmpty()) {
+            lines.add("Sites allocating most:");
+            for (Map.Entry<String, Long> site : top(allocations, top)) {
+                lines.add(String.format(Locale.ROOT, "  %8s  %s", megabytes(site.getValue()), site.getKey()));
+            }
+        }
+        if (!lockNanos.isEmpty()) {
+            lines.add("Lock contention:");
+            for (Map.Entry<String, Long> site : top(lockNanos, top)) {
+                lines.add(String.format(Locale.ROOT, "  %7.2f s  %s, %d waits", site.getValue() / 1e9, site.getKey(),
+                        lockCounts.get(site.getKey())));
+            }
+        }
+        Map<String, Long> allocationsBySuite = sampled ? sampledAllocationsBySuite : tlabAllocationsBySuite;
+        if (!cpuBySuite.isEmpty() || !allocationsBySuite.isEmpty()) {
+            lines.add("By suite:");
+            Set<String> bySuite = new HashSet<String>(cpuBySuite.keySet());
+            bySuite.addAll(allocationsBySuite.keySet());
+            Map<String, Long> order = new HashMap<String, Long>();
+            for (String suite : bySuite) {
+                order.put(suite, cpuBySuite.containsKey(suite) ? cpuBySuite.get(suite) : 0L);
+            }
+            for (Map.Entry<String, Long> suite : top(order, top)) {
+                Long allocated = allocationsBySuite.get(suite.getKey());
+                lines.add(String.format(Locale.ROOT, "  %5.1f%% CPU  %8s  %s", samples == 0 ? 0.0 : 100.0 * suite.getValue() / samples,
+                        megabytes(allocated == null ? 0 : allocated), suite.getKey()));
+            }
+        }
+        return lines;
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (double) (1 << 20));
+    }
+
+    // The entries with the highest values, then by key
+    private static List<Map.Entry<String, Long>> top(Map<String, Long> counts, int top) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(counts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                int byValue = b.getValue().compareTo(a.getValue());
+                return byValue != 0 ? byValue : a.getKey().compareTo(b.getKey());
+            }
+        });
+        return entries.subList(0, Math.min(top, entries.size()));
+    }
+
+    //
+    // Reads recordings through the jdk.jfr.consumer API, found by name.
+    //
+    private final class Consumer {
+        private final Constructor<?> recordingFile;
+        private final Method hasMoreEvents;
+        private final Method readEvent;
+        private final Method close;
+        private final Method getEventType;
+        private final Method getName;
+        private final Method getStackTrace;
+        private final Method getFrames;
+        private final Method getMethod;
+        private final Method getType;
+        private final Method getMethodName;
+        private final Method getClassName;
+        private final Method hasField;
+        private final Method getValue;
+        private final Method getLong;
+        private final Method getDuration;
+        private final Method getJavaName;
+
+        Consumer() throws ReflectiveOperationException {
+            Class<?> file = Class.forName("jdk.jfr.consumer.RecordingFile");
+            Class<?> object = Class.forName("jdk.jfr.consumer.RecordedObject");
+            Class<?> event = Class.forName("jdk.jfr.consumer.RecordedEvent");
+            Class<?> method = Class.forName("jdk.jfr.consumer.RecordedMethod");
+            recordingFile = file.getConstructor(Path.class);
+            hasMoreEvents = file.getMethod("hasMoreEvents");
+            readEvent = file.getMethod("readEvent");
+            close = file.getMethod("close");
+            getEventType = event.getMethod("getEventType");
+            getName = Class.forName("jdk.jfr.EventType").getMethod("getName");
+            getStackTrace = event.getMethod("getStackTrace");
+            getFrames = Class.forName("jdk.jfr.consumer.RecordedStackTrace").getMethod("getFrames");
+            getMethod = Class.forName("jdk.jfr.consumer.RecordedFrame").getMethod("getMethod");
+            getType = method.getMethod("getType");
+            getMethodName = method.getMethod("getName");
+            getClassName = Class.forName("jdk.jfr.consumer.RecordedClass").getMethod("getName");
+            hasField = object.getMethod("hasField", String.class);
+            getValue = object.getMethod("getValue", String.class);
+            getLong = object.getMethod("getLong", String.class);
+            getDuration = event.getMethod("getDuration");
+            getJavaName = Class.forName("jdk.jfr.consumer.RecordedThread").getMethod("getJavaName");
+        }
+
+        void read(Path path) throws ReflectiveOperationException {
+            Object file = recordingFile.newInstance(path);
+            try {
+                while ((Boolean) hasMoreEvents.invoke(file)) {
+                    Object event = readEvent.invoke(file);
+                    String type = (String) getName.invoke(getEventType.invoke(event));
+                    if (type.equals("jdk.ExecutionSample")) {
+                        add(type, frames(event), thread(event, "sampledThread"), null, 1);
+                    } else if (type.equals("jdk.ObjectAllocationSample")) {
+                        add(type, frames(event), thread(event, "eventThread"), className(event, "objectClass"),
+                                (Long) getLong.invoke(event, "weight"));
+                    } else if (type.equals("jdk.ObjectAllocationInNewTLAB")) {
+                        add(type, frames(event), thread(event, "eventThread"), className(event, "objectClass"),
+                                (Long) getLong.invoke(event, "tlabSize"));
+                    } else if (type.equals("jdk.ObjectAllocationOutsideTLAB")) {
+                        add(type, frames(event), thread(event, "eventThread"), className(event, "objectClass"),
+                                (Long) getLong.invoke(event, "allocationSize"));
+                    } else if (type.equals("jdk.JavaMonitorEnter") || type.equals("jdk.ThreadPark")) {
+                        String lock = className(event, type.equals("jdk.ThreadPark") ? "parkedClass" : "monitorClass");
+                        add(type, frames(event), thread(event, "eventThread"), lock, nanos(event));
+                    }
+                }
+            } finally {
+                close.invoke(file);
+            }
+        }
+
+        // The class and method of each frame of the stack trace of event, innermost first
+        private List<String[]> frames(Object event) throws ReflectiveOperationException {
+            Object stackTrace = getStackTrace.invoke(event);
+            if (stackTrace == null) {
+                return Collections.emptyList();
+            }
+            List<String[]> frames = new ArrayList<String[]>();
+            for (Object frame : (List<?>) getFrames.invoke(stackTrace)) {
+                Object method = getMethod.invoke(frame);
+                if (method != null) {
+                    frames.add(new String[]{(String) getClassName.invoke(getType.invoke(method)),
+                            (String) getMethodName.invoke(method)});
+                }
+            }
+            return frames;
+        }
+
+        private String thread(Object event, String field) throws ReflectiveOperationException {
+            Object thread = (Boolean) hasField.invoke(event, field) ? getValue.invoke(event, field) : null;
+            return thread == null ? null : (String) getJavaName.invoke(thread);
+        }
+
+        private String className(Object event, String field) throws ReflectiveOperationException {
+            Object recordedClass = (Boolean) hasField.invoke(event, field) ? getValue.invoke(event, field) : null;
+            return recordedClass == null ? null : typeName((String) getClassName.invoke(recordedClass));
+        }
+
+        private long nanos(Object event) throws ReflectiveOperationException {
+            return ((Duration) getDuration.invoke(event)).toNanos();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package org.scalatest.tools.maven;
+
+import org.scalatest.DispatchReporter;
+import org.scalatest.Reporter;
+import org.scalatest.events.Event;
+import org.scalatest.events.RunAborted;
+import org.scalatest.events.RunCompleted;
+import org.scalatest.events.RunStarting;
+import org.scalatest.events.RunStopped;
+import org.scalatest.events.ScopePending;
+import org.scalatest.events.SuiteAborted;
+import org.scalatest.events.SuiteCompleted;
+import org.scalatest.events.Summary;
+import org.scalatest.events.TestCanceled;
+import org.scalatest.events.TestFailed;
+import org.scalatest.events.TestIgnored;
+import org.scalatest.events.TestPending;
+import org.scalatest.events.TestSucceeded;
+import org.scalatest.tools.ArgsParser;
+import org.scalatest.tools.ReporterConfigurations;
+import org.scalatest.tools.ReporterFactory;
+import org.scalatest.tools.SuiteResultHolder;
+import scala.Option;
+import scala.collection.immutable.List;
+import scala.collection.immutable.Nil$;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+/**
+ * Hands the events of an {@link EventJournal} to reporters, run as the main class of a forked
+ * process on the test classpath: <code>JournalReplay directory reporterArgs...</code>, where
+ * the reporter arguments are the ones Runner takes, such as <code>-f</code>, <code>-h</code>,
+ * <code>-u</code> and <code>-C</code>.
+ * <p>
+ * The files of a run with several forks each hold a Runner invocation of their own.  So that the
+ * reporters see one run, only the first run starting event is replayed, with the expected test
+ * count of all of them, and of the run ending events only the last of the most severe kind,
+ * with the counts of all of the replayed events.  The reporters are built by ScalaTest as Runner
+ * builds them, using parts of it that are not public API; a ScalaTest they do not link against
+ * ends the replay with {@link EventJournal#CANNOT_REPLAY}.
+ */
+public final class JournalReplay {
+    private final DispatchReporter reporter;
+    private final int testCount;
+    private boolean started;
+    private Event runEnd;
+    private boolean failed;
+    private int events;
+
+    // Counts for the summary of the run, in the order Summary takes them
+    private int succeeded, testsFailed, ignored, pending, canceled, suitesCompleted, suitesAborted, scopesPending;
+
+    private JournalReplay(DispatchReporter reporter, int testCount) {
+        this.reporter = reporter;
+        this.testCount = testCount;
+    }
+
+    public static void main(String[] args) {
+        System.exit(replay(new File(args[0]), Arrays.copyOfRange(args, 1, args.length)));
+    }
+
+    //
+    // Returns 0 when the journal recorded a run without failures,
+    // RECORDED_FAILURES when it recorded failed tests or aborted suites or
+    // runs, and CANNOT_REPLAY when there is nothing it could replay.
+    //
+    static int replay(File directory, String[] reporterArgs) {
+        File[] files = EventJournal.files(directory);
+        if (files.length == 0) {
+            System.err.println("No ScalaTest event journal in " + directory);
+            return EventJournal.CANNOT_REPLAY;
+        }
+        JournalReplay replay;
+        try {
+            int testCount = testCount(files);
+            replay = new JournalReplay(dispatchReporter(reporterArgs), testCount);
+        } catch (IOException e) {
+            System.err.println("Unable to read the ScalaTest event journal: " + e.getMessage());
+            return EventJournal.CANNOT_REPLAY;
+        } catch (LinkageError e) {
+            System.err.println("This version of ScalaTest cannot replay an event journal: " + e);
+            return EventJournal.CANNOT_REPLAY;
+        }
+        try {
+            for (File file : files) {
+                replay.replay(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to read the ScalaTest event journal: " + e.getMessage());
+            return EventJournal.CANNOT_REPLAY;
+        } finally {
+            replay.end();
+        }
+        if (replay.events == 0) {
+            System.err.println("The ScalaTest event journal in " + directory + " holds no events");
+            return EventJournal.CANNOT_REPLAY;
+        }
+        return replay.failed ? EventJournal.RECORDED_FAILURES : 0;
+    }
+
+    private static DispatchReporter dispatchReporter(String[] reporterArgs) {
+        List<String> args = scalaList(reporterArgs);
+        ReporterConfigurations configurations = ArgsParser.parseReporterArgsIntoConfigurations(args);
+        return new ReporterFactory().getDispatchReporter(configurations, Option.<Reporter>empty(), Option.<Reporter>empty(),
+                JournalReplay.class.getClassLoader(), Option.<SuiteResultHolder>empty(), false, 0L, 0L);
+    }
+
+    // Built with the methods of List that every Scala version has
+    @SuppressWarnings("unchecked")
+    private static List<String> scalaList(String[] elements) {
+        List<String> list = (List<String>) (List<?>) Nil$.MODULE$;
+        for (int i = elements.length - 1; i >= 0; i--) {
+            list = list.$colon$colon(elements[i]);
+        }
+        return list;
+    }
+
+    // The expected test counts of the runs, which start each file
+    private static int testCount(File[] files) throws IOException {
+        int count = 0;
+        for (File file : files) {
+            EventJournal.Input in = open(file);
+            if (in == null) {
+                continue;
+            }
+            try {
+                byte[] record = in.read();
+                Event first = record == null ? null : deserialize(record);
+                if (first instanceof RunStarting) {
+                    count += ((RunStarting) first).testCount();
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return count;
+    }
+
+    //
+    // The input of file, or null for one a fork stopped before writing
+    // anything to, whose header may be missing, cut off or garbled.
+    //
+    private static EventJournal.Input open(File file) throws IOException {
+        try {
+            return new EventJournal.Input(file);
+        } catch (EOFException e) {
+            return null;
+        } catch (ZipException e) {
+            return null;
+        }
+    }
+
+    private void replay(File file) throws IOException {
+        EventJournal.Input in = open(file);
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] record;
+            while ((record = in.read()) != null) {
+                replay(deserialize(record));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void replay(Event event) {
+        events++;
+        count(event);
+        if (event instanceof RunStarting) {
+            if (!started) {
+                started = true;
+                reporter.apply(withTestCount((RunStarting) event));
+            }
+        } else if (event instanceof RunCompleted || event instanceof RunStopped || event instanceof RunAborted) {
+            if (runEnd == null || severity(event) >= severity(runEnd)) {
+                runEnd = event;
+            }
+        } else {
+            reporter.apply(event);
+        }
+    }
+
+    private static int severity(Event runEnd) {
+        return runEnd instanceof RunAborted ? 2 : runEnd instanceof RunStopped ? 1 : 0;
+    }
+
+    private void count(Event event) {
+        if (event instanceof TestSucceeded) {
+            succeeded++;
+        } else if (event instanceof TestFailed) {
+            testsFailed++;
+            failed = true;
+        } else if (event instanceof TestIgnored) {
+            ignored++;
+        } else if (event instanceof TestPending) {
+            pending++;
+        } else if (event instanceof TestCanceled) {
+            canceled++;
+        } else if (event instanceof SuiteCompleted) {
+            suitesCompleted++;
+        } else if (event instanceof SuiteAborted) {
+            suitesAborted++;
+            failed = true;
+        } else if (event instanceof ScopePending) {
+            scopesPending++;
+        } else if (event instanceof RunAborted) {
+            failed = true;
+        }
+    }
+
+    private void end() {
+        if (runEnd != null) {
+            reporter.apply(withSummary(runEnd));
+        }
+        reporter.dispatchDisposeAndWaitUntilDone();
+    }
+
+    // The event with the test count of the whole run, or as it is if this ScalaTest builds events differently
+    private Event withTestCount(RunStarting e) {
+        try {
+            return new RunStarting(e.ordinal(), testCount, e.configMap(), e.formatter(), e.location(), e.payload(),
+                    e.threadName(), e.timeStamp());
+        } catch (LinkageError ignored) {
+            return e;
+        }
+    }
+
+    // The event with the summary of the whole run, or as it is if this ScalaTest builds events differently
+    private Event withSummary(Event event) {
+        try {
+            Option<Summary> summary = Option.apply(new Summary(succeeded, testsFailed, ignored, pending, canceled,
+                    suitesCompleted, suitesAborted, scopesPending));
+            if (event instanceof RunCompleted) {
+                RunCompleted e = (RunCompleted) event;
+                return new RunCompleted(e.ordinal(), e.duration(), summary, e.formatter(), e.location(), e.payload(),
+                        e.threadName(), e.timeStamp());
+            } else if (event instanceof RunStopped) {
+                RunStopped e = (RunStopped) event;
+                return new RunStopped(e.ordinal(), e.duration(), summary, e.formatter(), e.location(), e.payload(),
+                        e.threadName(), e.timeStamp());
+            } else {
+                RunAborted e = (RunAborted) event;
+                return new RunAborted(e.ordinal(), e.message(), e.throwable(), e.duration(), summary, e.formatter(),
+                        e.location(), e.payload(), e.threadName(), e.timeStamp());
+            }
+        } catch (LinkageError ignored) {
+            return event;
+        }
+    }
+
+    private static Event deserialize(byte[] record) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(record));
+        try {
+            return (Event) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("The journal was recorded with classes that are missing: " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+    }
+}
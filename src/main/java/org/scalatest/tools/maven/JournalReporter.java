@@ -0,0 +1,83 @@
+package org.scalatest.tools.maven;
+
+import org.scalatest.Reporter;
+import org.scalatest.events.Event;
+import org.scalatest.events.RunAborted;
+import org.scalatest.events.RunCompleted;
+import org.scalatest.events.RunStopped;
+import org.scalatest.events.SuiteAborted;
+import org.scalatest.events.SuiteCompleted;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * The reporter a forked Runner records its events to an {@link EventJournal} with, registered
+ * with <code>-C</code> and writing to the directory named by a system property.
+ * <p>
+ * Events are recorded as ScalaTest serializes them, so that the reporters they are replayed to
+ * see what they would have seen in the run.  An event that does not serialize, such as one
+ * whose payload or exception holds something that cannot be, is left out with a note on
+ * standard error.  A failure to write turns the reporter off rather than failing the run.
+ */
+public final class JournalReporter implements Reporter {
+    private EventJournal.Output out;
+
+    public JournalReporter() {
+        String directory = System.getProperty(EventJournal.DIRECTORY_PROPERTY);
+        if (directory == null) {
+            return;
+        }
+        String fork = System.getProperty(EventChannel.FORK_PROPERTY);
+        try {
+            out = new EventJournal.Output(new File(directory), fork == null ? -1 : Integer.parseInt(fork));
+        } catch (IOException e) {
+            System.err.println("Unable to record the ScalaTest event journal: " + e.getMessage());
+        }
+    }
+
+    public synchronized void apply(Event event) {
+        if (out == null) {
+            return;
+        }
+        byte[] record;
+        try {
+            record = serialize(event);
+        } catch (IOException e) {
+            System.err.println("Unable to record " + event.getClass().getSimpleName()
+                    + " in the ScalaTest event journal: " + e);
+            return;
+        }
+        try {
+            out.write(record);
+            if (event instanceof RunCompleted || event instanceof RunStopped || event instanceof RunAborted) {
+                out.close();
+                out = null;
+            } else if (event instanceof SuiteCompleted || event instanceof SuiteAborted) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to write the ScalaTest event journal: " + e.getMessage());
+            close();
+        }
+    }
+
+    private static byte[] serialize(Event event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(event);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void close() {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        } finally {
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package org.scalatest.tools.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.scalatest.tools.maven.EventChannel.Event;
+import org.scalatest.tools.maven.EventChannel.Kind;
+
+/**
+ * A single JUnit XML report of a whole run, written from the events of its forks as they
+ * arrive, for CI servers that are slow to read one file per suite.  The XML is streamed: only
+ * the suites that are running are held, each in a buffer that moves to a file of its own once
+ * it grows past {@link #SUITE_BUFFER_SIZE}, and a suite is written out as soon as it ends,
+ * as a <code>testsuite</code> whose counts are then known.  Once the report grows past its
+ * maximum size, it carries on in a new file after the suite that took it there, numbered
+ * from 2, as in <code>TEST-scalatest-2.xml</code>.
+ * <p>
+ * Suites of different forks, and of reruns, are kept apart by their fork and suite id.
+ * Suites without tests, and the one the Runner wraps discovered suites in, are left out,
+ * and suites still running when the report is closed, as when their fork was stopped, are
+ * written with an error.
+ */
+final class MergedJUnitXml implements EventChannel.Listener, Closeable {
+    static final int SUITE_BUFFER_SIZE = 256 * 1024;
+
+    // Characters XML 1.0 does not allow, which test messages may hold
+    private static final Pattern INVALID_XML = Pattern.compile("[^\\x09\\x0A\\x0D\\x20-\\uD7FF\\uE000-\\uFFFD\\x{10000}-\\x{10FFFF}]");
+
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+    private final File file;
+    private final long maxSize;
+    private final Map<String, Suite> running = new LinkedHashMap<String, Suite>();
+    private final List<File> files = new ArrayList<File>();
+    private String label = "";
+    private int spills;
+    private CountingOutputStream out;
+    private XMLStreamWriter writer;
+    private IOException failure;
+
+    //
+    // A report written to file, and further files next to it once it grows
+    // past maxSize bytes, or never when maxSize is 0.  Removes the files of
+    // an earlier report.
+    //
+    MergedJUnitXml(File file, long maxSize) throws IOException {
+        this.file = file;
+        this.maxSize = maxSize;
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        for (int part = 1; part == 1 || part(part).isFile(); part++) {
+            part(part).delete();
+        }
+        open();
+    }
+
+    // The file of the given part of the report, from 1
+    File part(int part) {
+        if (part == 1) {
+            return file;
+        }
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(file.getParentFile(), dot < 0 ? name + "-" + part : name.substring(0, dot) + "-" + part + name.substring(dot));
+    }
+
+    private void open() throws IOException {
+        File part = part(files.size() + 1);
+        out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(part), 64 * 1024));
+        files.add(part);
+        try {
+            writer = FACTORY.createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("testsuites");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // Has the suites that follow named as those of the given rerun
+    synchronized void rerun(int rerun) {
+        label = " (rerun " + rerun + ")";
+    }
+
+    public synchronized void event(Event event) {
+        if (failure != null || writer == null) {
+            return;
+        }
+        try {
+            if (event.kind.hasSuite && EventChannel.DISCOVERY_SUITE.equals(event.suiteClassName)) {
+                return;
+            } else if (event.kind == Kind.SUITE_STARTING) {
+                suite(event);
+            } else if (event.kind.hasTest && event.kind != Kind.TEST_STARTING) {
+                suite(event).test(event);
+            } else if (event.kind == Kind.SUITE_COMPLETED || event.kind == Kind.SUITE_ABORTED) {
+                Suite suite = running.remove(key(event));
+                if (suite == null) {
+                    suite = new Suite(event, label);
+                }
+                if (event.kind == Kind.SUITE_ABORTED) {
+                    suite.error("(suite aborted)", event.message);
+                }
+                write(suite, event.duration);
+            } else if (event.kind.endsRun()) {
+                end(event.fork, event.kind == Kind.RUN_ABORTED ? event.message : null);
+            }
+        } catch (IOException e) {
+            // Thrown by close, as the events come from the threads of the event channel
+            failure = e;
+        }
+    }
+
+    private Suite suite(Event event) throws IOException {
+        Suite suite = running.get(key(event));
+        if (suite == null) {
+            suite = new Suite(event, label);
+            running.put(key(event), suite);
+        }
+        return suite;
+    }
+
+    private static String key(Event event) {
+        return event.fork + "\u0000" + event.suiteId;
+    }
+
+    //
+    // Writes the suites of fork still running when it ended, with an error
+    // saying so, with the message of the run's abort if it had one.
+    //
+    private void end(int fork, String message) throws IOException {
+        for (Iterator<Suite> it = running.values().iterator(); it.hasNext(); ) {
+            Suite suite = it.next();
+            if (suite.fork == fork) {
+                it.remove();
+                suite.error("(did not complete)", message);
+                write(suite, -1);
+            }
+        }
+    }
+
+    //
+    // Writes suite as a testsuite with the testcases it has buffered, in a
+    // new file if the report is past its maximum size.
+    //
+    private void write(Suite suite, long duration) throws IOException {
+        try {
+            suite.writer.flush();
+            suite.writer.close();
+            if (suite.tests == 0) {
+                return;
+            }
+            if (maxSize > 0 && out.count >= maxSize) {
+                finish();
+                open();
+            }
+            writer.writeCharacters("\n  ");
+            writer.writeStartElement("testsuite");
+            writer.writeAttribute("name", suite.name);
+            writer.writeAttribute("tests", String.valueOf(suite.tests));
+            writer.writeAttribute("failures", String.valueOf(suite.failures));
+            writer.writeAttribute("errors", String.valueOf(suite.errors));
+            writer.writeAttribute("skipped", String.valueOf(suite.skipped));
+            writer.writeAttribute("time", seconds(duration >= 0 ? duration : System.currentTimeMillis() - suite.started));
+            writer.writeAttribute("timestamp", timestamp(suite.started));
+            // Closes the start tag, so that the testcases can follow as they are
+            writer.writeCharacters("");
+            writer.flush();
+            suite.buffer.writeTo(out);
+            writer.writeCharacters("\n  ");
+            writer.writeEndElement();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            suite.buffer.delete();
+        }
+    }
+
+    private void finish() throws IOException {
+        try {
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            out.close();
+        }
+    }
+
+    //
+    // Writes the suites still running, with an error, and ends the report.
+    // Throws what went wrong writing the report on the way, if anything.
+    //
+    public synchronized void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            for (Suite suite : new ArrayList<Suite>(running.values())) {
+                suite.error("(did not complete)", null);
+                write(suite, -1);
+            }
+            running.clear();
+        } finally {
+            finish();
+            writer = null;
+        }
+    }
+
+    // The files of the report, in order
+    synchronized List<File> files() {
+        return new ArrayList<File>(files);
+    }
+
+    static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+    }
+
+    private static String timestamp(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    static String xmlText(String text) {
+        return text == null ? "" : INVALID_XML.matcher(text).replaceAll("?");
+    }
+
+    // The first line of message, for the message attribute of a failure
+    private static String firstLine(String message) {
+        return message == null ? "" : xmlText(message.split("\n", 2)[0]);
+    }
+
+    /**
+     * A suite that is running, with the testcases of the tests that ended in it so far.
+     */
+    private final class Suite {
+        final int fork;
+        final String className;
+        final String name;
+        final long started = System.currentTimeMillis();
+        final SuiteBuffer buffer;
+        final XMLStreamWriter writer;
+        int tests;
+        int failures;
+        int errors;
+        int skipped;
+
+        Suite(Event event, String label) throws IOException {
+            this.fork = event.fork;
+            this.className = event.suiteClassName;
+            this.name = event.suiteClassName + label;
+            this.buffer = new SuiteBuffer(new File(file.getAbsoluteFile().getParentFile(),
+                    file.getName() + ".suite-" + (++spills) + ".tmp"));
+            try {
+                this.writer = FACTORY.createXMLStreamWriter(buffer, "UTF-8");
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+
+        void test(Event event) throws IOException {
+            try {
+                start(event.testName, event.duration);
+                switch (event.kind) {
+                    case TEST_FAILED:
+                        failures++;
+                        writer.writeStartElement("failure");
+                        writer.writeAttribute("message", firstLine(event.message));
+                        writer.writeCharacters(xmlText(event.message));
+                        writer.writeEndElement();
+                        break;
+                    case TEST_IGNORED:
+                    case TEST_PENDING:
+                    case TEST_CANCELED:
+                        skipped++;
+                        writer.writeEmptyElement("skipped");
+                        if (event.message != null) {
+                            writer.writeAttribute("message", firstLine(event.message));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                writer.writeEndElement();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+
+        void error(String testName, String message) throws IOException {
+            try {
+                errors++;
+                start(testName, 0);
+                writer.writeStartElement("error");
+                writer.writeAttribute("message", firstLine(message));
+                writer.writeCharacters(xmlText(message));
+                writer.writeEndElement();
+                writer.writeEndElement();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private void start(String testName, long duration) throws XMLStreamException {
+            tests++;
+            writer.writeCharacters("\n    ");
+            writer.writeStartElement("testcase");
+            writer.writeAttribute("name", xmlText(testName));
+            writer.writeAttribute("classname", className);
+            writer.writeAttribute("time", seconds(Math.max(0, duration)));
+        }
+    }
+
+    /**
+     * Holds the testcases of a suite in memory up to {@link #SUITE_BUFFER_SIZE} bytes, and
+     * then in a file.
+     */
+    static final class SuiteBuffer extends OutputStream {
+        private final File spill;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream(1024);
+        private OutputStream spilled;
+
+        SuiteBuffer(File spill) {
+            this.spill = spill;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (spilled == null && memory.size() + len > SUITE_BUFFER_SIZE) {
+                spilled = new BufferedOutputStream(new FileOutputStream(spill), 64 * 1024);
+                memory.writeTo(spilled);
+                memory = null;
+            }
+            if (spilled != null) {
+                spilled.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+        }
+
+        // True once the buffer has moved to its file
+        boolean isSpilled() {
+            return spilled != null;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            if (spilled == null) {
+                memory.writeTo(out);
+                return;
+            }
+            spilled.close();
+            InputStream in = new FileInputStream(spill);
+            try {
+                byte[] chunk = new byte[64 * 1024];
+                for (int read = in.read(chunk); read >= 0; read = in.read(chunk)) {
+                    out.write(chunk, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        void delete() throws IOException {
+            if (spilled != null) {
+                spilled.close();
+                spill.delete();
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
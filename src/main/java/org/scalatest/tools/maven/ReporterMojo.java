@@ -41,12 +41,35 @@ public class ReporterMojo extends AbstractScalaTestMojo implements MavenReport {
      */
     private String fileReporterOptions;
 
+    // Characters handed to the sink at a time, so that large output is never held whole
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // The file this execution has the file reporter write to, unique so that concurrent builds do not share it
+    private File outputFile;
+
     public void execute() throws MojoExecutionException, MojoFailureException {
         // no op, Maven doesn't even call this method but I have to implement it because it's on the interface.
     }
 
     public void generate(Sink sink, Locale locale) throws MavenReportException {
         try {
+            outputFile = File.createTempFile("scalatest-output", ".txt");
+        }
+        catch (IOException e) {
+            throw new MavenReportException("Unable to create the ScalaTest output file", e);
+        }
+        try {
+            generateReport(sink, locale);
+        }
+        finally {
+            outputFile.delete();
+            outputFile = null;
+        }
+    }
+
+    private void generateReport(Sink sink, Locale locale) throws MavenReportException {
+        try {
+            checkForkCounts();
             runScalaTest(configuration());
         }
         catch (MojoFailureException e) {
@@ -71,7 +94,7 @@ public class ReporterMojo extends AbstractScalaTestMojo implements MavenReport {
             sink.text(getLocalizedString(locale, "reporter.mojo.outputTitle"));
             sink.sectionTitle1_();
             sink.verbatim(false);
-            sink.text(getScalaTestOutputFromFile());
+            writeScalaTestOutputTo(sink);
             sink.verbatim_();
             sink.body_();
 
@@ -91,37 +114,61 @@ public class ReporterMojo extends AbstractScalaTestMojo implements MavenReport {
     }
 
     private List<String> fileReporterConfig() {
-        File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        File dir = outputFile.getParentFile();
         if (fileReporterOptions != null) {
-            return reporterArg("-f", fileReporterOptions + " tempScalaTestOutput.txt", fileRelativeTo(tmpDir));
+            return reporterArg("-f", fileReporterOptions + " " + outputFile.getName(), fileRelativeTo(dir));
         }
-        return reporterArg("-f", "tempScalaTestOutput.txt", fileRelativeTo(tmpDir));
+        return reporterArg("-f", outputFile.getName(), fileRelativeTo(dir));
     }
 
-    private String getScalaTestOutputFromFile() throws IOException {
-        StringWriter fileContents = new StringWriter(1024);
-        PrintWriter writer = new PrintWriter(fileContents, true);
-
+    //
+    // Copies the output to the sink CHUNK_SIZE characters at a time, with
+    // line breaks normalized to \n and a surrogate pair never split across
+    // two chunks.
+    //
+    private void writeScalaTestOutputTo(Sink sink) throws IOException {
         // ScalaTest's FileReporter uses default character encoding so that's what we'll use here, too.
-        File outputFile = new File(System.getProperty("java.io.tmpdir"), "tempScalaTestOutput.txt");
-        BufferedReader reader = new BufferedReader(new FileReader(outputFile));
-
+        Reader reader = new BufferedReader(new FileReader(outputFile), CHUNK_SIZE);
         try {
-            String line = null;
-            while ((line = reader.readLine()) != null) {
-                writer.println(line);
-            }
-            return fileContents.toString();
+            writeChunked(reader, sink, CHUNK_SIZE);
         }
         finally {
             try {
                 reader.close();
-                outputFile.delete();
             }
             catch (IOException ignored) {}
         }
     }
 
+    static void writeChunked(Reader reader, Sink sink, int chunkSize) throws IOException {
+        char[] buffer = new char[chunkSize];
+        StringBuilder chunk = new StringBuilder(chunkSize + 1);
+        boolean afterCarriageReturn = false;
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (c == '\r') {
+                    chunk.append('\n');
+                } else if (c != '\n' || !afterCarriageReturn) {
+                    chunk.append(c);
+                }
+                afterCarriageReturn = c == '\r';
+            }
+            int length = chunk.length();
+            if (length > 0 && Character.isHighSurrogate(chunk.charAt(length - 1))) {
+                length--;
+            }
+            if (length > 0) {
+                sink.text(chunk.substring(0, length));
+                chunk.delete(0, length);
+            }
+        }
+        if (chunk.length() > 0) {
+            sink.text(chunk.toString());
+        }
+    }
+
     public String getOutputName() {
         return "scalatest-output";
     }
@@ -0,0 +1,310 @@
+package org.scalatest.tools.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.scalatest.tools.maven.EventChannel.Event;
+import org.scalatest.tools.maven.EventChannel.Kind;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Reruns of the tests that failed and the suites that aborted in a forked run: the Runner
+ * arguments that select only those, and the merging of the reports of a rerun into the ones
+ * of the run.
+ * <p>
+ * A rerun writes each file report next to the original, which it is then appended to, and its
+ * JUnit XML reports to a directory next to the original, from which they are merged the way
+ * Maven Surefire reports reruns: a test that passes on a rerun has its failure kept as a
+ * <code>flakyFailure</code> or <code>flakyError</code> and no longer counts as failed, and one
+ * that fails again gets a <code>rerunFailure</code> or <code>rerunError</code>.  HTML and
+ * memory file reports are left as the run wrote them.
+ */
+final class Reruns {
+    static final String SUFFIX = ".rerun-";
+
+    // Runner arguments that select suites and tests, each followed by a value
+    private static final Set<String> SELECTION_FLAGS = new HashSet<String>(Arrays.asList(
+            "-s", "-i", "-t", "-z", "-w", "-m", "-j", "-b", "-A", "-q"));
+
+    // Reporters and reports a rerun leaves out, each followed by a value
+    private static final Set<String> DROPPED_FLAGS = new HashSet<String>(Arrays.asList("-M", "-h", "-Y"));
+
+    private Reruns() {
+    }
+
+    //
+    // The -s and -t arguments that run the tests of failures again, and the
+    // whole of the suites that aborted, or null when a run aborted or an
+    // event names no suite, so that there is no telling what to rerun.
+    //
+    static List<String> suiteArgs(List<Event> failures) {
+        Map<String, Set<String>> tests = new LinkedHashMap<String, Set<String>>();
+        for (Event failure : failures) {
+            if (failure.kind == Kind.RUN_ABORTED || failure.suiteClassName == null) {
+                return null;
+            }
+            Set<String> names = tests.get(failure.suiteClassName);
+            if (failure.kind == Kind.SUITE_ABORTED || failure.testName == null) {
+                // The whole suite, whatever failed in it before it aborted
+                tests.put(failure.suiteClassName, null);
+            } else if (names != null || !tests.containsKey(failure.suiteClassName)) {
+                if (names == null) {
+                    names = new LinkedHashSet<String>();
+                    tests.put(failure.suiteClassName, names);
+                }
+                names.add(failure.testName);
+            }
+        }
+        List<String> args = new ArrayList<String>();
+        for (Map.Entry<String, Set<String>> suite : tests.entrySet()) {
+            args.add("-s");
+            args.add(suite.getKey());
+            if (suite.getValue() != null) {
+                for (String test : suite.getValue()) {
+                    args.add("-t");
+                    args.add(test);
+                }
+            }
+        }
+        return args;
+    }
+
+    //
+    // The arguments of a run with its suite selection replaced by suiteArgs,
+    // the file and JUnit XML reports of the given rerun written next to the
+    // originals, and without the reports a rerun leaves out.  Creates the
+    // directories for the JUnit XML reports.
+    //
+    static List<String> rerunArgs(String[] args, List<String> suiteArgs, int rerun) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            String flag = args[i].length() < 2 ? args[i] : args[i].substring(0, 2);
+            boolean hasValue = i + 1 < args.length;
+            if (hasValue && (SELECTION_FLAGS.contains(args[i]) || DROPPED_FLAGS.contains(args[i]))) {
+                i++;
+            } else if (hasValue && flag.equals("-f")) {
+                result.add(args[i]);
+                result.add(args[++i] + SUFFIX + rerun);
+            } else if (hasValue && flag.equals("-u")) {
+                // The JUnit XML reporter does not create its directory
+                File directory = new File(args[i + 1] + SUFFIX + rerun);
+                directory.mkdirs();
+                result.add(args[i++]);
+                result.add(directory.getPath());
+            } else {
+                result.add(args[i]);
+            }
+        }
+        result.addAll(suiteArgs);
+        return result;
+    }
+
+    //
+    // Merges the file and JUnit XML reports the given rerun of a run with
+    // args wrote into the reports of the run.  The suites of wholeSuites
+    // were rerun as a whole, and their JUnit XML reports are replaced when
+    // they passed.
+    //
+    static void mergeReports(String[] args, int rerun, Set<String> wholeSuites) throws IOException {
+        for (int i = 0; i + 1 < args.length; i++) {
+            String flag = args[i].length() < 2 ? args[i] : args[i].substring(0, 2);
+            if (flag.equals("-f")) {
+                File target = new File(args[++i]);
+                append(target, new File(target.getPath() + SUFFIX + rerun));
+            } else if (flag.equals("-u")) {
+                File directory = new File(args[++i]);
+                mergeJUnitXml(directory, new File(directory.getPath() + SUFFIX + rerun), wholeSuites);
+            }
+        }
+    }
+
+    private static void append(File target, File part) throws IOException {
+        if (!part.isFile()) {
+            return;
+        }
+        OutputStream out = new FileOutputStream(target, true);
+        try {
+            InputStream in = new FileInputStream(part);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            out.close();
+        }
+        part.delete();
+    }
+
+    static void mergeJUnitXml(File directory, File rerunDirectory, Set<String> wholeSuites) throws IOException {
+        File[] files = rerunDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File rerun : files) {
+            File original = new File(directory, rerun.getName());
+            if (rerun.getName().endsWith(".xml") && original.isFile()) {
+                Document report = parse(original);
+                Document rerunReport = parse(rerun);
+                Element suite = report.getDocumentElement();
+                Element rerunSuite = rerunReport.getDocumentElement();
+                if (wholeSuites.contains(suite.getAttribute("name")) && count(rerunSuite, "failures") == 0
+                        && count(rerunSuite, "errors") == 0) {
+                    write(rerunReport, original);
+                } else {
+                    merge(suite, rerunSuite);
+                    write(report, original);
+                }
+            } else if (!original.exists()) {
+                rerun.renameTo(original);
+            }
+            rerun.delete();
+        }
+        rerunDirectory.delete();
+    }
+
+    //
+    // Marks the failures of the test cases of suite that passed in the rerun
+    // of rerunSuite as flaky, and adds the failures of the ones that did not
+    // as rerun failures.
+    //
+    private static void merge(Element suite, Element rerunSuite) {
+        NodeList rerunCases = rerunSuite.getElementsByTagName("testcase");
+        for (int i = 0; i < rerunCases.getLength(); i++) {
+            Element rerunCase = (Element) rerunCases.item(i);
+            Element testCase = testCase(suite, rerunCase.getAttribute("classname"), rerunCase.getAttribute("name"));
+            if (testCase == null) {
+                continue;
+            }
+            List<Element> rerunFailures = children(rerunCase, "failure", "error");
+            if (rerunFailures.isEmpty()) {
+                for (Element failure : children(testCase, "failure", "error")) {
+                    String kind = failure.getTagName();
+                    suite.setAttribute(kind + "s", String.valueOf(Math.max(0, count(suite, kind + "s") - 1)));
+                    suite.getOwnerDocument().renameNode(failure, null, kind.equals("failure") ? "flakyFailure" : "flakyError");
+                }
+            } else {
+                for (Element failure : rerunFailures) {
+                    Element copy = (Element) suite.getOwnerDocument().importNode(failure, true);
+                    suite.getOwnerDocument().renameNode(copy, null,
+                            failure.getTagName().equals("failure") ? "rerunFailure" : "rerunError");
+                    testCase.appendChild(copy);
+                }
+            }
+        }
+    }
+
+    private static Element testCase(Element suite, String className, String name) {
+        NodeList cases = suite.getElementsByTagName("testcase");
+        for (int i = 0; i < cases.getLength(); i++) {
+            Element testCase = (Element) cases.item(i);
+            if (testCase.getAttribute("classname").equals(className) && testCase.getAttribute("name").equals(name)) {
+                return testCase;
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> children(Element element, String... names) {
+        List<Element> children = new ArrayList<Element>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && Arrays.asList(names).contains(((Element) child).getTagName())) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+
+    private static int count(Element suite, String attribute) {
+        try {
+            return Integer.parseInt(suite.getAttribute(attribute));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Document parse(File file) throws IOException {
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        } catch (SAXException e) {
+            throw new IOException("Unable to read " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void write(Document document, File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.transform(new DOMSource(document), new StreamResult(out));
+        } catch (TransformerException e) {
+            throw new IOException("Unable to write " + file + ": " + e.getMessage(), e);
+        } finally {
+            out.close();
+        }
+    }
+
+    //
+    // The tests of failures that passed in a rerun with the given events, and
+    // the suites that aborted and completed in it without failures, as lines
+    // for the build log like "org.example.HelloSpec: says hello".
+    //
+    static List<String> passed(List<Event> failures, RunEvents rerun) {
+        Set<String> succeeded = new HashSet<String>();
+        for (Event test : rerun.tests()) {
+            if (test.kind == Kind.TEST_SUCCEEDED) {
+                succeeded.add(test.suiteClassName + ": " + test.testName);
+            }
+        }
+        Set<String> failedSuites = new HashSet<String>();
+        for (Event failure : rerun.failures()) {
+            failedSuites.add(failure.suiteClassName);
+        }
+        Set<String> completed = new HashSet<String>();
+        for (Event suite : rerun.suites()) {
+            if (suite.kind == Kind.SUITE_COMPLETED && !failedSuites.contains(suite.suiteClassName)) {
+                completed.add(suite.suiteClassName);
+            }
+        }
+        Set<String> passed = new LinkedHashSet<String>();
+        for (Event failure : failures) {
+            if (failure.kind == Kind.TEST_FAILED && succeeded.contains(failure.suiteClassName + ": " + failure.testName)) {
+                passed.add(failure.suiteClassName + ": " + failure.testName);
+            } else if (failure.kind == Kind.SUITE_ABORTED && completed.contains(failure.suiteClassName)) {
+                passed.add(failure.suiteClassName);
+            }
+        }
+        return new ArrayList<String>(passed);
+    }
+}
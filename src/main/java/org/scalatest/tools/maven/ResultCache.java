@@ -0,0 +1,152 @@
+package org.scalatest.tools.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.scalatest.tools.maven.MojoUtils.checksum;
+import static org.scalatest.tools.maven.MojoUtils.hash;
+import static org.scalatest.tools.maven.MojoUtils.readBytes;
+
+/**
+ * Remembers the reports of successful test runs by a fingerprint of their inputs, so that
+ * a run with the same inputs can be skipped and its reports restored instead.
+ * <p>
+ * Each entry is a directory named after the fingerprint holding the report files the run
+ * wrote.  Entries are written under a temporary name and renamed into place, so a reader
+ * never sees half an entry, and entries unused for {@link #MAX_AGE_MILLIS} are removed.
+ */
+final class ResultCache {
+    static final long MAX_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    private final File directory;
+    private final String fingerprint;
+
+    ResultCache(File directory, String fingerprint) {
+        this.directory = directory;
+        this.fingerprint = fingerprint;
+    }
+
+    File entry() {
+        return new File(directory, fingerprint);
+    }
+
+    //
+    // Adds what identifies the contents of the classpath elements to parts:
+    // a checksum of each jar and a hash of every file in each directory.
+    //
+    static void addClasspath(List<String> parts, List<String> classpath) throws IOException {
+        for (String element : classpath) {
+            File file = new File(element);
+            if (file.isDirectory()) {
+                parts.add("dir:" + element);
+                addDirectory(parts, file, "");
+            } else if (file.isFile()) {
+                parts.add("jar:" + element + "@" + checksum(file));
+            } else {
+                parts.add("missing:" + element);
+            }
+        }
+    }
+
+    private static void addDirectory(List<String> parts, File dir, String prefix) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addDirectory(parts, file, prefix + file.getName() + "/");
+            } else {
+                parts.add(prefix + file.getName() + "@" + hash(readBytes(file)));
+            }
+        }
+    }
+
+    //
+    // Copies the reports of the cached run into reportsDirectory.  Returns
+    // false when there is no entry for the fingerprint.
+    //
+    boolean restore(File reportsDirectory) throws IOException {
+        File entry = entry();
+        if (!entry.isDirectory()) {
+            return false;
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        copy(entry, reportsDirectory, 0L);
+        return true;
+    }
+
+    //
+    // Records the files in reportsDirectory written since the given time as
+    // the reports of a successful run.
+    //
+    void store(File reportsDirectory, long since) throws IOException {
+        File entry = entry();
+        if (entry.isDirectory()) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        File temp = Files.createTempDirectory(directory.toPath(), fingerprint + ".tmp").toFile();
+        try {
+            if (reportsDirectory.isDirectory()) {
+                copy(reportsDirectory, temp, since);
+            }
+            if (!temp.renameTo(entry) && !entry.isDirectory()) {
+                throw new IOException("Cannot write " + entry);
+            }
+        } finally {
+            if (temp.exists()) {
+                delete(temp);
+            }
+        }
+        removeStaleEntries();
+    }
+
+    private void removeStaleEntries() {
+        File[] entries = directory.listFiles();
+        if (entries == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - MAX_AGE_MILLIS;
+        for (File entry : entries) {
+            if (entry.isDirectory() && entry.lastModified() < oldest) {
+                delete(entry);
+            }
+        }
+    }
+
+    private static void copy(File from, File to, long since) throws IOException {
+        File[] files = from.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            File target = new File(to, file.getName());
+            if (file.isDirectory()) {
+                copy(file, target, since);
+            } else if (file.lastModified() >= since) {
+                if (!to.isDirectory() && !to.mkdirs()) {
+                    throw new IOException("Cannot create directory " + to);
+                }
+                Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
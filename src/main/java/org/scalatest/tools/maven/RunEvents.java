@@ -0,0 +1,101 @@
+package org.scalatest.tools.maven;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.scalatest.tools.maven.EventChannel.Event;
+import org.scalatest.tools.maven.EventChannel.Kind;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * What the events of the forks of a run add up to: counts of events by kind, the suites and
+ * tests that ended, with their durations, and the ones that failed.  Events come from one
+ * thread per fork connection.
+ */
+final class RunEvents implements EventChannel.Listener {
+    private final Map<Kind, Integer> counts = new LinkedHashMap<Kind, Integer>();
+    private final List<Event> suites = new ArrayList<Event>();
+    private final List<Event> tests = new ArrayList<Event>();
+    private final List<Event> failures = new ArrayList<Event>();
+    private final List<EventChannel.Listener> listeners = new ArrayList<EventChannel.Listener>();
+
+    // Has listener receive each event too, after it is counted
+    synchronized void addListener(EventChannel.Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void event(Event event) {
+        List<EventChannel.Listener> notified;
+        synchronized (this) {
+            Integer count = counts.get(event.kind);
+            counts.put(event.kind, count == null ? 1 : count + 1);
+            if (event.kind == Kind.SUITE_COMPLETED || event.kind == Kind.SUITE_ABORTED) {
+                suites.add(event);
+            } else if (event.kind.hasTest && event.kind != Kind.TEST_STARTING) {
+                tests.add(event);
+            }
+            if (event.kind == Kind.TEST_FAILED || event.kind == Kind.SUITE_ABORTED || event.kind == Kind.RUN_ABORTED) {
+                failures.add(event);
+            }
+            notified = new ArrayList<EventChannel.Listener>(listeners);
+        }
+        for (EventChannel.Listener listener : notified) {
+            listener.event(event);
+        }
+    }
+
+    synchronized int count(Kind kind) {
+        Integer count = counts.get(kind);
+        return count == null ? 0 : count;
+    }
+
+    // The suites that completed or aborted, in the order they ended
+    synchronized List<Event> suites() {
+        return unmodifiableList(new ArrayList<Event>(suites));
+    }
+
+    // The tests that ended in any way, ignored ones included, in the order they ended
+    synchronized List<Event> tests() {
+        return unmodifiableList(new ArrayList<Event>(tests));
+    }
+
+    // Durations of the suites that ended, in milliseconds by class name, in the order they ended
+    synchronized Map<String, Long> suiteDurations() {
+        Map<String, Long> durations = new LinkedHashMap<String, Long>();
+        for (Event suite : suites) {
+            durations.put(suite.suiteClassName, suite.duration);
+        }
+        return unmodifiableMap(durations);
+    }
+
+    // Failed tests, aborted suites and aborted runs, in the order they happened
+    synchronized List<Event> failures() {
+        return unmodifiableList(new ArrayList<Event>(failures));
+    }
+
+    //
+    // One line per failure for the build log, e.g.
+    // "org.example.HelloSpec: says hello: 1 did not equal 2".
+    //
+    static String describe(Event failure) {
+        StringBuilder line = new StringBuilder();
+        if (failure.kind == Kind.RUN_ABORTED) {
+            line.append("Run aborted");
+        } else {
+            line.append(failure.suiteClassName);
+            if (failure.testName != null) {
+                line.append(": ").append(failure.testName);
+            } else {
+                line.append(" aborted");
+            }
+        }
+        if (failure.message != null && !failure.message.isEmpty()) {
+            line.append(": ").append(failure.message.split("\n", 2)[0]);
+        }
+        return line.toString();
+    }
+}
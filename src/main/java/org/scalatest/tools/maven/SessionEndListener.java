@@ -0,0 +1,105 @@
+package org.scalatest.tools.maven;
+
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+
+/**
+ * Ends the {@link ClassLoaderCache} session of a build once Maven ends the build, whichever
+ * module ran last and however many threads ran them.  A plugin only takes part in the
+ * lifecycle of the build as a build extension, so the listener Maven sends its events to is
+ * wrapped instead, with every event still passed on to it.
+ * <p>
+ * The modules of a build run with <code>-T</code> each get a copy of the session, all with
+ * the same request, so the request is what stands for the session in the cache.
+ */
+final class SessionEndListener implements ExecutionListener {
+    private final MavenExecutionRequest request;
+    private final ExecutionListener listener;
+
+    private SessionEndListener(MavenExecutionRequest request, ExecutionListener listener) {
+        this.request = request;
+        this.listener = listener != null ? listener : new AbstractExecutionListener();
+    }
+
+    // Has the cache session of the request end with the build, once per request
+    static synchronized void register(MavenExecutionRequest request) {
+        if (!(request.getExecutionListener() instanceof SessionEndListener)) {
+            request.setExecutionListener(new SessionEndListener(request, request.getExecutionListener()));
+        }
+    }
+
+    public void sessionEnded(ExecutionEvent event) {
+        try {
+            listener.sessionEnded(event);
+        }
+        finally {
+            ClassLoaderCache.endSession(request);
+        }
+    }
+
+    public void projectDiscoveryStarted(ExecutionEvent event) {
+        listener.projectDiscoveryStarted(event);
+    }
+
+    public void sessionStarted(ExecutionEvent event) {
+        listener.sessionStarted(event);
+    }
+
+    public void projectSkipped(ExecutionEvent event) {
+        listener.projectSkipped(event);
+    }
+
+    public void projectStarted(ExecutionEvent event) {
+        listener.projectStarted(event);
+    }
+
+    public void projectSucceeded(ExecutionEvent event) {
+        listener.projectSucceeded(event);
+    }
+
+    public void projectFailed(ExecutionEvent event) {
+        listener.projectFailed(event);
+    }
+
+    public void mojoSkipped(ExecutionEvent event) {
+        listener.mojoSkipped(event);
+    }
+
+    public void mojoStarted(ExecutionEvent event) {
+        listener.mojoStarted(event);
+    }
+
+    public void mojoSucceeded(ExecutionEvent event) {
+        listener.mojoSucceeded(event);
+    }
+
+    public void mojoFailed(ExecutionEvent event) {
+        listener.mojoFailed(event);
+    }
+
+    public void forkStarted(ExecutionEvent event) {
+        listener.forkStarted(event);
+    }
+
+    public void forkSucceeded(ExecutionEvent event) {
+        listener.forkSucceeded(event);
+    }
+
+    public void forkFailed(ExecutionEvent event) {
+        listener.forkFailed(event);
+    }
+
+    public void forkedProjectStarted(ExecutionEvent event) {
+        listener.forkedProjectStarted(event);
+    }
+
+    public void forkedProjectSucceeded(ExecutionEvent event) {
+        listener.forkedProjectSucceeded(event);
+    }
+
+    public void forkedProjectFailed(ExecutionEvent event) {
+        listener.forkedProjectFailed(event);
+    }
+}
@@ -0,0 +1,383 @@
+package org.scalatest.tools.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+
+import static java.util.Collections.unmodifiableList;
+import static org.scalatest.tools.maven.MojoUtils.hash;
+import static org.scalatest.tools.maven.MojoUtils.readBytes;
+
+/**
+ * Finds the suites ScalaTest's Runner would discover on a runpath, by reading class
+ * files rather than loading and reflecting over every class.  Superclass and interface
+ * chains are followed through the whole test classpath, so suites extending styles
+ * from the ScalaTest jar are recognized.
+ * <p>
+ * Given an index file, the facts read from the class files in runpath directories are
+ * kept there between runs.  A class file is only read again when its size or modification
+ * time changed, and only parsed again when its contents did.
+ */
+final class SuiteDiscovery implements Closeable {
+    static final String SUITE = "org.scalatest.Suite";
+    static final String WRAP_WITH = "org.scalatest.WrapWith";
+    static final String DO_NOT_DISCOVER = "org.scalatest.DoNotDiscover";
+
+    private final List<File> classpath;
+    private final Map<File, JarFile> jars = new HashMap<File, JarFile>();
+    private final Map<String, ClassFileInfo> infos = new HashMap<String, ClassFileInfo>();
+    private final Map<String, Boolean> suites = new HashMap<String, Boolean>();
+
+    private static final int INDEX_VERSION = 1;
+
+    private final File indexFile;
+    private Map<String, IndexEntry> index;
+    private final Set<String> indexed = new HashSet<String>();
+    private boolean indexChanged;
+    private int classFilesRead;
+
+    SuiteDiscovery(List<File> classpath) {
+        this(classpath, null);
+    }
+
+    SuiteDiscovery(List<File> classpath, File indexFile) {
+        this.classpath = classpath;
+        this.indexFile = indexFile;
+    }
+
+    //
+    // Returns the sorted names of the discoverable suites found in the
+    // given runpath roots, optionally filtered by a Runner -q style suffix
+    // regex.
+    //
+    List<String> discover(List<File> roots, String suffixes) throws IOException {
+        Pattern suffixPattern = suffixes == null ? null : Pattern.compile(".*(" + suffixes + ")$");
+        List<String> result = new ArrayList<String>();
+        for (String name : classNames(roots)) {
+            if ((suffixPattern == null || suffixPattern.matcher(name).matches()) && isDiscoverable(name)) {
+                result.add(name);
+            }
+        }
+        Collections.sort(result);
+        if (index != null && (indexChanged || index.size() != indexed.size())) {
+            index.keySet().retainAll(indexed);
+            writeIndex();
+        }
+        return unmodifiableList(result);
+    }
+
+    // Number of class files that had to be read by the last discovery
+    int classFilesRead() {
+        return classFilesRead;
+    }
+
+    //
+    // Whether the suite is a member of one of the given packages, or, for
+    // wildcard packages, of one of their subpackages, the way the Runner's
+    // -m and -w select suites.
+    //
+    static boolean inPackages(String suite, List<String> membersOnly, List<String> wildcard) {
+        int dot = suite.lastIndexOf('.');
+        String pkg = dot < 0 ? "" : suite.substring(0, dot);
+        if (membersOnly.contains(pkg)) {
+            return true;
+        }
+        for (String prefix : wildcard) {
+            if (pkg.equals(prefix) || pkg.startsWith(prefix + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isDiscoverable(String name) throws IOException {
+        if (name.contains("$")) {
+            return false;
+        }
+        ClassFileInfo info = info(name);
+        if (info == null || !info.isPublic() || !info.isConcrete() || info.annotations.contains(DO_NOT_DISCOVER)) {
+            return false;
+        }
+        if (info.annotations.contains(WRAP_WITH)) {
+            return true;
+        }
+        return info.publicNoArgConstructor && isSuite(name);
+    }
+
+    boolean isSuite(String name) throws IOException {
+        if (name == null) {
+            return false;
+        }
+        if (SUITE.equals(name)) {
+            return true;
+        }
+        Boolean known = suites.get(name);
+        if (known != null) {
+            return known;
+        }
+        suites.put(name, Boolean.FALSE); // guards against cycles in broken class files
+        boolean result = false;
+        ClassFileInfo info = info(name);
+        if (info != null) {
+            result = isSuite(info.superName);
+            for (int i = 0; !result && i < info.interfaces.size(); i++) {
+                result = isSuite(info.interfaces.get(i));
+            }
+        }
+        suites.put(name, result);
+        return result;
+    }
+
+    // Returns null when the class is not on the classpath
+    ClassFileInfo info(String name) throws IOException {
+        if (infos.containsKey(name)) {
+            return infos.get(name);
+        }
+        ClassFileInfo info = null;
+        String path = name.replace('.', '/') + ".class";
+        for (int i = 0; info == null && i < classpath.size(); i++) {
+            InputStream in = open(classpath.get(i), path);
+            if (in != null) {
+                try {
+                    info = ClassFileInfo.read(in);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        infos.put(name, info);
+        return info;
+    }
+
+    private InputStream open(File element, String path) throws IOException {
+        if (element.isDirectory()) {
+            File file = new File(element, path);
+            return file.isFile() ? new FileInputStream(file) : null;
+        }
+        JarFile jar = jar(element);
+        if (jar == null) {
+            return null;
+        }
+        JarEntry entry = jar.getJarEntry(path);
+        return entry == null ? null : jar.getInputStream(entry);
+    }
+
+    private JarFile jar(File element) throws IOException {
+        if (!element.isFile()) {
+            return null;
+        }
+        JarFile jar = jars.get(element);
+        if (jar == null) {
+            jar = new JarFile(element);
+            jars.put(element, jar);
+        }
+        return jar;
+    }
+
+    private List<String> classNames(List<File> roots) throws IOException {
+        List<String> names = new ArrayList<String>();
+        for (File root : roots) {
+            if (root.isDirectory()) {
+                if (indexFile != null && index == null) {
+                    index = readIndex();
+                }
+                collectClassNames(root, "", names);
+            } else {
+                JarFile jar = jar(root);
+                if (jar != null) {
+                    Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        addClassName(entries.nextElement().getName(), names);
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    private void collectClassNames(File dir, String prefix, List<String> names) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectClassNames(file, prefix + file.getName() + "/", names);
+            } else if (addClassName(prefix + file.getName(), names) && index != null) {
+                String name = names.get(names.size() - 1);
+                if (!infos.containsKey(name)) {
+                    infos.put(name, indexedInfo(file));
+                }
+            }
+        }
+    }
+
+    // The facts about a class file from the index, reading the file only if it changed
+    private ClassFileInfo indexedInfo(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        indexed.add(key);
+        long size = file.length();
+        long modified = file.lastModified();
+        IndexEntry entry = index.get(key);
+        if (entry != null && entry.size == size && entry.modified == modified) {
+            return entry.info;
+        }
+
+        byte[] bytes = readBytes(file);
+        classFilesRead++;
+        String hash = hash(bytes);
+        ClassFileInfo info;
+        if (entry != null && entry.hash.equals(hash)) {
+            info = entry.info;
+        } else {
+            try {
+                info = ClassFileInfo.read(new ByteArrayInputStream(bytes));
+            } catch (IOException e) {
+                info = null; // not a class file the Runner could load either
+            }
+        }
+        index.put(key, new IndexEntry(size, modified, hash, info));
+        indexChanged = true;
+        return info;
+    }
+
+    private Map<String, IndexEntry> readIndex() {
+        Map<String, IndexEntry> result = new HashMap<String, IndexEntry>();
+        if (!indexFile.isFile()) {
+            return result;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != INDEX_VERSION) {
+                    return result;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String key = in.readUTF();
+                    long size = in.readLong();
+                    long modified = in.readLong();
+                    String hash = in.readUTF();
+                    ClassFileInfo info = null;
+                    if (in.readBoolean()) {
+                        String name = in.readUTF();
+                        String superName = in.readUTF();
+                        int access = in.readInt();
+                        boolean publicNoArgConstructor = in.readBoolean();
+                        List<String> interfaces = readStrings(in, new ArrayList<String>());
+                        Set<String> annotations = readStrings(in, new HashSet<String>());
+                        info = ClassFileInfo.restore(name, superName.isEmpty() ? null : superName, interfaces,
+                                access, publicNoArgConstructor, annotations);
+                    }
+                    result.put(key, new IndexEntry(size, modified, hash, info));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // A damaged index is rebuilt from the class files
+            result.clear();
+        }
+        return result;
+    }
+
+    private void writeIndex() throws IOException {
+        File parent = indexFile.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File temp = File.createTempFile(indexFile.getName(), ".tmp", parent);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(index.size());
+            for (Map.Entry<String, IndexEntry> e : index.entrySet()) {
+                IndexEntry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeUTF(entry.hash);
+                out.writeBoolean(entry.info != null);
+                if (entry.info != null) {
+                    out.writeUTF(entry.info.name);
+                    out.writeUTF(entry.info.superName == null ? "" : entry.info.superName);
+                    out.writeInt(entry.info.access);
+                    out.writeBoolean(entry.info.publicNoArgConstructor);
+                    writeStrings(out, entry.info.interfaces);
+                    writeStrings(out, entry.info.annotations);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        indexFile.delete();
+        if (!temp.renameTo(indexFile)) {
+            temp.delete();
+            throw new IOException("Cannot write " + indexFile);
+        }
+    }
+
+    private static <C extends Collection<String>> C readStrings(DataInputStream in, C strings) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static boolean addClassName(String path, List<String> names) {
+        if (path.endsWith(".class") && !path.endsWith("module-info.class")) {
+            names.add(path.substring(0, path.length() - ".class".length()).replace('/', '.'));
+            return true;
+        }
+        return false;
+    }
+
+    private static final class IndexEntry {
+        final long size;
+        final long modified;
+        final String hash;
+        final ClassFileInfo info;
+
+        IndexEntry(long size, long modified, String hash, ClassFileInfo info) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.info = info;
+        }
+    }
+
+    public void close() throws IOException {
+        for (JarFile jar : jars.values()) {
+            jar.close();
+        }
+        jars.clear();
+    }
+}
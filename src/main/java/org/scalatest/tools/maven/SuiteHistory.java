@@ -0,0 +1,156 @@
+package org.scalatest.tools.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * What past runs of a module tell about its suites: how long each took the last time it ran,
+ * and in which run it last failed.  Suites are ordered from it so that the ones that failed
+ * recently run first, most recent first, and the others longest first, so that a long suite
+ * does not start last and stretch the end of a parallel run.  Suites without a recorded
+ * duration count as the median of the known ones, as for {@link SuiteShards}.
+ * <p>
+ * The history is a properties file holding the number of recorded runs under {@link #RUN_KEY}
+ * and <code>duration,failedRun</code> by suite name, where <code>failedRun</code> is 0 for a
+ * suite that never failed.  It may be shared by several builds; each reads it again just
+ * before recording its run, and replaces it in one rename.
+ */
+final class SuiteHistory {
+    // Runs, counting the last one, within which a failure counts as recent
+    static final int RECENT_RUNS = 5;
+
+    static final String RUN_KEY = "run";
+
+    private final Map<String, Long> durations = new HashMap<String, Long>();
+    private final Map<String, Integer> failedRuns = new HashMap<String, Integer>();
+    private int run;
+
+    //
+    // The history in file, or an empty one when there is none or it cannot
+    // be read.
+    //
+    static SuiteHistory read(File file) {
+        SuiteHistory history = new SuiteHistory();
+        Properties properties = new Properties();
+        if (file.isFile()) {
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                return history;
+            }
+        }
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            try {
+                if (key.equals(RUN_KEY)) {
+                    history.run = Integer.parseInt(value);
+                } else {
+                    String[] fields = value.split(",");
+                    history.durations.put(key, Long.parseLong(fields[0]));
+                    if (fields.length > 1 && Integer.parseInt(fields[1]) > 0) {
+                        history.failedRuns.put(key, Integer.parseInt(fields[1]));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                // An entry of some other version, left out
+            }
+        }
+        return history;
+    }
+
+    //
+    // Adds a run in which the suites took the given milliseconds, by suite
+    // name, and the failed ones failed tests or aborted.  The Runner's
+    // DiscoverySuite, which wraps the discovered suites, is not one of the
+    // suites ordered, and would only throw off the median.
+    //
+    void record(Map<String, Long> suiteDurations, Collection<String> failed) {
+        run++;
+        for (Map.Entry<String, Long> suite : suiteDurations.entrySet()) {
+            if (!EventChannel.DISCOVERY_SUITE.equals(suite.getKey())) {
+                durations.put(suite.getKey(), suite.getValue());
+            }
+        }
+        for (String suite : failed) {
+            if (!EventChannel.DISCOVERY_SUITE.equals(suite)) {
+                failedRuns.put(suite, run);
+            }
+        }
+    }
+
+    void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        Properties properties = new Properties();
+        properties.setProperty(RUN_KEY, String.valueOf(run));
+        for (Map.Entry<String, Long> suite : durations.entrySet()) {
+            Integer failedRun = failedRuns.get(suite.getKey());
+            properties.setProperty(suite.getKey(), suite.getValue() + "," + (failedRun == null ? 0 : failedRun));
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                properties.store(out, "Suite durations and failures of past ScalaTest runs");
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Cannot replace " + file);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    // Whether suite failed within the last RECENT_RUNS runs
+    boolean failedRecently(String suite) {
+        Integer failedRun = failedRuns.get(suite);
+        return failedRun != null && run - failedRun < RECENT_RUNS;
+    }
+
+    //
+    // The items, each holding the Runner arguments for one suite as in
+    // ("-s", suiteName, ...), with the ones that failed recently first and
+    // then the longest.  Items the history tells nothing apart keep their
+    // order.
+    //
+    List<List<String>> order(List<List<String>> items) {
+        final Map<List<String>, Long> expected = SuiteShards.expectedDurations(items, durations);
+        List<List<String>> ordered = new ArrayList<List<String>>(items);
+        Collections.sort(ordered, new Comparator<List<String>>() {
+            public int compare(List<String> a, List<String> b) {
+                int byFailure = failedRun(b) - failedRun(a);
+                return byFailure != 0 ? byFailure : expected.get(b).compareTo(expected.get(a));
+            }
+        });
+        return unmodifiableList(ordered);
+    }
+
+    // The run the suite of item last failed in, if recently, or else 0
+    private int failedRun(List<String> item) {
+        String suite = item.get(1);
+        return failedRecently(suite) ? failedRuns.get(suite) : 0;
+    }
+}
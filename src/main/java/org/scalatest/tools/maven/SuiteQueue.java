@@ -0,0 +1,168 @@
+package org.scalatest.tools.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Serves suites to the forked JVMs of a multi-fork run over a loopback socket.  Each
+ * fork, running {@link ForkMain}, asks for the next batch whenever it is idle, so a fork
+ * stuck in a slow suite does not hold up the suites still waiting to run.
+ * <p>
+ * Batches shrink as the queue drains: a fork gets its share of half the remaining suites,
+ * which keeps the number of Runner invocations low early on while leaving small batches
+ * to balance the tail of the run.  Once {@link #stop() stopped}, the queue hands out no
+ * more suites, and the forks end as they finish the batches they have.
+ */
+final class SuiteQueue implements Closeable {
+    private final ServerSocket server;
+    private final LinkedList<List<String>> pending;
+    private final int forks;
+    private final int maxBatchSize;
+    private final List<Socket> connections = new ArrayList<Socket>();
+    private int batches;
+    private int skipped;
+
+    //
+    // Each element of suites holds the Runner arguments selecting one suite,
+    // e.g. ("-s", "org.example.HelloSpec") or ("-s", "org.example.HelloSpec", "-z", "hello").
+    //
+    SuiteQueue(List<List<String>> suites, int forks) throws IOException {
+        this(suites, forks, Integer.MAX_VALUE);
+    }
+
+    SuiteQueue(List<List<String>> suites, int forks, int maxBatchSize) throws IOException {
+        this.pending = new LinkedList<List<String>>(suites);
+        this.forks = forks;
+        this.maxBatchSize = maxBatchSize;
+        this.server = new ServerSocket(0, forks, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread("scalatest-suite-queue") {
+            @Override
+            public void run() {
+                accept();
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    // Number of batches handed out so far
+    synchronized int batches() {
+        return batches;
+    }
+
+    synchronized int remaining() {
+        return pending.size();
+    }
+
+    //
+    // Removes the next batch from the queue, or returns an empty list when
+    // the queue is drained.  The batch number is written to batchNumber[0].
+    //
+    synchronized List<List<String>> nextBatch(int[] batchNumber) {
+        List<List<String>> batch = new ArrayList<List<String>>();
+        int size = Math.min(maxBatchSize, Math.max(1, (pending.size() + 2 * forks - 1) / (2 * forks)));
+        while (batch.size() < size && !pending.isEmpty()) {
+            batch.add(pending.removeFirst());
+        }
+        if (!batch.isEmpty()) {
+            batchNumber[0] = batches++;
+        }
+        return batch;
+    }
+
+    // Drops the suites not handed out yet, so that the run ends with the batches the forks have
+    synchronized void stop() {
+        skipped += pending.size();
+        pending.clear();
+    }
+
+    // Number of suites dropped by stop
+    synchronized int skipped() {
+        return skipped;
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                synchronized (this) {
+                    connections.add(socket);
+                }
+                Thread handler = new Thread("scalatest-suite-queue-fork") {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                };
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                // The server socket was closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Thread.currentThread().setName("scalatest-suite-queue-fork-" + in.readInt());
+
+            while (in.readByte() == ForkMain.NEXT_BATCH) {
+                int[] batchNumber = new int[1];
+                List<List<String>> batch = nextBatch(batchNumber);
+                if (batch.isEmpty()) {
+                    out.writeInt(ForkMain.NO_MORE_BATCHES);
+                    out.flush();
+                    return;
+                }
+                out.writeInt(batchNumber[0]);
+                out.writeInt(batch.size());
+                for (List<String> suite : batch) {
+                    out.writeInt(suite.size());
+                    for (String arg : suite) {
+                        out.writeUTF(arg);
+                    }
+                }
+                out.flush();
+            }
+        } catch (EOFException e) {
+            // The fork went away
+        } catch (SocketException e) {
+            // The fork went away, or the queue was closed
+        } catch (IOException e) {
+            // Nothing the fork can be told; it fails on its end of the socket
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    public void close() throws IOException {
+        server.close();
+        synchronized (this) {
+            for (Socket socket : connections) {
+                socket.close();
+            }
+            connections.clear();
+        }
+    }
+}
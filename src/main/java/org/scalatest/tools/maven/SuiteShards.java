@@ -0,0 +1,188 @@
+package org.scalatest.tools.maven;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Splits the suites of a module into shards for running on separate machines.  Every
+ * machine computes the same split from the same inputs, so each only needs to know its
+ * own shard index.
+ * <p>
+ * When durations of a previous run are known the suites are packed longest first onto
+ * the shard with the least expected time, which keeps the slowest shard close to the
+ * average.  Suites without a recorded duration count as the median of the known ones.
+ * Without any history suites are assigned by hashing their names.
+ */
+final class SuiteShards {
+    private SuiteShards() {
+    }
+
+    //
+    // Returns the items of the given shard.  Each item holds the Runner
+    // arguments for one suite, ("-s", suiteName, ...), so the suite name is
+    // its second element.
+    //
+    static List<List<String>> shard(List<List<String>> items, Map<String, Long> durations, int index, int count) {
+        List<List<String>> result = new ArrayList<List<String>>();
+        if (durations.isEmpty()) {
+            for (List<String> item : items) {
+                if ((suiteName(item).hashCode() & Integer.MAX_VALUE) % count == index) {
+                    result.add(item);
+                }
+            }
+            return unmodifiableList(result);
+        }
+
+        final Map<List<String>, Long> expected = expectedDurations(items, durations);
+        List<List<String>> longestFirst = new ArrayList<List<String>>(items);
+        Collections.sort(longestFirst, new Comparator<List<String>>() {
+            public int compare(List<String> a, List<String> b) {
+                int byDuration = expected.get(b).compareTo(expected.get(a));
+                return byDuration != 0 ? byDuration : suiteName(a).compareTo(suiteName(b));
+            }
+        });
+
+        long[] loads = new long[count];
+        for (List<String> item : longestFirst) {
+            int lightest = 0;
+            for (int s = 1; s < count; s++) {
+                if (loads[s] < loads[lightest]) {
+                    lightest = s;
+                }
+            }
+            loads[lightest] += expected.get(item);
+            if (lightest == index) {
+                result.add(item);
+            }
+        }
+        return unmodifiableList(result);
+    }
+
+    // Expected milliseconds for the given items, using the median for unknown suites
+    static Map<List<String>, Long> expectedDurations(List<List<String>> items, Map<String, Long> durations) {
+        List<Long> known = new ArrayList<Long>(durations.values());
+        Collections.sort(known);
+        long median = known.isEmpty() ? 0L : known.get(known.size() / 2);
+
+        Map<List<String>, Long> expected = new HashMap<List<String>, Long>();
+        for (List<String> item : items) {
+            Long duration = durations.get(suiteName(item));
+            expected.put(item, duration != null ? duration : median);
+        }
+        return expected;
+    }
+
+    static long total(List<List<String>> items, Map<String, Long> durations) {
+        long total = 0;
+        for (Long duration : expectedDurations(items, durations).values()) {
+            total += duration;
+        }
+        return total;
+    }
+
+    private static String suiteName(List<String> item) {
+        return item.get(1);
+    }
+
+    //
+    // Reads suite durations in milliseconds from the JUnit XML reports found
+    // anywhere under dir, as written by ScalaTest's -u reporter.  Only the
+    // testsuite elements are looked at, so large reports are cheap to read.
+    //
+    static Map<String, Long> readJUnitXmlDurations(File dir) {
+        Map<String, Long> durations = new HashMap<String, Long>();
+        if (dir != null && dir.isDirectory()) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            collectDurations(dir, factory, durations);
+        }
+        return unmodifiableMap(durations);
+    }
+
+    private static void collectDurations(File dir, XMLInputFactory factory, Map<String, Long> durations) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectDurations(file, factory, durations);
+            } else if (file.getName().endsWith(".xml")) {
+                try {
+                    readDurations(file, factory, durations);
+                } catch (IOException e) {
+                    // Not a report we can use
+                } catch (XMLStreamException e) {
+                    // Not a report we can use
+                }
+            }
+        }
+    }
+
+    private static void readDurations(File file, XMLInputFactory factory, Map<String, Long> durations)
+            throws IOException, XMLStreamException {
+        InputStream in = new FileInputStream(file);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                // A testsuite root, or testsuite elements directly inside a testsuites root
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        String element = reader.getLocalName();
+                        if ("testsuite".equals(element) && depth <= 2) {
+                            String name = reader.getAttributeValue(null, "name");
+                            String time = reader.getAttributeValue(null, "time");
+                            Long millis = millis(time);
+                            if (name != null && millis != null) {
+                                durations.put(name, millis);
+                            }
+                            if (depth == 1) {
+                                return;
+                            }
+                        } else if (depth == 1 && !"testsuites".equals(element)) {
+                            return;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    //
+    // Parses a time attribute in seconds, or returns null when it is not a
+    // plain decimal number.  Reports written in some locales use a comma as
+    // the decimal separator or to group thousands; as the two cannot be told
+    // apart, such suites count as unknown rather than risk a wrong duration.
+    //
+    static Long millis(String time) {
+        if (time == null || !time.trim().matches("[0-9]+(\\.[0-9]*)?|\\.[0-9]+")) {
+            return null;
+        }
+        return Math.round(Double.parseDouble(time.trim()) * 1000);
+    }
+}
@@ -0,0 +1,163 @@
+package org.scalatest.tools.maven;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the tests of every module of the reactor at the end of the build, in one or a few
+ * forked JVMs instead of one or more per module, so that the startup and warm-up of those
+ * JVMs is paid once.  Each module is run with a Runner of its own: its class directories, its
+ * reactor dependencies and any jars not from the local repository are loaded by that Runner,
+ * and the jars it has from the local repository by a class loader shared only with the
+ * modules that have the very same ones.  Modules whose dependency versions differ thus
+ * never see each other's.
+ * <p>
+ * The reports of each module go to its own reports directory, and failures are logged
+ * with the module they are in.  The forks run in the directory of the project the goal
+ * is run from, with the system property <code>basedir</code> set to that of the module
+ * being run.  Suites are found by the Runner: the options with which the <code>test</code>
+ * goal selects, orders or spreads suites itself, and its reruns and timeouts, do not
+ * apply to this goal.
+ * <p>
+ * The modules must be compiled in the same build for their dependencies on each other to
+ * be found, as in <code>mvn test-compile scalatest:test-aggregate</code>.
+ *
+ * @goal test-aggregate
+ * @aggregator
+ * @requiresDependencyResolution test
+ * @threadSafe
+ */
+public class TestAggregateMojo extends TestMojo {
+
+    /**
+     * The number of forked JVMs the modules are spread over.  Modules that have the same jars
+     * from the local repository run one after the other, sharing a class loader for them.
+     * @parameter property="aggregateForkCount" default-value="1"
+     */
+    int aggregateForkCount;
+
+    public void execute() throws MojoFailureException {
+        if (skipTests) {
+            getLog().info("Tests are skipped.");
+            return;
+        }
+        checkForkCounts();
+
+        List<AggregateMain.Module> modules = new ArrayList<AggregateMain.Module>();
+        Map<Integer, String> names = new LinkedHashMap<Integer, String>();
+        for (MavenProject module : session.getProjects()) {
+            File testClasses = new File(module.getBuild().getTestOutputDirectory());
+            if ("pom".equals(module.getPackaging()) || !testClasses.isDirectory()) {
+                getLog().debug("No test classes in " + module.getArtifactId() + "; skipping it.");
+                continue;
+            }
+            AggregateMain.Module plan = aggregatedModule(modules.size(), module, moduleOptions(module));
+            modules.add(plan);
+            names.put(plan.number, plan.name);
+        }
+        if (modules.isEmpty()) {
+            getLog().info("No modules with test classes to run.");
+            return;
+        }
+        getLog().info(String.format("Running the tests of %d modules in %d forked JVMs.", modules.size(),
+                AggregateMain.share(modules, aggregateForkCount).size()));
+
+        boolean passed = runAggregated(modules, aggregateForkCount);
+        if (runEvents() != null) {
+            logModules(runEvents(), names);
+        }
+        if (!passed && !testFailureIgnore) {
+            throw new MojoFailureException("There are test failures");
+        }
+    }
+
+    //
+    // The Runner arguments for module but its runpath, with its reports in
+    // its own directory.  The HTML reporters are left out, as each module
+    // would write over the reports of the others.
+    //
+    private List<String> moduleOptions(MavenProject module) {
+        File directory = moduleReportsDirectory(module);
+        List<String> options = new ArrayList<String>(runnerOptions());
+        options.addAll(stdout());
+        options.addAll(stderr());
+        options.addAll(filereports(directory));
+        options.addAll(reporters());
+        options.addAll(junitxml(directory));
+        return options;
+    }
+
+    //
+    // The reports directory of module: where reportsDirectory is in the
+    // build directory of the project the goal is run from, the same place
+    // in that of the module, and otherwise a directory named after it.
+    //
+    File moduleReportsDirectory(MavenProject module) {
+        String build = new File(project.getBuild().getDirectory()).getAbsolutePath() + File.separator;
+        String reports = reportsDirectory.getAbsolutePath();
+        if (reports.startsWith(build)) {
+            return new File(module.getBuild().getDirectory(), reports.substring(build.length()));
+        }
+        return new File(reportsDirectory, module.getArtifactId());
+    }
+
+    //
+    // Logs the tests run and failed in each module, and then the failures,
+    // each with the module it is in.
+    //
+    private void logModules(RunEvents events, Map<Integer, String> names) {
+        Map<Integer, Integer> tests = new HashMap<Integer, Integer>();
+        for (EventChannel.Event test : events.tests()) {
+            tests.put(test.fork, tests.containsKey(test.fork) ? tests.get(test.fork) + 1 : 1);
+        }
+        List<EventChannel.Event> failures = events.failures();
+        Map<Integer, Integer> failed = new HashMap<Integer, Integer>();
+        for (EventChannel.Event failure : failures) {
+            failed.put(failure.fork, failed.containsKey(failure.fork) ? failed.get(failure.fork) + 1 : 1);
+        }
+        for (Map.Entry<Integer, String> module : names.entrySet()) {
+            Integer moduleTests = tests.get(module.getKey());
+            Integer moduleFailures = failed.get(module.getKey());
+            String line = String.format("%s: %d tests, %d failures", module.getValue(),
+                    moduleTests == null ? 0 : moduleTests, moduleFailures == null ? 0 : moduleFailures);
+            if (moduleFailures == null) {
+                getLog().info(line);
+            } else {
+                getLog().error(line);
+            }
+        }
+
+        if (failures.isEmpty()) {
+            return;
+        }
+        getLog().error("Failed tests:");
+        for (EventChannel.Event failure : failures.subList(0, Math.min(failures.size(), MAX_FAILURES_LOGGED))) {
+            String module = names.get(failure.fork);
+            getLog().error("  [" + (module == null ? "unknown module" : module) + "] " + RunEvents.describe(failure));
+        }
+        if (failures.size() > MAX_FAILURES_LOGGED) {
+            getLog().error(String.format("  ... and %d more", failures.size() - MAX_FAILURES_LOGGED));
+        }
+    }
+
+    // The Runner finds the suites of each module itself
+    boolean selectsSuites() {
+        return false;
+    }
+
+    boolean usesSuiteQueue() {
+        return false;
+    }
+
+    // The HTML reporters are left out of the modules' options
+    boolean writesHtmlReports() {
+        return false;
+    }
+}
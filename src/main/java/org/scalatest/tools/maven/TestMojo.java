@@ -73,6 +73,11 @@ public class TestMojo extends AbstractScalaTestMojo {
      *   &lt;/htmlreporters&gt;
      * </code>
      * For more info on configuring reporters, see the scalatest documentation.
+     * <p>
+     * An HTML report covers one Runner invocation, so the suites are not queued for several forks
+     * when it is written: with a <code>forkCount</code> other than 1 a single fork runs that many
+     * suites at a time instead, and <code>failFast</code>, which runs each suite on its own, cannot
+     * be used with it.
      * @parameter property="htmlreporters"
      */
     String htmlreporters;
@@ -95,6 +100,24 @@ public class TestMojo extends AbstractScalaTestMojo {
      */
     String junitxml;
 
+    /**
+     * Name of a single JUnit XML report of the whole run to write in the reports directory, such as
+     * <code>TEST-scalatest.xml</code>, for CI servers that are slow to read the file per suite that
+     * <code>junitxml</code> writes.  The report is streamed from the events of the forks, suite by suite
+     * as they end, so that it takes little memory however large the run, and covers runs spread over
+     * several forks; reruns add their suites to it.  Sharded runs each write their own, named after their
+     * shard, as in <code>TEST-scalatest-shard-2.xml</code>.  Only runs in forked processes write it.
+     * @parameter property="mergedJunitXml"
+     */
+    String mergedJunitXml;
+
+    /**
+     * Size past which the merged JUnit XML report goes on in a new file, numbered from 2, as in
+     * <code>TEST-scalatest-2.xml</code>, given as the JVM takes -Xmx, e.g. "256m".  Empty for no limit.
+     * @parameter property="mergedJunitXmlMaxSize" default-value="256m"
+     */
+    String mergedJunitXmlMaxSize;
+
     /**
      * Configuration for logging to stdout. (This logger is always enabled)
      * For more info on configuring reporters, see the scalatest documentation.
@@ -127,6 +150,77 @@ public class TestMojo extends AbstractScalaTestMojo {
      */
     String testOutputFileName;
 
+    /**
+     * Set this to "true" to run only the suites affected by changes since the last successful run.
+     *
+     * <p>The plugin scans the class files for the classes each suite references, directly or through
+     * other classes of the project, and runs a suite again when one of those classes, a jar it reaches
+     * into, a resource or the configuration of the run changed. A new or renamed jar on the test
+     * classpath, such as a dependency upgrade, runs all suites. What ran is recorded in
+     * <code>${project.build.directory}/scalatest-incremental.properties</code> once a run passes;
+     * delete the file, or run <code>mvn clean</code>, to run everything again.</p>
+     *
+     * <p>Suites are discovered by the plugin unless <code>suites</code> names them, and
+     * <code>membersOnlySuites</code> and <code>wildcardSuites</code> are expanded to the suites they
+     * contain, so only the affected ones among those run. The option is ignored together with
+     * <code>testNGXMLFiles</code>, <code>junitClasses</code> or <code>testsFiles</code>.</p>
+     *
+     * @parameter property="incremental" default-value="false"
+     */
+    boolean incremental;
+
+    /**
+     * Set this to "true" to skip running the tests when they already passed with the same inputs, restoring
+     * the reports of that run into <code>reportsDirectory</code> instead.
+     *
+     * <p>The inputs are the contents of the test classpath and runpath, the arguments passed to ScalaTest,
+     * <code>argLine</code>, <code>systemProperties</code>, <code>environmentVariables</code>, the JVM and
+     * the working directory. Only successful runs are remembered, in <code>resultCacheDirectory</code>.
+     * Anything else the tests read, such as files outside the classpath or network services, is not
+     * part of the inputs, so only enable this for tests that depend on nothing else.</p>
+     *
+     * @parameter property="resultCache" default-value="false"
+     */
+    boolean resultCache;
+
+    /**
+     * Directory holding the reports of the successful runs remembered for <code>resultCache</code>.
+     * Entries not used for 30 days are removed.
+     *
+     * @parameter property="resultCacheDirectory" default-value="${user.home}/.scalatest-maven-plugin/results"
+     */
+    File resultCacheDirectory;
+
+    /**
+     * Whether to write the wall time of every suite and test, with the fork and thread it ran on and
+     * its outcome, to <code>scalatest-timings.json</code> and <code>scalatest-timings.csv</code> in
+     * <code>reportsDirectory</code>, and to log the slowest suites and the percentiles of suite and test
+     * durations. Only runs in forked processes are timed.
+     *
+     * @parameter property="timingReport" default-value="false"
+     */
+    boolean timingReport;
+
+    /**
+     * Number of times to rerun the tests that failed, and the suites that aborted, in a run in forked
+     * processes. Each rerun runs only what failed in the run or rerun before it, in a new fork, and the
+     * build passes if everything passes on one of them. Tests that failed and then passed on a rerun are
+     * logged as flaky and listed in <code>scalatest-flaky.txt</code> in <code>reportsDirectory</code>.
+     *
+     * <p>The output of the reruns is appended to the file reports, and their JUnit XML reports are merged
+     * into the ones of the run as Maven Surefire does: the failure of a test that passed on a rerun is kept
+     * as a <code>flakyFailure</code> and no longer counts, and a test that failed again gets a
+     * <code>rerunFailure</code>. HTML reports and memory files show the run without the reruns. Nothing is
+     * rerun after the run itself aborted.</p>
+     *
+     * @parameter property="rerunFailingTestsCount" default-value="0"
+     */
+    int rerunFailingTestsCount;
+
+    static final String FLAKY_FILE = "scalatest-flaky.txt";
+
+    private static final int SLOWEST_SUITES = 20;
+
     public void execute() throws MojoFailureException {
         getLog().info("ScalaTest report directory: " + reportsDirectory);
 
@@ -135,7 +229,7 @@ public class TestMojo extends AbstractScalaTestMojo {
         } 
         else if (noScalaTestIgnore) {
             if (isScalaTestAvailable()) {
-                if (!runScalaTest(configuration()) && !testFailureIgnore) {
+                if (!runTests() && !testFailureIgnore) {
                     throw new MojoFailureException("There are test failures");
                 }
             }
@@ -143,7 +237,7 @@ public class TestMojo extends AbstractScalaTestMojo {
                 getLog().info("Skipped because ScalaTest not available on classpath.");
         }
         else {
-            if (!runScalaTest(configuration()) && !testFailureIgnore) {
+            if (!runTests() && !testFailureIgnore) {
                 if (isScalaTestAvailable())
                   throw new MojoFailureException("There are test failures");
                 else
@@ -152,26 +246,109 @@ public class TestMojo extends AbstractScalaTestMojo {
         }
     }
 
+    // Returns true if all tests pass
+    private boolean runTests() throws MojoFailureException {
+        checkForkCounts();
+        if (failFast && writesHtmlReports() && !"never".equals(forkMode) && !"daemon".equals(forkMode)) {
+            throw new MojoFailureException("failFast cannot be used with htmlreporters: failFast runs every suite "
+                    + "in a Runner invocation of its own, and the HTML report would only show the last one.");
+        }
+        String[] configuration = configuration();
+        if (runsForksAsThreads()) {
+            getLog().info(String.format("Running the suites in a single fork, %d at a time, so that the HTML report "
+                    + "covers all of them; forkCount queues suites for several forks only without htmlreporters.",
+                    forkCount()));
+        }
+        ResultCache cache = null;
+        if (resultCache) {
+            cache = new ResultCache(resultCacheDirectory, resultFingerprint(configuration));
+            try {
+                if (cache.restore(reportsDirectory)) {
+                    getLog().info("Tests are up to date; restored the reports of the run with the same inputs from "
+                            + cache.entry() + ".");
+                    return true;
+                }
+            } catch (IOException e) {
+                getLog().warn("Unable to restore the cached test reports; running the tests: " + e.getMessage());
+            }
+        }
+
+        // File times may only be kept to the second
+        long start = System.currentTimeMillis() / 1000 * 1000;
+        boolean passed = runScalaTest(configuration);
+        if (timingReport && runEvents() != null) {
+            writeTimingReport(runEvents());
+        }
+        if (rerunFailingTestsCount > 0) {
+            writeFlakyTests(flakyTests());
+        }
+        if (forkTelemetry && !telemetry().isEmpty()) {
+            try {
+                ForkTelemetry.write(reportsDirectory, telemetry());
+            } catch (IOException e) {
+                getLog().warn("Unable to write the telemetry of the forked processes: " + e.getMessage());
+            }
+        }
+        if (passed && cache != null) {
+            try {
+                cache.store(reportsDirectory, start);
+            } catch (IOException e) {
+                getLog().warn("Unable to cache the test reports: " + e.getMessage());
+            }
+        }
+        return passed;
+    }
+
+    private void writeTimingReport(RunEvents events) {
+        TimingReport report = new TimingReport(events.suites(), events.tests());
+        try {
+            report.write(reportsDirectory);
+        } catch (IOException e) {
+            getLog().warn("Unable to write the timing report: " + e.getMessage());
+        }
+        for (String line : report.summary(SLOWEST_SUITES)) {
+            getLog().info(line);
+        }
+    }
+
+    private void writeFlakyTests(List<String> flaky) {
+        File file = new File(reportsDirectory, FLAKY_FILE);
+        if (flaky.isEmpty()) {
+            file.delete();
+            return;
+        }
+        StringBuilder contents = new StringBuilder();
+        for (String test : flaky) {
+            contents.append(test).append('\n');
+        }
+        try {
+            reportsDirectory.mkdirs();
+            writeFully(file, contents.toString());
+        } catch (IOException e) {
+            getLog().warn("Unable to write the flaky tests to " + file + ": " + e.getMessage());
+        }
+    }
+
     String[] configuration() {
         return concat(
                 sharedConfiguration(),
                 stdout(),
                 stderr(),
-                filereports(),
+                filereports(reportsDirectory),
                 htmlreporters(),
                 reporters(),
-                junitxml()
+                junitxml(reportsDirectory)
         );
     }
 
     // These private methods create the relevant portion of the command line
     // to pass to Runner based on the corresponding Maven configuration parameter.
-    private List<String> stdout() {
+    List<String> stdout() {
         final String stdoutProcessed = maybeRemoveAnsiCodes(stdout);
         return unmodifiableList(singletonList(stdoutProcessed == null ? "-o" : "-o" + stdoutProcessed));
     }
 
-    private List<String> stderr() {
+    List<String> stderr() {
         return stderr == null ? Collections.<String>emptyList() : unmodifiableList(singletonList("-e" + stderr));
     }
 
@@ -193,8 +370,12 @@ public class TestMojo extends AbstractScalaTestMojo {
         return string + letter;
     }
 
-    private List<String> filereports() {
-        return unmodifiableList(reporterArg("-f", filereports, fileRelativeTo(reportsDirectory)));
+    List<String> filereports(File directory) {
+        return unmodifiableList(reporterArg("-f", filereports, fileRelativeTo(directory)));
+    }
+
+    boolean writesHtmlReports() {
+        return !htmlreporters().isEmpty();
     }
 
     private List<String> htmlreporters() {
@@ -216,12 +397,57 @@ public class TestMojo extends AbstractScalaTestMojo {
         return unmodifiableList(r);
     }
 
-    private List<String> reporters() {
+    List<String> reporters() {
         return reporterArg("-C", reporters, passThrough);
     }
 
-    private List<String> junitxml(){
-        return reporterArg("-u", junitxml, dirRelativeTo(reportsDirectory));
+    List<String> junitxml(File directory) {
+        return reporterArg("-u", junitxml, dirRelativeTo(directory));
+    }
+
+    boolean incremental() {
+        return incremental;
+    }
+
+    int rerunFailingTestsCount() {
+        return rerunFailingTestsCount;
+    }
+
+    boolean timingReport() {
+        return timingReport;
+    }
+
+    File profileDirectory() {
+        return reportsDirectory;
+    }
+
+    File mergedJUnitXmlFile() {
+        if (mergedJunitXml == null || mergedJunitXml.trim().isEmpty()) {
+            return null;
+        }
+        String name = mergedJunitXml.trim();
+        if (shardCount > 1) {
+            int dot = name.lastIndexOf('.');
+            String shard = "-shard-" + shardIndex;
+            name = dot < 0 ? name + shard : name.substring(0, dot) + shard + name.substring(dot);
+        }
+        return new File(reportsDirectory, name);
+    }
+
+    long mergedJUnitXmlMaxSize() {
+        return parseMemorySize(mergedJunitXmlMaxSize);
+    }
+
+    File getOutputFile() throws MojoFailureException {
+        if (!redirectTestOutputToFile) {
+            return super.getOutputFile();
+        }
+        try {
+            newFileWriter().close();
+        } catch (IOException e) {
+            throw new MojoFailureException("Unable to access the output file: '" + testOutputFileName + "'", e);
+        }
+        return new File(reportsDirectory, testOutputFileName);
     }
 
     protected Writer getOutputWriter() throws MojoFailureException {
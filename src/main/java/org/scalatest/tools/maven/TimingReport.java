@@ -0,0 +1,208 @@
+package org.scalatest.tools.maven;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.scalatest.tools.maven.EventChannel.Event;
+
+import static org.scalatest.tools.maven.MojoUtils.UTF_8;
+
+/**
+ * The wall time of every suite and test of a run, from the events of its forks.  Written to
+ * {@link #JSON_FILE} and {@link #CSV_FILE} for tools, and summarized for the build log as
+ * the slowest suites and the percentiles of suite and test durations.
+ */
+final class TimingReport {
+    static final String JSON_FILE = "scalatest-timings.json";
+    static final String CSV_FILE = "scalatest-timings.csv";
+
+    private final List<Event> suites;
+    private final List<Event> tests;
+
+    TimingReport(List<Event> suites, List<Event> tests) {
+        this.suites = withoutDiscovery(suites);
+        this.tests = withoutDiscovery(tests);
+    }
+
+    // The Runner's DiscoverySuite wraps the discovered suites, so its time is theirs
+    private static List<Event> withoutDiscovery(List<Event> events) {
+        List<Event> result = new ArrayList<Event>(events.size());
+        for (Event event : events) {
+            if (!EventChannel.DISCOVERY_SUITE.equals(event.suiteClassName)) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    void write(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        writeJson(new File(directory, JSON_FILE));
+        writeCsv(new File(directory, CSV_FILE));
+    }
+
+    private void writeJson(File file) throws IOException {
+        Writer out = writer(file);
+        try {
+            out.write("{\n  \"suites\": [");
+            for (int i = 0; i < suites.size(); i++) {
+                out.write(i == 0 ? "\n    " : ",\n    ");
+                out.write(json(suites.get(i)));
+            }
+            out.write("\n  ],\n  \"tests\": [");
+            for (int i = 0; i < tests.size(); i++) {
+                out.write(i == 0 ? "\n    " : ",\n    ");
+                out.write(json(tests.get(i)));
+            }
+            out.write("\n  ]\n}\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String json(Event event) {
+        StringBuilder object = new StringBuilder("{\"suite\": ").append(quote(event.suiteClassName));
+        if (event.testName != null) {
+            object.append(", \"test\": ").append(quote(event.testName));
+        }
+        object.append(", \"status\": ").append(quote(status(event)));
+        object.append(", \"durationMillis\": ").append(event.duration < 0 ? "null" : String.valueOf(event.duration));
+        object.append(", \"fork\": ").append(event.fork < 0 ? "null" : String.valueOf(event.fork));
+        object.append(", \"thread\": ").append(event.thread == null ? "null" : quote(event.thread));
+        return object.append('}').toString();
+    }
+
+    private static String quote(String string) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : string.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private void writeCsv(File file) throws IOException {
+        Writer out = writer(file);
+        try {
+            out.write("type,suite,test,status,durationMillis,fork,thread\n");
+            for (Event suite : suites) {
+                out.write(csv("suite", suite));
+            }
+            for (Event test : tests) {
+                out.write(csv("test", test));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String csv(String type, Event event) {
+        return type + ',' + csvField(event.suiteClassName) + ',' + csvField(event.testName) + ',' + status(event) + ','
+                + (event.duration < 0 ? "" : String.valueOf(event.duration)) + ','
+                + (event.fork < 0 ? "" : String.valueOf(event.fork)) + ',' + csvField(event.thread) + '\n';
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // "completed" or "aborted" for suites, "succeeded", "failed" and so on for tests
+    static String status(Event event) {
+        String kind = event.kind.name();
+        return kind.substring(kind.indexOf('_') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static Writer writer(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+    }
+
+    //
+    // Lines for the build log: the slowest suites, slowest first, and the
+    // percentiles of suite and test durations.
+    //
+    List<String> summary(int slowest) {
+        List<String> lines = new ArrayList<String>();
+        List<Event> timed = new ArrayList<Event>();
+        for (Event suite : suites) {
+            if (suite.duration >= 0) {
+                timed.add(suite);
+            }
+        }
+        if (timed.isEmpty()) {
+            return lines;
+        }
+        Collections.sort(timed, new Comparator<Event>() {
+            public int compare(Event a, Event b) {
+                return Long.compare(b.duration, a.duration);
+            }
+        });
+        int shown = Math.min(slowest, timed.size());
+        lines.add(String.format("Slowest %d of %d suites:", shown, timed.size()));
+        for (Event suite : timed.subList(0, shown)) {
+            String fork = suite.fork < 0 ? "" : String.format("  fork %d", suite.fork);
+            lines.add(String.format("  %10s%s  %s", seconds(suite.duration), fork, suite.suiteClassName));
+        }
+        lines.add("Suite durations: " + percentiles(durations(suites)));
+        long[] testDurations = durations(tests);
+        if (testDurations.length > 0) {
+            lines.add("Test durations: " + percentiles(testDurations));
+        }
+        return lines;
+    }
+
+    private static long[] durations(List<Event> events) {
+        long[] durations = new long[events.size()];
+        int count = 0;
+        for (Event event : events) {
+            if (event.duration >= 0) {
+                durations[count++] = event.duration;
+            }
+        }
+        durations = Arrays.copyOf(durations, count);
+        Arrays.sort(durations);
+        return durations;
+    }
+
+    private static String percentiles(long[] sorted) {
+        long total = 0;
+        for (long duration : sorted) {
+            total += duration;
+        }
+        return String.format("p50 %s, p90 %s, p99 %s, max %s over %d, %s in total",
+                seconds(percentile(sorted, 50)), seconds(percentile(sorted, 90)), seconds(percentile(sorted, 99)),
+                seconds(sorted[sorted.length - 1]), sorted.length, seconds(total));
+    }
+
+    // The nearest-rank percentile of sorted, which must not be empty
+    static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.3f s", millis / 1000.0);
+    }
+}
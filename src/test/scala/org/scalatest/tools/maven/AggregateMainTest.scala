@@ -0,0 +1,40 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import java.util.Arrays.asList
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+import scala.collection.JavaConverters._
+
+final class AggregateMainTest extends JUnit3Suite with Matchers {
+
+  private def module(number: Int, sharedKey: String) =
+    new AggregateMain.Module(number, "module-" + number, "/work/module-" + number, sharedKey,
+      asList("/repo/scalatest.jar"), asList("-R", "/work/module-" + number + "/target/test-classes", "-oD"))
+
+  def testReadsThePlanItWrote {
+    val plan = new File(Files.createTempDirectory("aggregate").toFile, "plans/fork.plan")
+    AggregateMain.write(plan, asList(module(0, "a"), module(1, "b")))
+    val modules = AggregateMain.read(plan).asScala
+    modules.map(_.number) should be(Seq(0, 1))
+    modules(1).name should be("module-1")
+    modules(1).basedir should be("/work/module-1")
+    modules(1).sharedKey should be("b")
+    modules(1).sharedJars should be(asList("/repo/scalatest.jar"))
+    modules(1).runnerArgs should be(asList("-R", "/work/module-1/target/test-classes", "-oD"))
+  }
+
+  def testKeepsModulesSharingJarsTogether {
+    val modules = asList(module(0, "a"), module(1, "b"), module(2, "a"), module(3, "b"))
+    val shares = AggregateMain.share(modules, 2).asScala.map(_.asScala.map(_.number))
+    shares should be(Seq(Seq(0, 2), Seq(1, 3)))
+    AggregateMain.share(modules, 1).asScala.map(_.asScala.map(_.number)) should be(Seq(Seq(0, 2, 1, 3)))
+  }
+
+  def testNeverHasMoreForksThanModules {
+    AggregateMain.share(asList(module(0, "a"), module(1, "a")), 8).size should be(2)
+    AggregateMain.share(asList(module(0, "a"), module(1, "a"), module(2, "b")), 2).asScala
+      .map(_.size) should be(Seq(1, 2))
+  }
+}
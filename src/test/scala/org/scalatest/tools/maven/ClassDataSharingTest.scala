@@ -0,0 +1,107 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import java.util.Arrays
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+import scala.collection.JavaConverters._
+
+final class ClassDataSharingTest extends JUnit3Suite with Matchers {
+  def tempDir() = Files.createTempDirectory("cds").toFile
+
+  // A java executable in a home whose release file names the given version
+  def jvm(version: String) = {
+    val home = tempDir()
+    MojoUtils.writeFully(new File(home, "bin/java"), "")
+    MojoUtils.writeFully(new File(home, "release"), "IMPLEMENTOR=\"Test\"\nJAVA_VERSION=\"" + version + "\"\n")
+    new File(home, "bin/java").getPath
+  }
+
+  def testReadsTheJavaVersionOfTheJvm {
+    ClassDataSharing.javaVersion(jvm("17.0.9")) should be("17.0.9")
+    ClassDataSharing.javaVersion(new File(tempDir(), "bin/java").getPath) should be(null)
+    ClassDataSharing.javaVersion("java") should be(null)
+  }
+
+  def testNeedsJava10 {
+    ClassDataSharing.supports("1.8.0_392") should be(false)
+    ClassDataSharing.supports("9.0.4") should be(false)
+    ClassDataSharing.supports("10") should be(true)
+    ClassDataSharing.supports("21.0.1") should be(true)
+    ClassDataSharing.supports(null) should be(false)
+  }
+
+  def testPutsJarsFirst {
+    val dir = tempDir()
+    val jar = new File(dir, "a.jar")
+    MojoUtils.writeFully(jar, "jar")
+    val classes = new File(dir, "classes")
+    classes.mkdir()
+    ClassDataSharing.jarsFirst(Arrays.asList(classes.getPath, jar.getPath)).asScala should be(List(jar.getPath, classes.getPath))
+  }
+
+  def testFindsWhatTheJarsHideOnceFirst {
+    val dir = tempDir()
+    val jar = new File(dir, "a.jar")
+    val zip = new java.util.zip.ZipOutputStream(new java.io.FileOutputStream(jar))
+    for (entry <- Seq("application.conf", "a/B.class", "other.txt")) {
+      zip.putNextEntry(new java.util.zip.ZipEntry(entry))
+      zip.closeEntry()
+    }
+    zip.close()
+    val classes = new File(dir, "classes")
+    MojoUtils.writeFully(new File(classes, "application.conf"), "")
+    MojoUtils.writeFully(new File(classes, "a/B.class"), "")
+    MojoUtils.writeFully(new File(classes, "a/C.class"), "")
+
+    ClassDataSharing.shadowed(Arrays.asList(classes.getPath, jar.getPath)).asScala should be(Set("application.conf", "a/B.class"))
+    ClassDataSharing.shadowed(Arrays.asList(jar.getPath, classes.getPath)).asScala should be(empty)
+  }
+
+  def testSkipsSharingWhenTheJarsWouldHideProjectResources {
+    val dir = tempDir()
+    val jar = new File(dir, "a.jar")
+    val zip = new java.util.zip.ZipOutputStream(new java.io.FileOutputStream(jar))
+    zip.putNextEntry(new java.util.zip.ZipEntry("application.conf"))
+    zip.closeEntry()
+    zip.close()
+    val classes = new File(dir, "classes")
+    val testClasses = new File(dir, "test-classes")
+    MojoUtils.writeFully(new File(classes, "a/B.class"), "")
+    MojoUtils.writeFully(new File(testClasses, "application.conf"), "")
+
+    val mojo = new TestMojo
+    mojo.sharesClassData(Arrays.asList(classes.getPath, jar.getPath)) should be(true)
+    mojo.sharesClassData(Arrays.asList(testClasses.getPath, classes.getPath, jar.getPath)) should be(false)
+  }
+
+  def testAsksJava10ForApplicationClasses {
+    ClassDataSharing.appClassOptions(10).asScala should be(List("-XX:+UseAppCDS"))
+    ClassDataSharing.appClassOptions(11).asScala should be(empty)
+    val dir = tempDir()
+    new ClassDataSharing(new File(dir, "cds"), jvm("10.0.2")).jvmArguments(Arrays.asList()).asScala.head should be("-XX:+UseAppCDS")
+  }
+
+  def testRecordsClassesUntilThereIsAnArchive {
+    val dir = tempDir()
+    val jar = new File(dir, "a.jar")
+    MojoUtils.writeFully(jar, "jar")
+    val sharing = new ClassDataSharing(new File(dir, "cds"), jvm("17"))
+    val jars = Arrays.asList(jar.getPath)
+
+    val recording = sharing.jvmArguments(jars).asScala
+    recording should have size 1
+    recording.head should startWith("-XX:DumpLoadedClassList=")
+    sharing.hasRecordings should be(true)
+
+    val archive = sharing.archive(jars)
+    MojoUtils.writeFully(archive, "archive")
+    sharing.jvmArguments(jars).asScala should be(List("-Xshare:auto", "-XX:SharedArchiveFile=" + archive.getAbsolutePath))
+
+    MojoUtils.writeFully(jar, "changed jar")
+    jar.setLastModified(jar.lastModified + 2000)
+    sharing.archive(jars) should not be (archive)
+  }
+}
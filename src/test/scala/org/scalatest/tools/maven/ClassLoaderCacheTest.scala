@@ -0,0 +1,100 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import java.util.{Arrays, Collections}
+import org.apache.maven.execution.{AbstractExecutionListener, DefaultMavenExecutionRequest, ExecutionEvent}
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+final class ClassLoaderCacheTest extends JUnit3Suite with Matchers {
+  val jar = new File(".").toURI.toURL
+  val noJars = Collections.emptyList[java.net.URL]()
+
+  def testModulesShareTheLoaderOfTheSameJars {
+    val session = new Object
+    val a = ClassLoaderCache.acquire(session, "deps", noJars, "a", Arrays.asList(jar))
+    val b = ClassLoaderCache.acquire(session, "deps", noJars, "b", Arrays.asList(jar))
+    a.loader should not be theSameInstanceAs(b.loader)
+    a.loader.getParent should be theSameInstanceAs (b.loader.getParent)
+    val other = ClassLoaderCache.acquire(session, "other deps", noJars, "c", noJars)
+    other.loader should not be theSameInstanceAs(a.loader.getParent)
+    a.close()
+    b.close()
+    other.close()
+
+    val again = ClassLoaderCache.acquire(session, "deps", noJars, "a", Arrays.asList(jar))
+    again.loader.getParent should be theSameInstanceAs (b.loader.getParent)
+    again.close()
+    ClassLoaderCache.endSession(session)
+  }
+
+  def testLoadersAreClosedWhenTheSessionEnds {
+    val session = new Object
+    val before = ClassLoaderCache.size
+    val idle = ClassLoaderCache.acquire(session, "deps", noJars, "a", Arrays.asList(jar))
+    idle.close()
+    val inUse = ClassLoaderCache.acquire(session, "other deps", noJars, "b", noJars)
+    ClassLoaderCache.size should be(before + 3)
+
+    ClassLoaderCache.endSession(session)
+    ClassLoaderCache.size should be(before + 1)
+    inUse.close()
+    ClassLoaderCache.size should be(before)
+
+    val late = ClassLoaderCache.acquire(session, "deps", noJars, "a", noJars)
+    late.close()
+    ClassLoaderCache.size should be(before)
+  }
+
+  def testANewSessionEndsThePreviousOne {
+    val first = new Object
+    ClassLoaderCache.acquire(first, "deps", noJars, "a", noJars).close()
+    val before = ClassLoaderCache.size
+    val lease = ClassLoaderCache.acquire(new Object, "deps", noJars, "a", noJars)
+    ClassLoaderCache.size should be(before)
+    lease.close()
+  }
+
+  def testTheSessionEndsWithTheBuild {
+    var ended = 0
+    val request = new DefaultMavenExecutionRequest
+    request.setExecutionListener(new AbstractExecutionListener {
+      override def sessionEnded(event: ExecutionEvent) { ended += 1 }
+    })
+    SessionEndListener.register(request)
+    SessionEndListener.register(request)
+    ClassLoaderCache.acquire(request, "deps", noJars, "a", Arrays.asList(jar)).close()
+    val cached = ClassLoaderCache.size
+
+    request.getExecutionListener.sessionEnded(null)
+    ended should be(1)
+    ClassLoaderCache.size should be(cached - 2)
+  }
+
+  def testWithoutASessionNothingIsCached {
+    val before = ClassLoaderCache.size
+    ClassLoaderCache.acquire(null, "deps", noJars, "a", Arrays.asList(jar)).close()
+    ClassLoaderCache.size should be(before)
+  }
+
+  def testChecksumFollowsTheContents {
+    val file = Files.createTempFile("checksum", ".jar").toFile
+    MojoUtils.writeFully(file, "one")
+    val one = MojoUtils.checksum(file)
+    MojoUtils.checksum(file) should be(one)
+    MojoUtils.writeFully(file, "two")
+    file.setLastModified(file.lastModified + 2000)
+    MojoUtils.checksum(file) should not be (one)
+  }
+
+  def testKeepsABoundedNumberOfChecksums {
+    val file = Files.createTempFile("checksum", ".jar").toFile
+    MojoUtils.writeFully(file, "one")
+    for (i <- 0 to MojoUtils.MAX_CHECKSUMS) {
+      file.setLastModified(1000000000000L + i * 1000L)
+      MojoUtils.checksum(file)
+    }
+    MojoUtils.cachedChecksums should be(MojoUtils.MAX_CHECKSUMS)
+  }
+}
@@ -0,0 +1,83 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+final class ContainerResourcesTest extends JUnit3Suite with Matchers {
+  private val GB = 1L << 30
+
+  // A file system root with the given files, by path relative to it
+  private def root(files: (String, String)*) = {
+    val dir = Files.createTempDirectory("cgroup").toFile
+    for ((path, contents) <- files) {
+      val file = new File(dir, path)
+      file.getParentFile.mkdirs()
+      MojoUtils.writeFully(file, contents)
+    }
+    dir
+  }
+
+  def testReadsTheLimitsOfCgroupV2 {
+    val dir = root(
+      "proc/self/cgroup" -> "0::/kubepods/pod1\n",
+      "sys/fs/cgroup/cgroup.controllers" -> "cpu memory\n",
+      "sys/fs/cgroup/kubepods/pod1/cpu.max" -> "250000 100000\n",
+      "sys/fs/cgroup/kubepods/pod1/memory.max" -> "max\n",
+      "sys/fs/cgroup/kubepods/memory.max" -> s"${4 * GB}\n")
+    val resources = ContainerResources.read(dir, 16, 64 * GB)
+    resources.cpus should be(3)
+    resources.memory should be(4 * GB)
+    resources.source should be("cgroup v2")
+  }
+
+  def testReadsTheLimitsOfCgroupV1 {
+    val dir = root(
+      "proc/self/cgroup" -> "5:memory:/docker/abc\n4:cpu,cpuacct:/docker/abc\n",
+      "sys/fs/cgroup/cpu,cpuacct/cpu.cfs_quota_us" -> "200000\n",
+      "sys/fs/cgroup/cpu,cpuacct/cpu.cfs_period_us" -> "100000\n",
+      "sys/fs/cgroup/memory/memory.limit_in_bytes" -> s"${2 * GB}\n")
+    val resources = ContainerResources.read(dir, 16, 64 * GB)
+    resources.cpus should be(2)
+    resources.memory should be(2 * GB)
+    resources.source should be("cgroup v1")
+  }
+
+  def testNoLimitsLeaveTheMachine {
+    val dir = root(
+      "proc/self/cgroup" -> "4:cpu,cpuacct:/\n3:memory:/\n",
+      "sys/fs/cgroup/cpu,cpuacct/cpu.cfs_quota_us" -> "-1\n",
+      "sys/fs/cgroup/cpu,cpuacct/cpu.cfs_period_us" -> "100000\n",
+      "sys/fs/cgroup/memory/memory.limit_in_bytes" -> "9223372036854771712\n")
+    val resources = ContainerResources.read(dir, 8, 32 * GB)
+    resources.cpus should be(8)
+    resources.memory should be(32 * GB)
+    ContainerResources.read(root(), 8, 0).source should be("host")
+
+    // Files some hosts leave empty or unreadable
+    val empty = ContainerResources.read(root(
+      "proc/self/cgroup" -> "1:cpu:/\n",
+      "sys/fs/cgroup/cpu/cpu.cfs_quota_us" -> "",
+      "sys/fs/cgroup/cpu/cpu.cfs_period_us" -> "",
+      "sys/fs/cgroup/memory/memory.limit_in_bytes" -> "n/a"), 8, 32 * GB)
+    empty.cpus should be(8)
+    empty.memory should be(32 * GB)
+  }
+
+  def testSizesForksHeapAndThreads {
+    val resources = new ContainerResources(8, 8 * GB, "cgroup v2")
+    resources.forks(GB) should be(4)
+    resources.forkHeap(4, GB) should be(1344L << 20)
+    resources.threads(4) should be(2)
+
+    // Memory rather than CPUs limits the forks
+    val small = new ContainerResources(8, 2 * GB, "cgroup v2")
+    small.forks(GB) should be(2)
+    small.forkHeap(2, GB) should be(384L << 20)
+
+    val unknown = new ContainerResources(4, 0, "host")
+    unknown.forks(GB) should be(2)
+    unknown.forkHeap(2, GB) should be(0L)
+  }
+}
@@ -0,0 +1,27 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermissions
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+final class DaemonMainTest extends JUnit3Suite with Matchers {
+
+  def testKeepsTheSecretNextToThePortFile {
+    DaemonMain.secretFile(new File("/daemons/abc.port")) should be(new File("/daemons/abc.secret"))
+    new DaemonClient(new File("/daemons"), "abc").secretFile() should be(new File("/daemons/abc.secret"))
+  }
+
+  def testPublishesFilesOnlyTheOwnerCanRead {
+    val file = new File(Files.createTempDirectory("daemons").toFile, "abc.secret")
+    DaemonMain.publish(file, "first")
+    DaemonMain.publish(file, "second")
+    DaemonMain.readPublished(file) should be("second")
+    file.getParentFile.list.toList should be(List("abc.secret"))
+    if (!System.getProperty("os.name").startsWith("Windows")) {
+      PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath)) should be("rw-------")
+    }
+    DaemonMain.readPublished(new File(file.getParentFile, "nonesuch")) should be(null)
+  }
+}
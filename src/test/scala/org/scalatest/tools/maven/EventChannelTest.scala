@@ -0,0 +1,100 @@
+package org.scalatest.tools.maven
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+import java.net.{InetAddress, Socket}
+import org.scalatest.events.{Ordinal, RunCompleted, RunStarting, SuiteCompleted, SuiteStarting, TestFailed, TestStarting, TestSucceeded}
+import org.scalatest.ConfigMap
+import org.scalatest.matchers.should.Matchers
+import org.scalatest.tools.maven.EventChannel.{Event, EventInput, EventOutput, Kind}
+import org.scalatestplus.junit.JUnit3Suite
+import scala.collection.JavaConverters._
+
+final class EventChannelTest extends JUnit3Suite with Matchers {
+  private def failed(suite: String, test: String, message: String) =
+    new Event(Kind.TEST_FAILED, suite, suite, test, 12, message, 0, "main", -1)
+
+  private def succeeded(suite: String, test: String) =
+    new Event(Kind.TEST_SUCCEEDED, suite, suite, test, 3, null, 0, "main", -1)
+
+  def testEventsSurviveTheRoundTrip {
+    val bytes = new ByteArrayOutputStream
+    val out = new EventOutput(bytes, -1)
+    out.write(new Event(Kind.RUN_STARTING, null, null, null, -1, null, 100000, null, -1))
+    out.write(failed("a.HelloSpec", "says héllo", "1 did not equal 2"))
+    out.write(new Event(Kind.SUITE_COMPLETED, "a.HelloSpec", "a.HelloSpec", null, 300000L, null, 0, "main", -1))
+    out.write(new Event(Kind.RUN_COMPLETED, null, null, null, -1, null, 0, null, -1))
+    out.close()
+
+    val in = new EventInput(new ByteArrayInputStream(bytes.toByteArray))
+    val run = in.read()
+    run.kind should be(Kind.RUN_STARTING)
+    run.testCount should be(100000)
+    val test = in.read()
+    (test.kind, test.suiteId, test.suiteClassName, test.testName, test.duration, test.message) should be(
+      (Kind.TEST_FAILED, "a.HelloSpec", "a.HelloSpec", "says héllo", 12L, "1 did not equal 2"))
+    val suite = in.read()
+    (suite.kind, suite.suiteClassName, suite.testName, suite.duration) should be((Kind.SUITE_COMPLETED, "a.HelloSpec", null, 300000L))
+    in.read().duration should be(-1L)
+    in.read() should be(null)
+  }
+
+  def testNamesAreSentOnce {
+    def size(events: Seq[Event]) = {
+      val bytes = new ByteArrayOutputStream
+      val out = new EventOutput(bytes, -1)
+      events.foreach(out.write)
+      out.close()
+      bytes.size
+    }
+    val once = size(Seq(succeeded("org.example.SomeLongSuiteName", "some long test name")))
+    val twice = size(Seq.fill(2)(succeeded("org.example.SomeLongSuiteName", "some long test name")))
+    (twice - once) should be <= 6
+  }
+
+  def testDeliversTheEventsOfEveryConnection {
+    val events = new RunEvents
+    val channel = new EventChannel(events)
+    for (fork <- 1 to 2) {
+      val socket = new Socket(InetAddress.getLoopbackAddress, channel.getPort)
+      val out = new EventOutput(socket.getOutputStream, fork)
+      out.write(succeeded("a.Spec" + fork, "works"))
+      out.write(failed("a.Spec" + fork, "breaks", "boom\nat line 3"))
+      out.write(new Event(Kind.SUITE_COMPLETED, "a.Spec" + fork, "a.Spec" + fork, null, 40, null, 0, "main", -1))
+      out.close()
+    }
+    channel.close()
+
+    events.count(Kind.TEST_SUCCEEDED) should be(2)
+    events.suites.asScala.map(suite => (suite.suiteClassName, suite.fork, suite.thread)) should contain only (
+      ("a.Spec1", 1, "main"), ("a.Spec2", 2, "main"))
+    events.suiteDurations.keySet should contain only ("a.Spec1", "a.Spec2")
+    events.failures.size should be(2)
+    RunEvents.describe(events.failures.get(0)) should fullyMatch regex "a\\.Spec[12]: breaks: boom"
+  }
+
+  def testReporterStreamsScalaTestEvents {
+    val events = new RunEvents
+    val channel = new EventChannel(events)
+    System.setProperty(EventChannel.PORT_PROPERTY, channel.getPort.toString)
+    val reporter = try new EventReporter finally System.clearProperty(EventChannel.PORT_PROPERTY)
+    val ordinal = new Ordinal(1)
+    reporter(RunStarting(ordinal, 2, ConfigMap.empty))
+    reporter(SuiteStarting(ordinal, "HelloSpec", "a.HelloSpec", Some("a.HelloSpec")))
+    reporter(TestStarting(ordinal, "HelloSpec", "a.HelloSpec", Some("a.HelloSpec"), "works", "works"))
+    reporter(TestSucceeded(ordinal, "HelloSpec", "a.HelloSpec", Some("a.HelloSpec"), "works", "works", Vector.empty, Some(5L)))
+    reporter(TestFailed(ordinal, "1 did not equal 2", "HelloSpec", "a.HelloSpec", Some("a.HelloSpec"), "breaks", "breaks",
+      Vector.empty, Vector.empty, None, Some(7L)))
+    reporter(SuiteCompleted(ordinal, "HelloSpec", "a.HelloSpec", Some("a.HelloSpec"), Some(20L)))
+    reporter(RunCompleted(ordinal, Some(25L)))
+    channel.close()
+
+    events.count(Kind.TEST_STARTING) should be(1)
+    events.count(Kind.RUN_COMPLETED) should be(1)
+    events.suiteDurations.get("a.HelloSpec") should be(20L)
+    RunEvents.describe(events.failures.get(0)) should be("a.HelloSpec: breaks: 1 did not equal 2")
+  }
+
+  def testReporterWithoutAChannelDoesNothing {
+    new EventReporter().apply(RunCompleted(new Ordinal(1)))
+  }
+}
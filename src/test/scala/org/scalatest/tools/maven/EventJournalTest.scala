@@ -0,0 +1,126 @@
+package org.scalatest.tools.maven
+
+import java.io.{File, FileOutputStream, RandomAccessFile}
+import java.nio.file.Files
+import org.scalatest.events.{Ordinal, RunCompleted, RunStarting, SuiteCompleted, SuiteStarting, TestFailed, TestSucceeded}
+import org.scalatest.ConfigMap
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+import scala.collection.JavaConverters._
+
+final class EventJournalTest extends JUnit3Suite with Matchers {
+  def tempDir() = Files.createTempDirectory("journal").toFile
+
+  // Records the run of one suite as the fork with the given number would
+  private def record(directory: File, fork: Int, suite: String, fails: Boolean) {
+    System.setProperty(EventJournal.DIRECTORY_PROPERTY, directory.getPath)
+    System.setProperty(EventChannel.FORK_PROPERTY, fork.toString)
+    val reporter = try new JournalReporter finally {
+      System.clearProperty(EventJournal.DIRECTORY_PROPERTY)
+      System.clearProperty(EventChannel.FORK_PROPERTY)
+    }
+    val ordinal = new Ordinal(1)
+    reporter(RunStarting(ordinal, 2, ConfigMap.empty))
+    reporter(SuiteStarting(ordinal, suite, "a." + suite, Some("a." + suite)))
+    reporter(TestSucceeded(ordinal, suite, "a." + suite, Some("a." + suite), "works", "works", Vector.empty, Some(5L)))
+    if (fails) {
+      reporter(TestFailed(ordinal, "1 did not equal 2", suite, "a." + suite, Some("a." + suite), "breaks", "breaks",
+        Vector.empty, Vector.empty, None, Some(7L)))
+    } else {
+      reporter(TestSucceeded(ordinal, suite, "a." + suite, Some("a." + suite), "also works", "also works", Vector.empty, Some(5L)))
+    }
+    reporter(SuiteCompleted(ordinal, suite, "a." + suite, Some("a." + suite), Some(20L)))
+    reporter(RunCompleted(ordinal, Some(25L)))
+  }
+
+  private def replay(directory: File) = {
+    val output = new File(tempDir(), "replayed.txt")
+    val result = JournalReplay.replay(directory, Array("-fW", output.getPath))
+    (result, new String(Files.readAllBytes(output.toPath), "UTF-8"))
+  }
+
+  def testReplaysTheRunsOfAllForksAsOne {
+    val journal = tempDir()
+    record(journal, 0, "HelloSpec", fails = false)
+    record(journal, 1, "GoodbyeSpec", fails = false)
+    EventJournal.files(journal).map(_.getName.take(8)).toList should be(List("fork-000", "fork-001"))
+
+    val (result, output) = replay(journal)
+    result should be(0)
+    output should include("Expected test count is: 4")
+    output should include("Suite Completed - HelloSpec")
+    output should include("Suite Completed - GoodbyeSpec")
+    output should include("Suites: completed 2, aborted 0")
+    output should include("Tests: succeeded 4, failed 0")
+  }
+
+  def testReportsTheFailuresOfTheRecordedRun {
+    val journal = tempDir()
+    record(journal, 0, "HelloSpec", fails = true)
+    val (result, output) = replay(journal)
+    result should be(EventJournal.RECORDED_FAILURES)
+    output should include("TEST FAILED - HelloSpec: breaks: 1 did not equal 2")
+  }
+
+  def testReadsTheCompleteRecordsOfACutOffFile {
+    val journal = tempDir()
+    val out = new EventJournal.Output(journal, 3)
+    for (i <- 1 to 100) out.write(Array.fill(i)(i.toByte))
+    out.flush()
+    out.write(Array.fill(1000)(1.toByte))
+    out.flush()
+    val file = EventJournal.files(journal).head
+    new RandomAccessFile(file, "rw").setLength(file.length - 10)
+
+    val in = new EventJournal.Input(file)
+    val records = Iterator.continually(in.read()).takeWhile(_ != null).toList
+    in.close()
+    records.size should be(100)
+    records.last.toList should be(List.fill(100)(100.toByte))
+  }
+
+  def testStopsAtACorruptTailOfACutOffFile {
+    val journal = tempDir()
+    val out = new EventJournal.Output(journal, 4)
+    for (i <- 1 to 100) out.write(Array.fill(i)(i.toByte))
+    out.flush()
+    val file = EventJournal.files(journal).head
+    val complete = file.length
+    out.write(Array.fill(1000)(1.toByte))
+    out.flush()
+    // A fork killed while its file system was writing the last block
+    val raf = new RandomAccessFile(file, "rw")
+    raf.seek(complete)
+    raf.write(Array.fill(20)(0xff.toByte))
+    raf.setLength(complete + 20)
+    raf.close()
+
+    val in = new EventJournal.Input(file)
+    val records = Iterator.continually(in.read()).takeWhile(_ != null).toList
+    in.read() should be(null)
+    in.close()
+    records.size should be(100)
+  }
+
+  def testCannotReplayWithoutAJournal {
+    val journal = tempDir()
+    JournalReplay.replay(journal, Array("-o")) should be(EventJournal.CANNOT_REPLAY)
+    new FileOutputStream(new File(journal, "run-1" + EventJournal.SUFFIX)).close()
+    JournalReplay.replay(journal, Array("-o")) should be(EventJournal.CANNOT_REPLAY)
+  }
+
+  def testClearRemovesTheJournal {
+    val journal = tempDir()
+    record(journal, -1, "HelloSpec", fails = false)
+    EventJournal.files(journal).head.getName should startWith("run-")
+    EventJournal.clear(journal)
+    EventJournal.files(journal) should be(empty)
+  }
+
+  def testKeepsOnlyTheReporterArguments {
+    val args = Array("-R", "target/classes", "-o", "-s", "a.HelloSpec", "-fW", "out.txt", "-h", "html", "-Y", "my.css",
+      "-u", "xml", "-C", "a.Reporter", "-DfilePath=x", "-eD")
+    AbstractScalaTestMojo.reporterArguments(args).asScala should be(
+      List("-o", "-fW", "out.txt", "-h", "html", "-Y", "my.css", "-u", "xml", "-C", "a.Reporter", "-eD"))
+  }
+}
@@ -0,0 +1,44 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import java.util.Arrays
+import java.util.jar.{Attributes, JarFile}
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+final class ForkClasspathTest extends JUnit3Suite with Matchers {
+  val dir = Files.createTempDirectory("classpath").toFile
+
+  def testPathingJarListsClasspathAsUrls {
+    val classes = new File(dir, "my classes")
+    classes.mkdirs()
+    val lib = new File(dir, "lib.jar")
+    lib.createNewFile()
+
+    val jar = ForkClasspath.pathingJar(dir, Arrays.asList(classes.getPath, lib.getPath, new File(dir, "missing").getPath))
+    val file = new JarFile(jar)
+    try {
+      val classPath = file.getManifest.getMainAttributes.getValue(Attributes.Name.CLASS_PATH).split(" ")
+      classPath should be(Array(classes.toURI.toString, lib.toURI.toString, new File(dir, "missing").toURI.toString + "/"))
+      classPath(0) should include("my%20classes/")
+    } finally {
+      file.close()
+    }
+  }
+
+  def testFilesAreReusedUntilTheClasspathChanges {
+    val jar = ForkClasspath.pathingJar(dir, Arrays.asList("a.jar", "b.jar"))
+    jar.setLastModified(1000L)
+    ForkClasspath.pathingJar(dir, Arrays.asList("a.jar", "b.jar")) should be(jar)
+    jar.lastModified should be(1000L)
+    ForkClasspath.pathingJar(dir, Arrays.asList("a.jar", "c.jar")) should not be (jar)
+    dir.listFiles.filter(_.getName.endsWith(".tmp")) should be(empty)
+  }
+
+  def testArgFileQuotesTheClasspath {
+    val args = ForkClasspath.argFile(dir, Arrays.asList("a.jar", "C:\\lib\\b.jar", "dir with space"))
+    MojoUtils.readFully(args) should be(
+      "-classpath\n\"a.jar" + File.pathSeparator + "C:\\\\lib\\\\b.jar" + File.pathSeparator + "dir with space\"\n")
+  }
+}
@@ -0,0 +1,73 @@
+package org.scalatest.tools.maven
+
+import java.io.{ByteArrayOutputStream, File}
+import java.nio.file.Files
+import org.codehaus.plexus.util.cli.{CommandLineTimeOutException, Commandline}
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+object ForkLauncherTestMain {
+  def main(args: Array[String]): Unit = {
+    args(0) match {
+      case "lines" =>
+        for (i <- 1 to args(1).toInt) {
+          if (i % 2 == 0) System.out.println("line " + i) else System.err.println("line " + i)
+        }
+      case "exit" =>
+        System.exit(args(1).toInt)
+      case "sleep" =>
+        Thread.sleep(args(1).toLong)
+    }
+  }
+}
+
+final class ForkLauncherTest extends JUnit3Suite with Matchers {
+  private def java(args: String*): Commandline = {
+    val cli = new Commandline
+    cli.setExecutable(new File(System.getProperty("java.home"), "bin/java").getPath)
+    cli.createArg().setValue("-cp")
+    cli.createArg().setValue(System.getProperty("java.class.path"))
+    cli.createArg().setValue(ForkLauncherTestMain.getClass.getName.stripSuffix("$"))
+    args.foreach(cli.createArg().setValue(_))
+    cli
+  }
+
+  def testPumpsAllOutputToTheConsoleInWholeLines {
+    val console = new ByteArrayOutputStream
+    ForkLauncher.execute(java("lines", "100000"), null, console, 0) should be(0)
+    val lines = console.toString("UTF-8").split("\n")
+    lines.length should be(100000)
+    lines.toSet should be((1 to 100000).map("line " + _).toSet)
+  }
+
+  def testAppendsOutputToTheFile {
+    val file = Files.createTempFile("fork", ".txt").toFile
+    Files.write(file.toPath, "before\n".getBytes("UTF-8"))
+    val console = new ByteArrayOutputStream
+    ForkLauncher.execute(java("lines", "2"), file, console, 0) should be(0)
+    new String(Files.readAllBytes(file.toPath), "UTF-8").split("\n").toList should be(List("before", "line 1", "line 2"))
+    console.size should be(0)
+  }
+
+  def testReturnsTheExitCode {
+    ForkLauncher.execute(java("exit", "3"), null, new ByteArrayOutputStream, 0) should be(3)
+  }
+
+  def testTimesOut {
+    an[CommandLineTimeOutException] should be thrownBy {
+      ForkLauncher.execute(java("sleep", "60000"), null, new ByteArrayOutputStream, 1)
+    }
+  }
+
+  def testTellsObserversAboutTheProcess {
+    var pid = 0L
+    var hasEnded = false
+    val observer = new ForkLauncher.Observer {
+      def started(process: Process): Unit = pid = ForkLauncher.pid(process)
+      def ended(): Unit = hasEnded = true
+    }
+    ForkLauncher.execute(java("exit", "0"), null, new ByteArrayOutputStream, 0, observer) should be(0)
+    pid should be > 0L
+    hasEnded should be(true)
+  }
+}
@@ -0,0 +1,94 @@
+package org.scalatest.tools.maven
+
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+import java.util.concurrent.atomic.AtomicReference
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+final class ForkLimiterTest extends JUnit3Suite with Matchers {
+  private val GB = 1L << 30
+
+  // Acquires on a thread of its own, with the permit in the result once it is granted
+  private def acquireLater(limiter: ForkLimiter, limits: ForkLimiter.Limits, threads: Int, heap: Long) = {
+    val permit = new AtomicReference[ForkLimiter#Permit]
+    val granted = new CountDownLatch(1)
+    val thread = new Thread() {
+      override def run(): Unit = {
+        permit.set(limiter.acquire(limits, threads, heap))
+        granted.countDown()
+      }
+    }
+    thread.setDaemon(true)
+    thread.start()
+    (permit, granted)
+  }
+
+  def testForksWaitForTheLimits {
+    val limiter = new ForkLimiter
+    val limits = new ForkLimiter.Limits(2, 0, 0)
+    val first = limiter.acquire(limits, 1, 0)
+    val second = limiter.acquire(limits, 1, 0)
+    val (third, granted) = acquireLater(limiter, limits, 1, 0)
+    granted.await(200, TimeUnit.MILLISECONDS) should be(false)
+    first.release()
+    granted.await(5, TimeUnit.SECONDS) should be(true)
+    third.get.waitedMillis should be >= 150L
+    first.release()
+    limiter.usage should startWith("2 forks")
+  }
+
+  def testThreadsAndHeapAreLimitedToo {
+    val limiter = new ForkLimiter
+    val limits = new ForkLimiter.Limits(0, 8, 4 * GB)
+    val big = limiter.acquire(limits, 6, GB)
+    val (threads, threadsGranted) = acquireLater(limiter, limits, 4, GB)
+    threadsGranted.await(100, TimeUnit.MILLISECONDS) should be(false)
+    big.release()
+    threadsGranted.await(5, TimeUnit.SECONDS) should be(true)
+    val (heap, heapGranted) = acquireLater(limiter, limits, 1, 4 * GB)
+    heapGranted.await(100, TimeUnit.MILLISECONDS) should be(false)
+    threads.get.release()
+    heapGranted.await(5, TimeUnit.SECONDS) should be(true)
+    limiter.usage should be("1 forks with 1 test threads and 4096 MB of heap")
+  }
+
+  def testForksStartInTheOrderTheyAsked {
+    val limiter = new ForkLimiter
+    val limits = new ForkLimiter.Limits(0, 4, 0)
+    val running = limiter.acquire(limits, 3, 0)
+    val (large, largeGranted) = acquireLater(limiter, limits, 4, 0)
+    largeGranted.await(100, TimeUnit.MILLISECONDS) should be(false)
+    // Fits next to the running fork, but asked after the large one
+    val (small, smallGranted) = acquireLater(limiter, limits, 1, 0)
+    smallGranted.await(100, TimeUnit.MILLISECONDS) should be(false)
+    running.release()
+    largeGranted.await(5, TimeUnit.SECONDS) should be(true)
+    smallGranted.await(100, TimeUnit.MILLISECONDS) should be(false)
+    large.get.release()
+    smallGranted.await(5, TimeUnit.SECONDS) should be(true)
+  }
+
+  def testAForkOverTheLimitsRunsAlone {
+    val limiter = new ForkLimiter
+    limiter.acquire(new ForkLimiter.Limits(0, 4, GB), 16, 8 * GB).release()
+  }
+
+  def testSessionsShareALimiter {
+    val session = new Object
+    ForkLimiter.forSession(session) should be theSameInstanceAs ForkLimiter.forSession(session)
+    ForkLimiter.forSession(null) should not be theSameInstanceAs(ForkLimiter.forSession(null))
+  }
+
+  def testParsesSizesAndLimits {
+    MojoUtils.parseMemorySize("512m") should be(512L << 20)
+    MojoUtils.parseMemorySize("2G") should be(2 * GB)
+    MojoUtils.parseMemorySize("1024") should be(1024L)
+    MojoUtils.parseMemorySize(null) should be(0L)
+    MojoUtils.maxHeap("-Xms1g -Xmx2g -Dx=y") should be(2 * GB)
+    MojoUtils.maxHeap("-Xmx2g -XX:MaxHeapSize=3g") should be(3 * GB)
+    MojoUtils.maxHeap("-ea") should be(0L)
+    MojoUtils.maxHeap(null) should be(0L)
+    MojoUtils.parseLimit("") should be(0)
+    MojoUtils.parseLimit("3") should be(3)
+  }
+}
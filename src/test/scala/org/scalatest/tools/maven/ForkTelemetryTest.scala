@@ -0,0 +1,68 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+final class ForkTelemetryTest extends JUnit3Suite with Matchers {
+  private def tempDir() = Files.createTempDirectory("telemetry").toFile
+
+  private def telemetry(gcLog: String) = {
+    val dir = tempDir()
+    val log = new File(dir, "fork-gc.log")
+    MojoUtils.writeFully(log, gcLog)
+    val telemetry = new ForkTelemetry("fork-0", log, new File(dir, "proc"))
+    telemetry.ended()
+    telemetry
+  }
+
+  def testReadsUnifiedGcLogs {
+    telemetry(
+      """[0.004s][info][gc] Using G1
+        |[0.512s][info][gc] GC(0) Pause Young (Normal) (G1 Evacuation Pause) 24M->3M(256M) 2.500ms
+        |[0.900s][info][gc] GC(1) Pause Young (Concurrent Start) (G1 Humongous Allocation) 120M->80M(256M) 7.500ms
+        |[0.950s][info][gc] GC(2) Concurrent Mark Cycle 30.123ms
+        |[1.200s][info][gc] GC(3) Pause Full (System.gc()) 90M->2048K(256M) 10.000ms
+        |""".stripMargin).summary should be(
+      "fork-0: 3 GC pauses, 20.0 ms in total and 10.0 ms at most, 80 MB of heap after GC at most")
+  }
+
+  def testReadsJava8GcLogs {
+    telemetry(
+      """0.512: [GC (Allocation Failure)  65536K->10240K(251392K), 0.0025000 secs]
+        |1.024: [Full GC (Ergonomics)  80000K->20480K(251392K), 0.0500000 secs]
+        |""".stripMargin).summary should be(
+      "fork-0: 2 GC pauses, 52.5 ms in total and 50.0 ms at most, 20 MB of heap after GC at most")
+  }
+
+  def testSamplesTheProcess {
+    val process = tempDir()
+    new File(process, "fd").mkdirs()
+    for (fd <- 0 until 5) new File(process, "fd/" + fd).createNewFile()
+    MojoUtils.writeFully(new File(process, "status"),
+      "Name:\tjava\nVmPeak:\t 4000000 kB\nVmHWM:\t  204800 kB\nVmRSS:\t  102400 kB\nThreads:\t23\n")
+    val telemetry = new ForkTelemetry("fork", new File(process, "none.log"), tempDir())
+    telemetry.sample(process)
+    MojoUtils.writeFully(new File(process, "status"), "VmHWM:\t  204800 kB\nVmRSS:\t  1024 kB\nThreads:\t7\n")
+    telemetry.sample(process)
+    telemetry.ended()
+    telemetry.summary should be("fork: no GC pauses logged; peak RSS 200 MB, 23 threads and 5 open files at most")
+  }
+
+  def testWritesJson {
+    val dir = tempDir()
+    ForkTelemetry.write(dir, java.util.Arrays.asList(telemetry("")))
+    MojoUtils.readFully(new File(dir, ForkTelemetry.JSON_FILE)) should include(
+      "{\"fork\": \"fork-0\", \"gcPauses\": 0, \"gcPauseMillis\": 0.000")
+  }
+
+  def testLogsGcTheWayTheJvmTakesIt {
+    new ForkTelemetry("fork", new File("/tmp/gc.log"), null).jvmArguments(8) should be(java.util.Arrays.asList("-Xloggc:/tmp/gc.log"))
+    new ForkTelemetry("fork", new File("/tmp/gc.log"), null).jvmArguments(17) should be(
+      java.util.Arrays.asList("-Xlog:gc:file=\"/tmp/gc.log\""))
+    ClassDataSharing.majorVersion("1.8.0_392") should be(8)
+    ClassDataSharing.majorVersion("17.0.9") should be(17)
+    ClassDataSharing.majorVersion(null) should be(0)
+  }
+}
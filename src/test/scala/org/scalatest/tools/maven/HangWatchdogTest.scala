@@ -0,0 +1,94 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+import org.apache.maven.plugin.logging.SystemStreamLog
+import org.scalatest.matchers.should.Matchers
+import org.scalatest.tools.maven.EventChannel.{Event, Kind}
+import org.scalatestplus.junit.JUnit3Suite
+
+final class HangWatchdogTest extends JUnit3Suite with Matchers {
+  private val java = new File(System.getProperty("java.home"), "bin/java").getPath
+
+  private def event(kind: Kind, suite: String, test: String = null, fork: Int = -1) =
+    new Event(kind, suite, suite, test, if (kind.hasDuration) 1 else -1, null, 0, "main", fork)
+
+  private def sleeper() =
+    new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+      ForkLauncherTestMain.getClass.getName.stripSuffix("$"), "sleep", "60000").start()
+
+  def testStopsAForkStuckInASuite {
+    val dumps = Files.createTempDirectory("hangs").toFile
+    val watchdog = new HangWatchdog(1, 0, 2, 0, HangWatchdog.jcmd(java), dumps, new SystemStreamLog)
+    val process = sleeper()
+    try {
+      val observer = watchdog.observer(-1)
+      observer.started(process)
+      watchdog.event(event(Kind.SUITE_STARTING, "demo.StuckSpec"))
+      process.waitFor(30, TimeUnit.SECONDS) should be(true)
+      observer.ended()
+      watchdog.hangs().size should be(1)
+      watchdog.hangs().get(0) should startWith("suite demo.StuckSpec")
+      if (HangWatchdog.jcmd(java) != null) {
+        new File(dumps, "demo.StuckSpec-fork-dump-1.txt").isFile should be(true)
+        new File(dumps, "demo.StuckSpec-fork-dump-2.txt").isFile should be(true)
+      }
+    } finally {
+      process.destroyForcibly()
+      watchdog.close()
+    }
+  }
+
+  def testLeavesFinishedSuitesAndOtherForksAlone {
+    val watchdog = new HangWatchdog(1, 1, 1, 0, null, Files.createTempDirectory("hangs").toFile, new SystemStreamLog)
+    val process = sleeper()
+    try {
+      watchdog.observer(2).started(process)
+      watchdog.event(event(Kind.SUITE_STARTING, "org.scalatest.tools.DiscoverySuite", fork = 2))
+      watchdog.event(event(Kind.SUITE_STARTING, "demo.FastSpec", fork = 2))
+      watchdog.event(event(Kind.TEST_STARTING, "demo.FastSpec", "is fast", fork = 2))
+      watchdog.event(event(Kind.TEST_SUCCEEDED, "demo.FastSpec", "is fast", fork = 2))
+      watchdog.event(event(Kind.SUITE_COMPLETED, "demo.FastSpec", fork = 2))
+      // Running in a fork the watchdog has no process for
+      watchdog.event(event(Kind.SUITE_STARTING, "demo.OtherSpec", fork = 3))
+      watchdog.check(System.currentTimeMillis() + 60000)
+      process.waitFor(2, TimeUnit.SECONDS) should be(false)
+      watchdog.hangs() should be(empty)
+    } finally {
+      process.destroyForcibly()
+      watchdog.close()
+    }
+  }
+
+  def testTimesOutOnlyWhatHasATimeout {
+    val watchdog = new HangWatchdog(0, 1, 1, 0, null, Files.createTempDirectory("hangs").toFile, new SystemStreamLog)
+    val process = sleeper()
+    try {
+      watchdog.observer(-1).started(process)
+      watchdog.event(event(Kind.SUITE_STARTING, "demo.LongSpec"))
+      watchdog.check(System.currentTimeMillis() + 60000)
+      process.waitFor(2, TimeUnit.SECONDS) should be(false)
+      watchdog.event(event(Kind.TEST_STARTING, "demo.LongSpec", "never ends"))
+      process.waitFor(30, TimeUnit.SECONDS) should be(true)
+      watchdog.hangs().get(0) should startWith("test \"never ends\" of demo.LongSpec")
+    } finally {
+      process.destroyForcibly()
+      watchdog.close()
+    }
+  }
+
+  def testFindsTheJcmdOfTheJdk {
+    val jdk = Files.createTempDirectory("jdk").toFile
+    new File(jdk, "jre/bin").mkdirs()
+    HangWatchdog.jcmd(new File(jdk, "jre/bin/java").getPath) should be(null)
+    new File(jdk, "bin").mkdirs()
+    new File(jdk, "bin/jcmd").createNewFile()
+    HangWatchdog.jcmd(new File(jdk, "jre/bin/java").getPath).getCanonicalFile should be(new File(jdk, "bin/jcmd").getCanonicalFile)
+    HangWatchdog.jcmd(new File(jdk, "bin/java").getPath) should be(new File(jdk, "bin/jcmd").getAbsoluteFile)
+  }
+
+  def testNamesDumpsAfterTheSuite {
+    HangWatchdog.dumpName(new HangWatchdog.Running(4, "demo.Outer$Inner", "a test", 0, 1000), 2) should be("demo.Outer_Inner-fork-4-dump-2.txt")
+  }
+}
@@ -0,0 +1,69 @@
+package org.scalatest.tools.maven
+
+import java.io.{File, FileOutputStream}
+import java.nio.file.{Files, StandardCopyOption}
+import java.util.{Arrays, Collections, HashMap}
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+import scala.collection.JavaConverters._
+
+final class IncrementalSelectionTest extends JUnit3Suite with Matchers {
+  val mainClasses = new File(classOf[ForkMain].getProtectionDomain.getCodeSource.getLocation.toURI)
+  val pkg = "org/scalatest/tools/maven/"
+
+  // SuiteQueue references ForkMain; DaemonMain references neither
+  val items = Arrays.asList(Arrays.asList("-s", "org.scalatest.tools.maven.SuiteQueue"),
+    Arrays.asList("-s", "org.scalatest.tools.maven.DaemonMain"))
+
+  def classesDirectory() = {
+    val dir = Files.createTempDirectory("incremental").toFile
+    new File(dir, pkg).mkdirs()
+    for (name <- new File(mainClasses, pkg).list if name.startsWith("ForkMain") || name.startsWith("SuiteQueue") || name.startsWith("DaemonMain"))
+      Files.copy(new File(mainClasses, pkg + name).toPath, new File(dir, pkg + name).toPath, StandardCopyOption.REPLACE_EXISTING)
+    dir
+  }
+
+  def digests(dir: File, config: String = "") =
+    new IncrementalSelection(Arrays.asList(dir), Collections.emptyList(), Arrays.asList(config)).digests(items)
+
+  def changed(dir: File, recorded: java.util.Map[String, String]) =
+    IncrementalSelection.changed(items, digests(dir), recorded).asScala.map(_.get(1)).toList
+
+  def testClassFileInfoListsReferences {
+    val in = Files.newInputStream(new File(mainClasses, pkg + "SuiteQueue.class").toPath)
+    val info = try ClassFileInfo.read(in) finally in.close()
+    info.references should contain("org.scalatest.tools.maven.ForkMain")
+    info.references should contain("java.util.LinkedList")
+    info.references should not contain ("org.scalatest.tools.maven.SuiteQueue")
+  }
+
+  def testOnlySuitesReachingAChangedClassRun {
+    val dir = classesDirectory()
+    val recorded = digests(dir)
+    changed(dir, recorded) should be(empty)
+
+    val forkMain = new FileOutputStream(new File(dir, pkg + "ForkMain.class"), true)
+    try forkMain.write(0) finally forkMain.close()
+    changed(dir, recorded) should be(List("org.scalatest.tools.maven.SuiteQueue"))
+  }
+
+  def testResourcesConfigurationAndNewSuitesRunEverything {
+    val dir = classesDirectory()
+    val recorded = digests(dir)
+    IncrementalSelection.changed(items, digests(dir, "argLine=-Xmx1g"), recorded) should have size (2)
+
+    MojoUtils.writeFully(new File(dir, "application.conf"), "a = 1")
+    changed(dir, recorded) should have size (2)
+    changed(dir, new HashMap[String, String]()) should have size (2)
+  }
+
+  def testRecordRoundTrip {
+    val file = new File(Files.createTempDirectory("incremental").toFile, "target/record.properties")
+    IncrementalSelection.readRecord(file) should be(empty)
+    val record = new HashMap[String, String]()
+    record.put("a.BSpec", "0123")
+    IncrementalSelection.writeRecord(file, record)
+    IncrementalSelection.readRecord(file) should be(record)
+  }
+}
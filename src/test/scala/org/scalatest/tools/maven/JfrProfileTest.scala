@@ -0,0 +1,101 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import java.util.Arrays.asList
+import java.util.Collections.emptyList
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+final class JfrProfileTest extends JUnit3Suite with Matchers {
+  private val MB = 1L << 20
+
+  private def frames(methods: String*): java.util.List[Array[String]] =
+    asList(methods.map(m => Array(m.substring(0, m.lastIndexOf('.')), m.substring(m.lastIndexOf('.') + 1))): _*)
+
+  def testSummarizesCpuAllocationsAndLocks {
+    val profile = new JfrProfile(asList("demo.HelloSpec", "demo.SlowSpec"))
+    for (_ <- 1 to 3) {
+      profile.add("jdk.ExecutionSample", frames("demo.Parser.parse", "demo.HelloSpec$$anonfun$1.apply"), "main", null, 1)
+    }
+    profile.add("jdk.ExecutionSample", frames("demo.Slow.compute"), "ScalaTest-main-running-SlowSpec", null, 1)
+    profile.add("jdk.ObjectAllocationInNewTLAB", frames("demo.Parser.parse", "demo.HelloSpec.test"), "main", "byte[]", 8 * MB)
+    profile.add("jdk.JavaMonitorEnter", frames("demo.Cache.get"), "main", "demo.Cache", 2000000000L)
+    // Waiting for work is not contention
+    profile.add("jdk.ThreadPark", frames("sun.misc.Unsafe.park", "java.util.concurrent.locks.LockSupport.park", "demo.Pool.take"),
+      "pool-1", "java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject", 5000000000L)
+    profile.add("jdk.ThreadPark", frames("sun.misc.Unsafe.park", "java.util.concurrent.locks.LockSupport.park", "demo.Store.put"),
+      "main", "java.util.concurrent.locks.ReentrantLock$NonfairSync", 500000000L)
+
+    val summary = profile.summary(10)
+    summary.get(0) should be("Profile of 0 forked JVMs: 4 CPU samples.")
+    summary should contain("   75.0%  demo.Parser.parse")
+    summary should contain("   25.0%  demo.Slow.compute")
+    summary should contain("    8.0 MB  demo.Parser.parse (byte[])")
+    summary should contain("     2.00 s  demo.Cache.get (demo.Cache), 1 waits")
+    summary should contain("     0.50 s  demo.Store.put (java.util.concurrent.locks.ReentrantLock$NonfairSync), 1 waits")
+    summary.toString should not include "demo.Pool.take"
+    summary should contain("   75.0% CPU    8.0 MB  demo.HelloSpec")
+    summary should contain("   25.0% CPU    0.0 MB  demo.SlowSpec")
+  }
+
+  def testPrefersSampledAllocations {
+    val profile = new JfrProfile(emptyList[String])
+    profile.add("jdk.ObjectAllocationInNewTLAB", frames("demo.A.a"), "main", "byte[]", 64 * MB)
+    profile.add("jdk.ObjectAllocationSample", frames("demo.B.b"), "main", "java.lang.String", 2 * MB)
+    val summary = profile.summary(10)
+    summary should contain("    2.0 MB  demo.B.b (java.lang.String)")
+    summary.toString should not include "demo.A.a"
+  }
+
+  def testStartsForksRecordingWithThePluginSettings {
+    val directory = Files.createTempDirectory("profile").toFile
+    val settings = JfrProfile.writeSettings(directory)
+    MojoUtils.readFully(settings) should include("jdk.ExecutionSample")
+    val recording = JfrProfile.recording(directory, "fork-1")
+    recording.getName should be("scalatest-fork-1.jfr")
+    JfrProfile.jvmArguments(recording, settings).get(0) should be(
+      "-XX:StartFlightRecording=dumponexit=true,filename=" + recording.getAbsolutePath + ",settings=" + settings.getAbsolutePath)
+
+    Files.write(recording.toPath, Array[Byte](1))
+    JfrProfile.clear(directory)
+    recording.exists should be(false)
+    settings.exists should be(true)
+  }
+
+  def testNamesArrayTypesAsInSource {
+    JfrProfile.typeName("[B") should be("byte[]")
+    JfrProfile.typeName("[[Ljava.lang.String;") should be("java.lang.String[][]")
+    JfrProfile.typeName("java.lang.String") should be("java.lang.String")
+  }
+
+  def testKnowsWhichJvmsCanRecord {
+    val jdk = Files.createTempDirectory("jdk").toFile
+    new File(jdk, "jre/bin").mkdirs()
+    val java = new File(jdk, "jre/bin/java").getPath
+    JfrProfile.canRecord(java, 17) should be(true)
+    JfrProfile.canRecord(java, 8) should be(false)
+    new File(jdk, "jre/lib").mkdirs()
+    new File(jdk, "jre/lib/jfr.jar").createNewFile()
+    JfrProfile.canRecord(java, 8) should be(true)
+  }
+
+  def testReadsARecording {
+    val jvm = new File(System.getProperty("java.home"), "bin/java").getPath
+    val version = ClassDataSharing.majorVersion(System.getProperty("java.specification.version"))
+    if (JfrProfile.canRecord(jvm, version) && JfrProfile.canRead()) {
+      val directory = Files.createTempDirectory("profile").toFile
+      val recording = JfrProfile.recording(directory, "fork")
+      val command = new java.util.ArrayList[String]
+      command.add(jvm)
+      command.addAll(JfrProfile.jvmArguments(recording, JfrProfile.writeSettings(directory)))
+      command.addAll(asList("-cp", System.getProperty("java.class.path"),
+        ForkLauncherTestMain.getClass.getName.stripSuffix("$"), "lines", "20000"))
+      new ProcessBuilder(command).redirectOutput(new File(directory, "out.txt")).redirectErrorStream(true)
+        .start().waitFor() should be(0)
+      val profile = new JfrProfile(emptyList[String])
+      profile.read(recording)
+      profile.summary(10).get(0) should startWith("Profile of 1 forked JVMs")
+    }
+  }
+}
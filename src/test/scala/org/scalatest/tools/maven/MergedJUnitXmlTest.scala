@@ -0,0 +1,110 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import javax.xml.parsers.DocumentBuilderFactory
+import org.scalatest.matchers.should.Matchers
+import org.scalatest.tools.maven.EventChannel.{Event, Kind}
+import org.scalatestplus.junit.JUnit3Suite
+import org.w3c.dom.Element
+
+final class MergedJUnitXmlTest extends JUnit3Suite with Matchers {
+
+  private def event(kind: Kind, suite: String, test: String = null, fork: Int = -1, message: String = null) =
+    new Event(kind, suite + "-id", suite, test, if (kind.hasDuration) 1500 else -1, message, 0, "main", fork)
+
+  private def suites(file: File): Seq[Element] = {
+    val document = DocumentBuilderFactory.newInstance.newDocumentBuilder.parse(file)
+    val list = document.getDocumentElement.getElementsByTagName("testsuite")
+    (0 until list.getLength).map(list.item(_).asInstanceOf[Element])
+  }
+
+  private def report() = new File(Files.createTempDirectory("junit").toFile, "TEST-scalatest.xml")
+
+  def testMergesTheSuitesOfSeveralForks {
+    val file = report()
+    val xml = new MergedJUnitXml(file, 0)
+    xml.event(event(Kind.SUITE_STARTING, "demo.ASpec", fork = 0))
+    xml.event(event(Kind.SUITE_STARTING, "demo.BSpec", fork = 1))
+    xml.event(event(Kind.TEST_SUCCEEDED, "demo.ASpec", "works", fork = 0))
+    xml.event(event(Kind.TEST_FAILED, "demo.BSpec", "breaks", fork = 1, message = "1 did not equal 2"))
+    xml.event(event(Kind.TEST_IGNORED, "demo.ASpec", "later", fork = 0))
+    xml.event(event(Kind.SUITE_COMPLETED, "demo.BSpec", fork = 1))
+    xml.event(event(Kind.SUITE_COMPLETED, "demo.ASpec", fork = 0))
+    xml.close()
+
+    val written = suites(file)
+    written.map(_.getAttribute("name")) should be(Seq("demo.BSpec", "demo.ASpec"))
+    written(0).getAttribute("failures") should be("1")
+    written(0).getAttribute("time") should be("1.500")
+    written(0).getElementsByTagName("failure").item(0).asInstanceOf[Element].getAttribute("message") should be("1 did not equal 2")
+    written(1).getAttribute("tests") should be("2")
+    written(1).getAttribute("skipped") should be("1")
+    written(1).getElementsByTagName("testcase").item(0).asInstanceOf[Element].getAttribute("classname") should be("demo.ASpec")
+  }
+
+  def testWritesUnfinishedAndAbortedSuitesWithErrors {
+    val file = report()
+    val xml = new MergedJUnitXml(file, 0)
+    xml.event(event(Kind.SUITE_STARTING, "org.scalatest.tools.DiscoverySuite"))
+    xml.event(event(Kind.SUITE_STARTING, "demo.AbortedSpec"))
+    xml.event(event(Kind.SUITE_ABORTED, "demo.AbortedSpec", message = "boom"))
+    xml.event(event(Kind.SUITE_STARTING, "demo.StuckSpec"))
+    xml.event(event(Kind.TEST_SUCCEEDED, "demo.StuckSpec", "first"))
+    xml.close()
+
+    val written = suites(file)
+    written.map(_.getAttribute("name")) should be(Seq("demo.AbortedSpec", "demo.StuckSpec"))
+    written.map(_.getAttribute("errors")) should be(Seq("1", "1"))
+    written(1).getAttribute("tests") should be("2")
+  }
+
+  def testNamesTheSuitesOfReruns {
+    val file = report()
+    val xml = new MergedJUnitXml(file, 0)
+    xml.event(event(Kind.TEST_FAILED, "demo.FlakySpec", "sometimes"))
+    xml.event(event(Kind.SUITE_COMPLETED, "demo.FlakySpec"))
+    xml.rerun(1)
+    xml.event(event(Kind.TEST_SUCCEEDED, "demo.FlakySpec", "sometimes"))
+    xml.event(event(Kind.SUITE_COMPLETED, "demo.FlakySpec"))
+    xml.close()
+    suites(file).map(_.getAttribute("name")) should be(Seq("demo.FlakySpec", "demo.FlakySpec (rerun 1)"))
+  }
+
+  def testKeepsLargeSuitesOutOfMemoryAndRotatesFiles {
+    val file = report()
+    val xml = new MergedJUnitXml(file, 1024)
+    val message = "x" * 10000
+    for (suite <- Seq("demo.BigSpec", "demo.NextSpec")) {
+      xml.event(event(Kind.SUITE_STARTING, suite))
+      for (i <- 1 to 40) {
+        xml.event(event(Kind.TEST_FAILED, suite, "test " + i, message = message + "\u0001"))
+      }
+      xml.event(event(Kind.SUITE_COMPLETED, suite))
+    }
+    xml.close()
+
+    xml.files().size should be(2)
+    xml.part(2).getName should be("TEST-scalatest-2.xml")
+    suites(xml.part(1)).map(_.getAttribute("name")) should be(Seq("demo.BigSpec"))
+    suites(xml.part(2)).map(_.getAttribute("name")) should be(Seq("demo.NextSpec"))
+    suites(xml.part(1)).head.getElementsByTagName("testcase").getLength should be(40)
+    file.getParentFile.listFiles.filter(_.getName.endsWith(".tmp")) should be(empty)
+
+    // A new report leaves none of the parts of the last
+    new MergedJUnitXml(file, 0).close()
+    xml.part(2).exists should be(false)
+  }
+
+  def testSpillsSuitesToDisk {
+    val buffer = new MergedJUnitXml.SuiteBuffer(File.createTempFile("suite", ".tmp"))
+    buffer.write(new Array[Byte](MergedJUnitXml.SUITE_BUFFER_SIZE))
+    buffer.isSpilled should be(false)
+    buffer.write(1)
+    buffer.isSpilled should be(true)
+    val out = new java.io.ByteArrayOutputStream
+    buffer.writeTo(out)
+    out.size should be(MergedJUnitXml.SUITE_BUFFER_SIZE + 1)
+    buffer.delete()
+  }
+}
@@ -243,6 +243,66 @@ final class PluginTest
     configure(_.spanScaleFactor = 2.5) should containSlice("-F", "2.5")
   }
 
+  def testForkCountQueuesSuites {
+    val config = configure { m =>
+      m.forkCount = "2"
+      m.suites = comma("a", "b c")
+    }
+    config should not contain ("-s")
+  }
+
+  def testForkCountWithTestNGKeepsSuites {
+    val config = configure { m =>
+      m.forkCount = "2"
+      m.suites = comma("a")
+      m.testNGConfigFiles = comma("b")
+    }
+    config should containSlice("-s", "a")
+  }
+
+  def testForkCountWithHtmlReportRunsOneForkInParallel {
+    val config = configure { m =>
+      m.forkCount = "3"
+      m.suites = comma("a", "b")
+      m.htmlreporters = "target/html"
+    }
+    config should containSlice("-s", "a")
+    config should contain("-P3")
+  }
+
+  def testFailFastWithHtmlReportFails {
+    val mojo = new TestMojo
+    mojo.failFast = true
+    mojo.forkMode = "once"
+    mojo.htmlreporters = "target/html"
+    mojo.skipTests = false
+    mojo.reportsDirectory = reportsDirectory
+    val e = intercept[org.apache.maven.plugin.MojoFailureException](mojo.execute())
+    e.getMessage should include("htmlreporters")
+  }
+
+  def testMalformedForkCountNamesTheParameter {
+    val mojo = new TestMojo
+    mojo.forkCount = "2X"
+    val e = intercept[org.apache.maven.plugin.MojoFailureException](mojo.checkForkCounts())
+    e.getMessage should include("forkCount")
+    e.getMessage should include("\"2X\"")
+    mojo.forkCount = "1.5C"
+    mojo.maxConcurrentForkHeap = "lots"
+    intercept[org.apache.maven.plugin.MojoFailureException](mojo.checkForkCounts()).getMessage should include("maxConcurrentForkHeap")
+  }
+
+  def testShardedSuites {
+    val shards = (0 until 3).map { i =>
+      configure { m =>
+        m.shardCount = 3
+        m.shardIndex = i
+        m.suites = comma("a", "b", "c", "d", "e", "f")
+      }
+    }
+    shards.flatMap(_.sliding(2).filter(_(0) == "-s").map(_(1))).sorted should be(Seq("a", "b", "c", "d", "e", "f"))
+  }
+
   def testMojoConcat {
     MojoUtils.concat(jlist("a", "b", "c"), jlist("1", "2", "3")) should be(Array("a", "b", "c", "1", "2", "3"))
   }
@@ -257,6 +317,22 @@ final class PluginTest
     MojoUtils.compoundArg("-a", null.asInstanceOf[String]) should be(jlist())
   }
 
+  def testMojoCompundArgKeepsEmptyValues {
+    MojoUtils.compoundArg("-a", ", b", "c,d") should be(jlist("-a", " b c d"))
+  }
+
+  def testMojoSplitOnCommaSplitsLikeTheRegex {
+    def regexSplit(cs: String) = jlist(cs.split("(?<!\\\\),").map(_.trim.replaceAll("\\\\,", ",")): _*)
+    for (cs <- Seq("", ",", ",,", "a", "a,", "a, ", " a , b ,c", ",a", "a\\, b, c", "a\\,", "\\,a", "a,,b", "a\\\\,b", "  ,a, ,"))
+      withClue(cs) { MojoUtils.splitOnComma(cs) should be(regexSplit(cs)) }
+  }
+
+  def testMojoFingerprint {
+    MojoUtils.fingerprint(jlist("a", "b")) should be(MojoUtils.fingerprint(jlist("a", "b")))
+    MojoUtils.fingerprint(jlist("a", "b")) should not be (MojoUtils.fingerprint(jlist("ab")))
+    MojoUtils.fingerprint(jlist("a")) should have length (32)
+  }
+
   def testMojoStripNewLines {
     MojoUtils.stripNewLines("-XmsXg -XmxYg -XX:MaxPermSize=Zm") should be("-XmsXg -XmxYg -XX:MaxPermSize=Zm")
     MojoUtils.stripNewLines("-XmsXg\n-XmxYg -XX:MaxPermSize=Zm") should be("-XmsXg -XmxYg -XX:MaxPermSize=Zm")
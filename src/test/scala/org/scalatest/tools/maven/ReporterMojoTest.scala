@@ -0,0 +1,35 @@
+package org.scalatest.tools.maven
+
+import java.io.StringReader
+import java.lang.reflect.{InvocationHandler, Method, Proxy}
+import org.codehaus.doxia.sink.Sink
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+import scala.collection.mutable.ListBuffer
+
+final class ReporterMojoTest extends JUnit3Suite with Matchers {
+  // A sink that records the text it is given, chunk by chunk
+  def textSink(chunks: ListBuffer[String]) =
+    Proxy.newProxyInstance(getClass.getClassLoader, Array[Class[_]](classOf[Sink]), new InvocationHandler {
+      def invoke(proxy: AnyRef, method: Method, args: Array[AnyRef]): AnyRef = {
+        if (method.getName == "text") chunks += args(0).asInstanceOf[String]
+        null
+      }
+    }).asInstanceOf[Sink]
+
+  def testWritesOutputInBoundedChunks {
+    val output = (1 to 100).map("line " + _).mkString("", "\n", "\n")
+    val chunks = ListBuffer[String]()
+    ReporterMojo.writeChunked(new StringReader(output), textSink(chunks), 16)
+    chunks.mkString should be(output)
+    all(chunks.map(_.length)) should be <= 16
+  }
+
+  def testNormalizesLineBreaksAndKeepsSurrogatePairsTogether {
+    val chunks = ListBuffer[String]()
+    ReporterMojo.writeChunked(new StringReader("a\r\nb\rc\n" + "x😀y"), textSink(chunks), 8)
+    chunks.mkString should be("a\nb\nc\nx😀y")
+    all(chunks.map(c => Character.isHighSurrogate(c.last))) should be(false)
+  }
+}
@@ -0,0 +1,97 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import java.util.Collections
+import org.scalatest.matchers.should.Matchers
+import org.scalatest.tools.maven.EventChannel.{Event, Kind}
+import org.scalatestplus.junit.JUnit3Suite
+import scala.collection.JavaConverters._
+
+final class RerunsTest extends JUnit3Suite with Matchers {
+  private def event(kind: Kind, suite: String, test: String = null) =
+    new Event(kind, suite, suite, test, 1L, if (kind.hasMessage) "boom" else null, 0, "main", 0)
+
+  private def suiteArgs(failures: Event*) = Option(Reruns.suiteArgs(failures.asJava)).map(_.asScala.toList)
+
+  def testRerunsTheFailedTestsAndTheWholeOfAbortedSuites {
+    suiteArgs(
+      event(Kind.TEST_FAILED, "a.HelloSpec", "says hello"),
+      event(Kind.TEST_FAILED, "a.HelloSpec", "says goodbye"),
+      event(Kind.TEST_FAILED, "a.BrokenSpec", "breaks"),
+      event(Kind.SUITE_ABORTED, "a.BrokenSpec")) should be(Some(List(
+      "-s", "a.HelloSpec", "-t", "says hello", "-t", "says goodbye", "-s", "a.BrokenSpec")))
+    suiteArgs(event(Kind.TEST_FAILED, "a.HelloSpec", "says hello"), event(Kind.RUN_ABORTED, null)) should be(None)
+  }
+
+  def testReplacesTheSelectionAndRedirectsTheReports {
+    val junit = Files.createTempDirectory("junit").toFile
+    val args = Array("-R", "target/test-classes", "-o", "-s", "a.HelloSpec", "-z", "hello", "-w", "a", "-n", "Slow",
+      "-fW", "out.txt", "-h", "html", "-Y", "my.css", "-u", junit.getPath, "-M", "memory.txt", "-C", "a.Reporter")
+    Reruns.rerunArgs(args, List("-s", "a.HelloSpec", "-t", "says hello").asJava, 2).asScala should be(List(
+      "-R", "target/test-classes", "-o", "-n", "Slow", "-fW", "out.txt.rerun-2", "-u", junit.getPath + ".rerun-2",
+      "-C", "a.Reporter", "-s", "a.HelloSpec", "-t", "says hello"))
+    new File(junit.getPath + ".rerun-2").isDirectory should be(true)
+  }
+
+  private def report(tests: Int, failures: Int, cases: String) =
+    s"""<?xml version="1.0" encoding="UTF-8" ?>
+       |<testsuite errors="0" failures="$failures" name="a.HelloSpec" tests="$tests">
+       |$cases
+       |</testsuite>""".stripMargin
+
+  private val passing = """<testcase name="says %s" classname="a.HelloSpec" time="0.1"></testcase>"""
+  private val failing = """<testcase name="says %s" classname="a.HelloSpec" time="0.1"><failure message="%s" type="T">trace</failure></testcase>"""
+
+  def testMergesTheJUnitXmlOfARerun {
+    val junit = Files.createTempDirectory("junit").toFile
+    val rerun = new File(junit.getPath + Reruns.SUFFIX + 1)
+    rerun.mkdirs()
+    val name = "TEST-a.HelloSpec.xml"
+    MojoUtils.writeFully(new File(junit, name), report(3, 2,
+      passing.format("hi") + failing.format("hello", "first") + failing.format("goodbye", "first")))
+    MojoUtils.writeFully(new File(rerun, name), report(2, 1,
+      passing.format("hello") + failing.format("goodbye", "again")))
+    Reruns.mergeJUnitXml(junit, rerun, Collections.emptySet[String])
+
+    val merged = MojoUtils.readFully(new File(junit, name))
+    merged should include("""failures="1"""")
+    merged should include("""<flakyFailure message="first"""")
+    merged should include("""<rerunFailure message="again"""")
+    merged.split("<failure ").length should be(2)
+    rerun.exists should be(false)
+  }
+
+  def testReplacesTheReportOfAnAbortedSuiteThatPasses {
+    val junit = Files.createTempDirectory("junit").toFile
+    val rerun = new File(junit.getPath + Reruns.SUFFIX + 1)
+    rerun.mkdirs()
+    val name = "TEST-a.HelloSpec.xml"
+    MojoUtils.writeFully(new File(junit, name), report(0, 0, "").replace("errors=\"0\"", "errors=\"1\""))
+    MojoUtils.writeFully(new File(rerun, name), report(1, 0, passing.format("hi")))
+    Reruns.mergeJUnitXml(junit, rerun, Collections.singleton("a.HelloSpec"))
+    MojoUtils.readFully(new File(junit, name)) should include("""errors="0"""")
+  }
+
+  def testAppendsTheFileReportsOfARerun {
+    val dir = Files.createTempDirectory("reports").toFile
+    val out = new File(dir, "out.txt")
+    MojoUtils.writeFully(out, "run\n")
+    MojoUtils.writeFully(new File(out.getPath + Reruns.SUFFIX + 1), "rerun\n")
+    Reruns.mergeReports(Array("-o", "-fW", out.getPath), 1, Collections.emptySet[String])
+    MojoUtils.readFully(out) should be("run\nrerun\n")
+  }
+
+  def testTellsWhatPassedOnARerun {
+    val failures = List(
+      event(Kind.TEST_FAILED, "a.HelloSpec", "says hello"),
+      event(Kind.TEST_FAILED, "a.HelloSpec", "says goodbye"),
+      event(Kind.SUITE_ABORTED, "a.BrokenSpec"))
+    val rerun = new RunEvents
+    rerun.event(event(Kind.TEST_SUCCEEDED, "a.HelloSpec", "says hello"))
+    rerun.event(event(Kind.TEST_FAILED, "a.HelloSpec", "says goodbye"))
+    rerun.event(event(Kind.SUITE_COMPLETED, "a.HelloSpec"))
+    rerun.event(event(Kind.SUITE_COMPLETED, "a.BrokenSpec"))
+    Reruns.passed(failures.asJava, rerun).asScala should be(List("a.HelloSpec: says hello", "a.BrokenSpec"))
+  }
+}
@@ -0,0 +1,42 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import java.util.{ArrayList, Arrays}
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+final class ResultCacheTest extends JUnit3Suite with Matchers {
+  def tempDir() = Files.createTempDirectory("results").toFile
+
+  def testRestoresTheReportsWrittenByTheRun {
+    val reports = tempDir()
+    MojoUtils.writeFully(new File(reports, "old.txt"), "before the run")
+    new File(reports, "old.txt").setLastModified(1000L)
+    MojoUtils.writeFully(new File(reports, "xml/TEST-a.xml"), "<testsuite/>")
+
+    val cache = new ResultCache(tempDir(), "abc")
+    cache.restore(reports) should be(false)
+    cache.store(reports, 2000L)
+
+    val restored = tempDir()
+    cache.restore(restored) should be(true)
+    MojoUtils.readFully(new File(restored, "xml/TEST-a.xml")) should be("<testsuite/>")
+    new File(restored, "old.txt").exists should be(false)
+    cache.entry.getParentFile.list.toList should be(List("abc"))
+  }
+
+  def testClasspathPartsFollowContents {
+    val classes = tempDir()
+    MojoUtils.writeFully(new File(classes, "a/B.class"), "one")
+    def parts() = {
+      val list = new ArrayList[String]()
+      ResultCache.addClasspath(list, Arrays.asList(classes.getPath, new File(classes, "missing.jar").getPath))
+      list
+    }
+    val before = parts()
+    parts() should be(before)
+    MojoUtils.writeFully(new File(classes, "a/B.class"), "two")
+    parts() should not be (before)
+  }
+}
@@ -0,0 +1,109 @@
+package org.scalatest.tools.maven
+
+import java.io.{File, FileInputStream}
+import java.nio.file.{Files, Path, SimpleFileVisitor, FileVisitResult}
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.{Arrays, Collections}
+import org.scalatest.{ConfigMapWrapperSuite, DoNotDiscover, WrapWith}
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+final class SuiteDiscoveryTest extends JUnit3Suite with Matchers {
+  def locationOf(c: Class[_]) = new File(c.getProtectionDomain.getCodeSource.getLocation.toURI)
+
+  val testClasses = locationOf(classOf[SuiteDiscoveryTest])
+
+  val classpath = Arrays.asList(
+    testClasses,
+    locationOf(classOf[org.scalatest.Suite]),
+    locationOf(classOf[JUnit3Suite]),
+    locationOf(classOf[junit.framework.TestCase]),
+    locationOf(classOf[scala.Option[_]]))
+
+  def discover(suffixes: String = null) = {
+    val discovery = new SuiteDiscovery(classpath)
+    try discovery.discover(Arrays.asList(testClasses), suffixes)
+    finally discovery.close()
+  }
+
+  def testDiscoversSuitesThroughJarHierarchies {
+    discover() should contain("org.scalatest.tools.maven.PluginTest")
+    discover() should contain("org.scalatest.tools.maven.SuiteDiscoveryTest")
+  }
+
+  def testSkipsClassesThatAreNotSuites {
+    discover() should not contain ("org.scalatest.tools.maven.MojoUtilsTest")
+    discover() should not contain ("org.scalatest.tools.maven.PluginMatchers")
+  }
+
+  def testWrapWithIsDiscoveredUnlessDoNotDiscover {
+    discover() should contain("org.scalatest.tools.maven.WrappedFixture")
+    discover() should not contain ("org.scalatest.tools.maven.HiddenWrappedFixture")
+  }
+
+  def testSuffixes {
+    discover("Discovery(Test|Spec)") should be(Arrays.asList("org.scalatest.tools.maven.SuiteDiscoveryTest"))
+  }
+
+  def testClassFileInfo {
+    val in = new FileInputStream(new File(testClasses, "org/scalatest/tools/maven/PluginTest.class"))
+    val info = try ClassFileInfo.read(in) finally in.close()
+    info.name should be("org.scalatest.tools.maven.PluginTest")
+    info.superName should be("org.scalatestplus.junit.JUnit3Suite")
+    info.isPublic should be(true)
+    info.isConcrete should be(true)
+    info.publicNoArgConstructor should be(true)
+  }
+
+  def copyOfTestClasses() = {
+    val copy = Files.createTempDirectory("classes")
+    Files.walkFileTree(testClasses.toPath, new SimpleFileVisitor[Path] {
+      override def visitFile(file: Path, attrs: BasicFileAttributes) = {
+        val target = copy.resolve(testClasses.toPath.relativize(file).toString)
+        Files.createDirectories(target.getParent)
+        Files.copy(file, target)
+        FileVisitResult.CONTINUE
+      }
+    })
+    copy.toFile
+  }
+
+  def testIndexOnlyRereadsChangedClassFiles {
+    val classes = copyOfTestClasses()
+    val index = new File(Files.createTempDirectory("target").toFile, "scalatest-discovery.index")
+    def discoverIndexed() = {
+      val discovery = new SuiteDiscovery(Arrays.asList(classes, classpath.get(1), classpath.get(2), classpath.get(3), classpath.get(4)), index)
+      try { (discovery.discover(Arrays.asList(classes), null), discovery.classFilesRead) }
+      finally discovery.close()
+    }
+
+    val (first, firstRead) = discoverIndexed()
+    first should contain("org.scalatest.tools.maven.PluginTest")
+    firstRead should be > 0
+    index should be a 'file
+
+    discoverIndexed() should be((first, 0))
+
+    val pluginTest = new File(classes, "org/scalatest/tools/maven/PluginTest.class")
+    pluginTest.setLastModified(pluginTest.lastModified + 2000)
+    discoverIndexed() should be((first, 1))
+
+    pluginTest.delete()
+    discoverIndexed()._1 should not contain ("org.scalatest.tools.maven.PluginTest")
+  }
+
+  def testInPackages {
+    val none = Collections.emptyList[String]()
+    SuiteDiscovery.inPackages("a.b.CSpec", Arrays.asList("a.b"), none) should be(true)
+    SuiteDiscovery.inPackages("a.b.c.DSpec", Arrays.asList("a.b"), none) should be(false)
+    SuiteDiscovery.inPackages("a.b.c.DSpec", none, Arrays.asList("a.b")) should be(true)
+    SuiteDiscovery.inPackages("a.bc.DSpec", none, Arrays.asList("a.b")) should be(false)
+  }
+}
+
+@WrapWith(classOf[ConfigMapWrapperSuite])
+class WrappedFixture(configMap: Map[String, Any])
+
+@DoNotDiscover
+@WrapWith(classOf[ConfigMapWrapperSuite])
+class HiddenWrappedFixture(configMap: Map[String, Any])
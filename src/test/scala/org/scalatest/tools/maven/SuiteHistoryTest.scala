@@ -0,0 +1,62 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+import scala.collection.JavaConverters._
+
+final class SuiteHistoryTest extends JUnit3Suite with Matchers {
+  private def items(names: String*) = names.map(name => List("-s", name).asJava).asJava
+
+  private def names(ordered: java.util.List[java.util.List[String]]) = ordered.asScala.map(_.get(1)).toList
+
+  private def historyFile() = new File(Files.createTempDirectory("history").toFile, "history.properties")
+
+  def testRunsRecentFailuresFirstThenTheLongestSuites {
+    val history = new SuiteHistory
+    history.record(Map("a.Short" -> java.lang.Long.valueOf(100L), "a.Long" -> java.lang.Long.valueOf(5000L),
+      "a.Medium" -> java.lang.Long.valueOf(900L), "a.Failing" -> java.lang.Long.valueOf(50L)).asJava, List("a.Failing").asJava)
+    history.record(Map("a.Broken" -> java.lang.Long.valueOf(10L)).asJava, List("a.Broken").asJava)
+    names(history.order(items("a.Short", "a.Failing", "a.Medium", "a.Broken", "a.Long", "a.New"))) should be(
+      List("a.Broken", "a.Failing", "a.Long", "a.Medium", "a.Short", "a.New"))
+  }
+
+  def testForgetsFailuresAfterSomeRuns {
+    val history = new SuiteHistory
+    history.record(Map("a.Failing" -> java.lang.Long.valueOf(50L)).asJava, List("a.Failing").asJava)
+    for (i <- 1 until SuiteHistory.RECENT_RUNS) history.record(Map.empty[String, java.lang.Long].asJava, List.empty[String].asJava)
+    history.failedRecently("a.Failing") should be(true)
+    history.record(Map.empty[String, java.lang.Long].asJava, List.empty[String].asJava)
+    history.failedRecently("a.Failing") should be(false)
+  }
+
+  def testLeavesOutTheDiscoverySuite {
+    val file = historyFile()
+    val history = new SuiteHistory
+    history.record(Map(EventChannel.DISCOVERY_SUITE -> java.lang.Long.valueOf(9000L),
+      "a.Spec" -> java.lang.Long.valueOf(10L)).asJava, List(EventChannel.DISCOVERY_SUITE).asJava)
+    history.failedRecently(EventChannel.DISCOVERY_SUITE) should be(false)
+    history.write(file)
+    new String(Files.readAllBytes(file.toPath), "ISO-8859-1") should not include ("DiscoverySuite")
+  }
+
+  def testKeepsTheOrderWithoutHistory {
+    names(SuiteHistory.read(historyFile()).order(items("a.B", "a.A", "a.C"))) should be(List("a.B", "a.A", "a.C"))
+  }
+
+  def testReadsWhatItWrote {
+    val file = historyFile()
+    val history = new SuiteHistory
+    history.record(Map("a.Long" -> java.lang.Long.valueOf(5000L), "a.Failing" -> java.lang.Long.valueOf(50L)).asJava,
+      List("a.Failing").asJava)
+    history.write(file)
+    history.write(file)
+    file.getParentFile.list.toList should be(List("history.properties"))
+
+    val read = SuiteHistory.read(file)
+    read.failedRecently("a.Failing") should be(true)
+    read.failedRecently("a.Long") should be(false)
+    names(read.order(items("a.Long", "a.Short", "a.Failing"))) should be(List("a.Failing", "a.Long", "a.Short"))
+  }
+}
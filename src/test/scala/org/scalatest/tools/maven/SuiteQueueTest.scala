@@ -0,0 +1,60 @@
+package org.scalatest.tools.maven
+
+import java.util.Arrays
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+final class SuiteQueueTest extends JUnit3Suite with Matchers {
+  def suites(n: Int) = {
+    val list = new java.util.ArrayList[java.util.List[String]]()
+    for (i <- 1 to n) list.add(Arrays.asList("-s", "Suite" + i))
+    list
+  }
+
+  def testBatchesShrinkAsTheQueueDrains {
+    val queue = new SuiteQueue(suites(10), 2)
+    try {
+      val number = new Array[Int](1)
+      val sizes = Iterator.continually(queue.nextBatch(number).size).takeWhile(_ > 0).toList
+      sizes should be(List(3, 2, 2, 1, 1, 1))
+      queue.batches should be(6)
+      queue.remaining should be(0)
+    } finally queue.close()
+  }
+
+  def testBatchNumbers {
+    val queue = new SuiteQueue(suites(3), 1)
+    try {
+      val number = new Array[Int](1)
+      queue.nextBatch(number)
+      number(0) should be(0)
+      queue.nextBatch(number)
+      number(0) should be(1)
+    } finally queue.close()
+  }
+
+  def testStopDropsTheSuitesNotHandedOut {
+    val queue = new SuiteQueue(suites(5), 1, 1)
+    try {
+      val number = new Array[Int](1)
+      queue.nextBatch(number).size should be(1)
+      queue.nextBatch(number).size should be(1)
+      queue.stop()
+      queue.nextBatch(number).size should be(0)
+      queue.skipped should be(3)
+      queue.batches should be(2)
+    } finally queue.close()
+  }
+
+  def testPartArgs {
+    ForkMain.partArgs(Array("-o", "-fWD", "/r/out.txt", "-M", "/r/failed.txt", "-F", "2.0"), 3) should be(
+      Arrays.asList("-o", "-fWD", "/r/out.txt.part-3", "-M", "/r/failed.txt.part-3", "-F", "2.0"))
+  }
+
+  def testForkCount {
+    MojoUtils.parseForkCount(null) should be(1)
+    MojoUtils.parseForkCount("4") should be(4)
+    MojoUtils.parseForkCount("0") should be(1)
+    MojoUtils.parseForkCount("1C") should be(Runtime.getRuntime.availableProcessors)
+  }
+}
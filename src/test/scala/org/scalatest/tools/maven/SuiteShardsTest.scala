@@ -0,0 +1,69 @@
+package org.scalatest.tools.maven
+
+import java.io.{File, PrintWriter}
+import java.nio.file.Files
+import java.util.{Arrays, Collections, HashMap}
+import org.scalatest.matchers.should.Matchers
+import org.scalatestplus.junit.JUnit3Suite
+
+import scala.collection.JavaConverters._
+
+final class SuiteShardsTest extends JUnit3Suite with Matchers {
+  def items(names: String*) = names.map(n => Arrays.asList("-s", n)).asJava
+
+  def durations(pairs: (String, Long)*) = {
+    val map = new HashMap[String, java.lang.Long]()
+    for ((name, millis) <- pairs) map.put(name, millis)
+    map
+  }
+
+  def names(shard: java.util.List[java.util.List[String]]) = shard.asScala.map(_.get(1)).toList
+
+  def testEverySuiteLandsInExactlyOneShard {
+    val all = items((1 to 50).map("Suite" + _): _*)
+    for (timings <- List(durations(), durations("Suite3" -> 5000L, "Suite7" -> 200L))) {
+      val shards = (0 until 4).map(i => names(SuiteShards.shard(all, timings, i, 4)))
+      shards.flatten.sorted should be(names(all).sorted)
+    }
+  }
+
+  def testBalancesByDuration {
+    val all = items("a", "b", "c", "d", "e")
+    val timings = durations("a" -> 9000L, "b" -> 5000L, "c" -> 4000L, "d" -> 3000L, "e" -> 2000L)
+    names(SuiteShards.shard(all, timings, 0, 2)) should be(List("a", "d"))
+    names(SuiteShards.shard(all, timings, 1, 2)) should be(List("b", "c", "e"))
+  }
+
+  def testUnknownSuitesCountAsTheMedian {
+    val expected = SuiteShards.expectedDurations(items("a", "b", "new"), durations("a" -> 1000L, "b" -> 3000L, "c" -> 5000L))
+    expected.get(Arrays.asList("-s", "new")) should be(3000L)
+  }
+
+  def testReadsJUnitXmlDurations {
+    val dir = Files.createTempDirectory("shard-timings").toFile
+    val single = new PrintWriter(new File(dir, "TEST-a.xml"))
+    single.print("<?xml version=\"1.0\"?><testsuite name=\"a.Spec\" time=\"1.5\"><properties/></testsuite>")
+    single.close()
+    val merged = new PrintWriter(new File(dir, "merged.xml"))
+    merged.print("<testsuites><testsuite name=\"b.Spec\" time=\"0.25\"><testcase name=\"x\" time=\"0.25\"/></testsuite>" +
+      "<testsuite name=\"c.Spec\" time=\"2\"/><testsuite name=\"d.Spec\" time=\"1,5\"/></testsuites>")
+    merged.close()
+
+    val read = SuiteShards.readJUnitXmlDurations(dir)
+    read.get("a.Spec") should be(1500L)
+    read.get("b.Spec") should be(250L)
+    read.get("c.Spec") should be(2000L)
+    read.containsKey("d.Spec") should be(false)
+
+    SuiteShards.readJUnitXmlDurations(new File(dir, "nonesuch")) should be(Collections.emptyMap())
+    SuiteShards.readJUnitXmlDurations(null) should be(Collections.emptyMap())
+  }
+
+  def testOnlyAcceptsPlainDecimalTimes {
+    SuiteShards.millis("12.345") should be(12345L)
+    SuiteShards.millis(".5") should be(500L)
+    SuiteShards.millis("1,5") should be(null)
+    SuiteShards.millis("1,234.5") should be(null)
+    SuiteShards.millis("NaN") should be(null)
+  }
+}
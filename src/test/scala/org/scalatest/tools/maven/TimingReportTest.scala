@@ -0,0 +1,59 @@
+package org.scalatest.tools.maven
+
+import java.io.File
+import java.nio.file.Files
+import java.util.Arrays
+import org.scalatest.matchers.should.Matchers
+import org.scalatest.tools.maven.EventChannel.{Event, Kind}
+import org.scalatestplus.junit.JUnit3Suite
+import scala.collection.JavaConverters._
+
+final class TimingReportTest extends JUnit3Suite with Matchers {
+  private def suite(name: String, millis: Long, fork: Int = 0) =
+    new Event(Kind.SUITE_COMPLETED, name, name, null, millis, null, 0, "pool-1-thread-1", fork)
+
+  private def test(name: String, kind: Kind, millis: Long) =
+    new Event(kind, "a.Spec", "a.Spec", name, millis, null, 0, "main", -1)
+
+  def testWritesJsonAndCsv {
+    val dir = Files.createTempDirectory("timings").toFile
+    val report = new TimingReport(Arrays.asList(suite("a.Spec", 1500)),
+      Arrays.asList(test("says \"hi\", twice", Kind.TEST_FAILED, 20), test("skipped", Kind.TEST_IGNORED, -1)))
+    report.write(dir)
+
+    val json = new String(Files.readAllBytes(new File(dir, TimingReport.JSON_FILE).toPath), "UTF-8")
+    json should include("""{"suite": "a.Spec", "status": "completed", "durationMillis": 1500, "fork": 0, "thread": "pool-1-thread-1"}""")
+    json should include("""{"suite": "a.Spec", "test": "says \"hi\", twice", "status": "failed", "durationMillis": 20, "fork": null, "thread": "main"}""")
+    json should include(""""status": "ignored", "durationMillis": null""")
+
+    Files.readAllLines(new File(dir, TimingReport.CSV_FILE).toPath).asScala should be(Seq(
+      "type,suite,test,status,durationMillis,fork,thread",
+      "suite,a.Spec,,completed,1500,0,pool-1-thread-1",
+      "test,a.Spec,\"says \"\"hi\"\", twice\",failed,20,,main",
+      "test,a.Spec,skipped,ignored,,,main"))
+  }
+
+  def testSummaryListsTheSlowestSuitesFirst {
+    val suites = (1 to 30).map(i => suite("a.Spec" + i, i * 100L, i % 2))
+    val lines = new TimingReport(suites.asJava, Arrays.asList(test("t", Kind.TEST_SUCCEEDED, 5))).summary(20).asScala
+    lines.head should be("Slowest 20 of 30 suites:")
+    lines(1) should be("     3.000 s  fork 0  a.Spec30")
+    lines(20) should endWith("a.Spec11")
+    lines(21) should be("Suite durations: p50 1.500 s, p90 2.700 s, p99 3.000 s, max 3.000 s over 30, 46.500 s in total")
+    lines(22) should startWith("Test durations: p50 0.005 s")
+  }
+
+  def testLeavesOutTheDiscoverySuite {
+    val lines = new TimingReport(Arrays.asList(suite(EventChannel.DISCOVERY_SUITE, 9000), suite("a.Spec", 1000)),
+      Arrays.asList(test("t", Kind.TEST_SUCCEEDED, 5))).summary(20).asScala
+    lines.head should be("Slowest 1 of 1 suites:")
+    lines(1) should endWith("a.Spec")
+  }
+
+  def testPercentilesUseTheNearestRank {
+    val sorted = Array(1L, 2L, 3L, 4L)
+    TimingReport.percentile(sorted, 50) should be(2L)
+    TimingReport.percentile(sorted, 99) should be(4L)
+    TimingReport.percentile(Array(7L), 50) should be(7L)
+  }
+}